@@ -0,0 +1,106 @@
+package com.nailuj29gaming.language.benchmarks;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.nailuj29gaming.language.Environment;
+import com.nailuj29gaming.language.IFn;
+import com.nailuj29gaming.language.Interpreter;
+import com.nailuj29gaming.language.ast.Stmt;
+import com.nailuj29gaming.language.jit.Jit;
+import com.nailuj29gaming.language.vm.VM;
+
+/**
+ * Measures how many values per second pass through a three stage pipeline of tasks joined by channels:
+ * one task sends numbers, another squares them, and the caller adds them up
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChannelBenchmark {
+
+	private static final int ITEMS = 10000;
+
+	private static final String SOURCE =
+			"import channel;\n" +
+			"fn pipeline(n, capacity) {\n" +
+			"	var numbers = channel.chan(capacity);\n" +
+			"	var squares = channel.chan(capacity);\n" +
+			"	fn produce() {\n" +
+			"		for var i = 0; i < n; i = i + 1 {\n" +
+			"			channel.send(numbers, i);\n" +
+			"		}\n" +
+			"		channel.close(numbers);\n" +
+			"	}\n" +
+			"	fn square() {\n" +
+			"		var x = channel.recv(numbers);\n" +
+			"		while x != nil {\n" +
+			"			channel.send(squares, x * x);\n" +
+			"			x = channel.recv(numbers);\n" +
+			"		}\n" +
+			"		channel.close(squares);\n" +
+			"	}\n" +
+			"	var producer = spawn(produce);\n" +
+			"	var squarer = spawn(square);\n" +
+			"	var total = 0;\n" +
+			"	var x = channel.recv(squares);\n" +
+			"	while x != nil {\n" +
+			"		total = total + x;\n" +
+			"		x = channel.recv(squares);\n" +
+			"	}\n" +
+			"	await(producer);\n" +
+			"	await(squarer);\n" +
+			"	return total;\n" +
+			"}\n";
+
+	@Param({ "tree", "vm", "jit" })
+	public String engine;
+
+	/**
+	 * How many values each channel holds. A channel of 1 hands over every value, so it measures parking and waking
+	 */
+	@Param({ "1", "64" })
+	public int capacity;
+
+	private Interpreter interpreter;
+	private IFn pipeline;
+	private List<Object> args;
+
+	@Setup
+	public void setup() {
+		Jit.setThreshold(engine.equals("jit") ? Jit.DEFAULT_THRESHOLD : 0);
+		List<Stmt> stmts = Scripts.parse(SOURCE);
+		interpreter = new Interpreter();
+		Environment scope;
+		if (engine.equals("vm")) {
+			scope = new VM().interpretForImport(stmts);
+		} else {
+			scope = interpreter.interpretForImport(stmts);
+		}
+		pipeline = (IFn) scope.get("pipeline", null);
+		args = Arrays.<Object>asList((double) ITEMS, (double) capacity);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ITEMS)
+	public Object pipeline() {
+		return pipeline.call(interpreter, args, null);
+	}
+}
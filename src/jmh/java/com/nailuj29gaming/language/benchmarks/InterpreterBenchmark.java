@@ -0,0 +1,153 @@
+package com.nailuj29gaming.language.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.nailuj29gaming.language.Environment;
+import com.nailuj29gaming.language.IFn;
+import com.nailuj29gaming.language.Interpreter;
+import com.nailuj29gaming.language.ast.Stmt;
+import com.nailuj29gaming.language.jit.Jit;
+import com.nailuj29gaming.language.vm.VM;
+
+/**
+ * Measures running scripts through {@link IFn#call}, on both the tree-walking {@link Interpreter} and the {@link VM}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InterpreterBenchmark {
+
+	private static final String SOURCE =
+			"fn fib(n) {\n" +
+			"	if n < 2 {\n" +
+			"		return n;\n" +
+			"	}\n" +
+			"	return fib(n - 1) + fib(n - 2);\n" +
+			"}\n" +
+			"fn sum(list) {\n" +
+			"	var total = 0;\n" +
+			"	for var item in list {\n" +
+			"		total = total + item;\n" +
+			"	}\n" +
+			"	return total;\n" +
+			"}\n" +
+			"fn polynomial(n) {\n" +
+			"	var total = 0;\n" +
+			"	for var i = 0; i < n; i = i + 1 {\n" +
+			"		total = total + (i * 3 - 1) * (i + 2) / 7 - -i;\n" +
+			"	}\n" +
+			"	return total;\n" +
+			"}\n" +
+			"fn skipHalf(n) {\n" +
+			"	var count = 0;\n" +
+			"	var i = 0;\n" +
+			"	while true {\n" +
+			"		i = i + 1;\n" +
+			"		if i > n {\n" +
+			"			break;\n" +
+			"		}\n" +
+			"		if i > n / 2 {\n" +
+			"			continue;\n" +
+			"		}\n" +
+			"		count = count + 1;\n" +
+			"	}\n" +
+			"	return count;\n" +
+			"}\n" +
+			"fn accumulate(n) {\n" +
+			"	var total = 0;\n" +
+			"	fn add(x) {\n" +
+			"		total = total + x;\n" +
+			"	}\n" +
+			"	for var i = 0; i < n; i = i + 1 {\n" +
+			"		add(i);\n" +
+			"	}\n" +
+			"	return total;\n" +
+			"}\n";
+
+	@Param({ "tree", "vm", "jit" })
+	public String engine;
+
+	private Interpreter interpreter;
+	private IFn fib;
+	private IFn sum;
+	private IFn polynomial;
+	private IFn skipHalf;
+	private IFn accumulate;
+	private List<Object> fibArgs;
+	private List<Object> sumArgs;
+	private List<Object> polynomialArgs;
+	private List<Object> skipHalfArgs;
+	private List<Object> accumulateArgs;
+
+	@Setup
+	public void setup() {
+		// The tree walker compiles hot functions to JVM bytecode when the jit is on
+		Jit.setThreshold(engine.equals("jit") ? Jit.DEFAULT_THRESHOLD : 0);
+		List<Stmt> stmts = Scripts.parse(SOURCE);
+		interpreter = new Interpreter();
+		Environment scope;
+		if (engine.equals("vm")) {
+			scope = new VM().interpretForImport(stmts);
+		} else {
+			scope = interpreter.interpretForImport(stmts);
+		}
+		fib = (IFn) scope.get("fib", null);
+		sum = (IFn) scope.get("sum", null);
+		polynomial = (IFn) scope.get("polynomial", null);
+		skipHalf = (IFn) scope.get("skipHalf", null);
+		accumulate = (IFn) scope.get("accumulate", null);
+
+		fibArgs = Collections.<Object>singletonList(25.0);
+		List<Object> list = new ArrayList<>();
+		for (int i = 0; i < 10000; i++) {
+			list.add((double) i);
+		}
+		sumArgs = Collections.<Object>singletonList(list);
+		polynomialArgs = Collections.<Object>singletonList(10000.0);
+		skipHalfArgs = Collections.<Object>singletonList(10000.0);
+		accumulateArgs = Collections.<Object>singletonList(10000.0);
+	}
+
+	@Benchmark
+	public Object fib25() {
+		return fib.call(interpreter, fibArgs, null);
+	}
+
+	@Benchmark
+	public Object forInLoop() {
+		return sum.call(interpreter, sumArgs, null);
+	}
+
+	@Benchmark
+	public Object arithmetic() {
+		return polynomial.call(interpreter, polynomialArgs, null);
+	}
+
+	@Benchmark
+	public Object loopControl() {
+		return skipHalf.call(interpreter, skipHalfArgs, null);
+	}
+
+	@Benchmark
+	public Object closure() {
+		return accumulate.call(interpreter, accumulateArgs, null);
+	}
+}
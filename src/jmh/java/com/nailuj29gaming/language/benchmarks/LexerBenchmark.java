@@ -0,0 +1,54 @@
+package com.nailuj29gaming.language.benchmarks;
+
+import java.io.StringReader;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.nailuj29gaming.language.Lexer;
+import com.nailuj29gaming.language.Token;
+import com.nailuj29gaming.language.TokenStream;
+
+/**
+ * Measures {@link Lexer#lex(String)}, which makes a {@link Token} for every token, and lexing into a packed {@link TokenStream},
+ * on large generated sources
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LexerBenchmark {
+
+	@Param({ "1000", "100000" })
+	public int lines;
+
+	private String source;
+
+	@Setup
+	public void setup() {
+		source = Scripts.generate(lines);
+	}
+
+	@Benchmark
+	public List<Token> lex() {
+		return new Lexer().lex(source);
+	}
+
+	@Benchmark
+	public TokenStream stream() {
+		return new Lexer().lex(new StringReader(source)).readAll();
+	}
+}
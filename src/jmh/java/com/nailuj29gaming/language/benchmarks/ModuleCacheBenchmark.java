@@ -0,0 +1,63 @@
+package com.nailuj29gaming.language.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.nailuj29gaming.language.ModuleCache;
+import com.nailuj29gaming.language.ast.AstReader;
+import com.nailuj29gaming.language.ast.AstWriter;
+import com.nailuj29gaming.language.ast.Stmt;
+
+/**
+ * Compares lexing, parsing and resolving a script with reading it from the {@link ModuleCache}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ModuleCacheBenchmark {
+
+	/**
+	 * Roughly how many lines the script has
+	 */
+	@Param({ "100", "10000" })
+	public int lines;
+
+	private String source;
+	private byte[] cached;
+
+	@Setup
+	public void setup() throws IOException {
+		source = Scripts.generate(lines);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new AstWriter(out).write(Scripts.parse(source));
+		cached = out.toByteArray();
+	}
+
+	@Benchmark
+	public List<Stmt> parse() {
+		return Scripts.parse(source);
+	}
+
+	@Benchmark
+	public List<Stmt> readCached() throws IOException {
+		return new AstReader(new ByteArrayInputStream(cached)).read();
+	}
+}
@@ -0,0 +1,72 @@
+package com.nailuj29gaming.language.benchmarks;
+
+import java.io.StringReader;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.nailuj29gaming.language.Lexer;
+import com.nailuj29gaming.language.Parser;
+import com.nailuj29gaming.language.TokenStream;
+import com.nailuj29gaming.language.ast.Stmt;
+
+/**
+ * Measures {@link Parser#parse(TokenStream)} on deeply nested expressions and on large scripts
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParserBenchmark {
+
+	/**
+	 * How deeply the expression is nested
+	 */
+	@Param({ "10", "100", "1000" })
+	public int depth;
+
+	private TokenStream expression;
+	private TokenStream script;
+
+	@Setup
+	public void setup() {
+		// 1 + (2 * (3 - (4 + ... ))) with every level going through the whole precedence chain
+		StringBuilder sb = new StringBuilder("var x = ");
+		String[] operators = { " + ", " * ", " - ", " < ", " == ", " & " };
+		for (int i = 0; i < depth; i++) {
+			sb.append(i).append(operators[i % operators.length]).append('(');
+		}
+		sb.append("0");
+		for (int i = 0; i < depth; i++) {
+			sb.append(')');
+		}
+		sb.append(";\n");
+		// Lexed up front so the streams keep every token and can be parsed again
+		expression = new Lexer().lex(new StringReader(sb.toString())).readAll();
+		script = new Lexer().lex(new StringReader(Scripts.generate(depth * 10))).readAll();
+	}
+
+	@Benchmark
+	public List<Stmt> deepExpression() {
+		// Parser keeps its position between calls, so each parse needs a new one
+		return new Parser().parse(expression);
+	}
+
+	@Benchmark
+	public List<Stmt> script() {
+		return new Parser().parse(script);
+	}
+}
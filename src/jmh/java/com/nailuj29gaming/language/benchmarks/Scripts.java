@@ -0,0 +1,49 @@
+package com.nailuj29gaming.language.benchmarks;
+
+import java.io.StringReader;
+import java.util.List;
+
+import com.nailuj29gaming.language.Lexer;
+import com.nailuj29gaming.language.Parser;
+import com.nailuj29gaming.language.Resolver;
+import com.nailuj29gaming.language.ast.Stmt;
+
+/**
+ * Helpers shared by the benchmarks
+ */
+final class Scripts {
+
+	private Scripts() {
+	}
+
+	/**
+	 * Lexes, parses and resolves a script
+	 * @param source the source code
+	 * @return the statements, ready to be interpreted
+	 */
+	static List<Stmt> parse(String source) {
+		List<Stmt> stmts = new Parser().parse(new Lexer().lex(new StringReader(source)));
+		new Resolver().resolve(stmts);
+		return stmts;
+	}
+
+	/**
+	 * Generates a script with a mix of declarations, loops, calls and comments
+	 * @param lines roughly how many lines the script should have
+	 * @return the source code
+	 */
+	static String generate(int lines) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; sb.length() == 0 || i < lines; i += 8) {
+			sb.append("// block ").append(i).append('\n');
+			sb.append("fn f").append(i).append("(a, b) {\n");
+			sb.append("\tvar total = a * 2.5 + b;\n");
+			sb.append("\tfor var i = 0; i < 10; i = i + 1 {\n");
+			sb.append("\t\ttotal = total + i / 3;\n");
+			sb.append("\t}\n");
+			sb.append("\treturn total >= 100 & \"label ").append(i).append("\" != 'other';\n");
+			sb.append("}\n");
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,135 @@
+package com.nailuj29gaming.language;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import com.nailuj29gaming.language.Interpreter.InterpretError;
+
+/**
+ * An inline cache for a single {@link com.nailuj29gaming.language.ast.Expr.Call}.
+ * It remembers the functions the call has called and their arities, so a call to a function it has seen before
+ * doesn't need to check that the callee is a function or ask it for its arity.
+ * Closures of the same {@link Fn} share an entry, since they all have the same arity.
+ * A site that has called more than {@link #POLYMORPHIC_LIMIT} different functions is megamorphic, and stops caching.
+ * Hits are counted on each site rather than in a shared counter, since a shared counter would cost more than the cache saves
+ */
+public final class CallSite {
+
+	/**
+	 * How many different functions a site remembers before it gives up
+	 */
+	public static final int POLYMORPHIC_LIMIT = 4;
+
+	private static final LongAdder misses = new LongAdder();
+	private static final LongAdder megamorphicSites = new LongAdder();
+
+	/**
+	 * A function the site has called. Entries are never changed, so a site can be shared between threads
+	 */
+	private static final class Entry {
+		final Object key;
+		final int arity;
+
+		Entry(Object key, int arity) {
+			this.key = key;
+			this.arity = arity;
+		}
+	}
+
+	private static final Entry[] EMPTY = new Entry[0];
+
+	/**
+	 * The functions the site has called, or <code>null</code> once it is megamorphic.
+	 * Replaced rather than changed when a function is added
+	 */
+	private volatile Entry[] entries = EMPTY;
+
+	/**
+	 * How many calls were to a function the site remembered. Not atomic, so it may undercount when several threads share the site
+	 */
+	private long hits;
+
+	/**
+	 * Gets the arity of the function being called, checking that it is a function if it hasn't been called here before
+	 * @param callee the value being called
+	 * @param paren the opening parenthesis, used for error reporting
+	 * @return the number of arguments the function takes
+	 */
+	public int arity(Object callee, Token paren) {
+		Entry[] cached = entries;
+		if (cached != null) {
+			Object key = callee instanceof Fn ? ((Fn) callee).getTemplate() : callee;
+			for (Entry entry : cached) {
+				if (entry.key == key) {
+					hits++;
+					return entry.arity;
+				}
+			}
+			return miss(key, callee, paren);
+		}
+		if (!(callee instanceof IFn)) {
+			throw new InterpretError("Cannot call non-function", paren);
+		}
+		return ((IFn) callee).getArity();
+	}
+
+	private int miss(Object key, Object callee, Token paren) {
+		if (!(callee instanceof IFn)) {
+			throw new InterpretError("Cannot call non-function", paren);
+		}
+		misses.increment();
+		int arity = ((IFn) callee).getArity();
+		synchronized (this) {
+			Entry[] cached = entries;
+			if (cached == null) {
+				return arity;
+			}
+			if (cached.length == POLYMORPHIC_LIMIT) {
+				entries = null;
+				megamorphicSites.increment();
+				return arity;
+			}
+			Entry[] grown = new Entry[cached.length + 1];
+			System.arraycopy(cached, 0, grown, 0, cached.length);
+			grown[cached.length] = new Entry(key, arity);
+			entries = grown;
+		}
+		return arity;
+	}
+
+	/**
+	 * @return how many functions the site remembers, or -1 if it is megamorphic
+	 */
+	public int size() {
+		Entry[] cached = entries;
+		return cached == null ? -1 : cached.length;
+	}
+
+	/**
+	 * @return how many calls were to a function this site remembered
+	 */
+	public long getHits() {
+		return hits;
+	}
+
+	/**
+	 * @return how many calls, across every site, were to a function the site hadn't seen before
+	 */
+	public static long getMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * @return how many sites have called too many different functions to cache them
+	 */
+	public static long getMegamorphicSites() {
+		return megamorphicSites.sum();
+	}
+
+	/**
+	 * Sets the counters shared by every site back to 0. Sites keep the functions they remember
+	 */
+	public static void resetCounters() {
+		misses.reset();
+		megamorphicSites.reset();
+	}
+}
@@ -0,0 +1,39 @@
+package com.nailuj29gaming.language;
+
+/**
+ * Holds a local variable that has been captured by a closure,
+ * so the function that declared it and the closure share the same variable
+ *
+ * @see Resolver
+ */
+public class Cell {
+
+	private Object value;
+
+	/**
+	 * Initializes an empty cell
+	 */
+	public Cell() {
+	}
+
+	/**
+	 * @param value the initial value of the variable
+	 */
+	public Cell(Object value) {
+		this.value = value;
+	}
+
+	/**
+	 * @return the value of the variable
+	 */
+	public Object get() {
+		return value;
+	}
+
+	/**
+	 * @param value the new value of the variable
+	 */
+	public void set(Object value) {
+		this.value = value;
+	}
+}
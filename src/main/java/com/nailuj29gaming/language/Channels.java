@@ -0,0 +1,425 @@
+package com.nailuj29gaming.language;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import com.nailuj29gaming.language.Interpreter.InterpretError;
+
+/**
+ * The <code>channel</code> builtin module, which lets tasks started with <code>spawn</code> pass values to each other.
+ * A channel holds up to a fixed number of values in a lock-free ring. Sending to a full channel, or receiving from an empty one,
+ * parks the thread with {@link LockSupport}, which frees the carrier thread when the task is on a virtual thread
+ */
+final class Channels {
+
+	private Channels() {
+	}
+
+	/**
+	 * A bounded queue that many threads can send to and receive from at once.
+	 * Each slot of the ring has a sequence number, which says whether the slot is ready to be written for a given position or read from it,
+	 * so sending and receiving only need a compare and set on the position
+	 */
+	static final class Channel {
+
+		/**
+		 * What {@link #poll()} returns when the channel is empty, since <code>nil</code> can be sent
+		 */
+		static final Object EMPTY = new Object();
+
+		private final int capacity;
+
+		/**
+		 * How many slots the ring has. A ring of one slot can't tell a slot that is full from one that is ready for the next value,
+		 * so a channel that holds one value has two slots, and checks its capacity itself
+		 */
+		private final int slots;
+		private final Object[] items;
+		private final AtomicLongArray sequences;
+		private final AtomicLong sendPosition = new AtomicLong();
+		private final AtomicLong receivePosition = new AtomicLong();
+		private volatile boolean closed;
+
+		/**
+		 * The threads waiting for a value, or for space. Every waiter is woken when anything changes,
+		 * since a thread in <code>select</code> may take its value from another channel
+		 */
+		private final Queue<Thread> receivers = new ConcurrentLinkedQueue<>();
+		private final Queue<Thread> senders = new ConcurrentLinkedQueue<>();
+
+		/**
+		 * @param capacity how many values the channel can hold before sending waits
+		 */
+		Channel(int capacity) {
+			this.capacity = capacity;
+			slots = Math.max(capacity, 2);
+			items = new Object[slots];
+			sequences = new AtomicLongArray(slots);
+			for (int i = 0; i < slots; i++) {
+				sequences.set(i, i);
+			}
+		}
+
+		/**
+		 * Adds a value if there is space
+		 * @return whether or not there was space
+		 */
+		boolean offer(Object value) {
+			long position = sendPosition.get();
+			while (true) {
+				if (slots != capacity && position - receivePosition.get() >= capacity) {
+					return false;
+				}
+				int index = (int) (position % slots);
+				long difference = sequences.get(index) - position;
+				if (difference == 0) {
+					if (sendPosition.compareAndSet(position, position + 1)) {
+						items[index] = value;
+						// Publishes the value to the receiver that reads this sequence
+						sequences.set(index, position + 1);
+						return true;
+					}
+					position = sendPosition.get();
+				} else if (difference < 0) {
+					// The slot still holds a value from the last time around the ring
+					return false;
+				} else {
+					position = sendPosition.get();
+				}
+			}
+		}
+
+		/**
+		 * Takes the oldest value, if there is one
+		 * @return the value, or {@link #EMPTY}
+		 */
+		Object poll() {
+			long position = receivePosition.get();
+			while (true) {
+				int index = (int) (position % slots);
+				long difference = sequences.get(index) - (position + 1);
+				if (difference == 0) {
+					if (receivePosition.compareAndSet(position, position + 1)) {
+						Object value = items[index];
+						items[index] = null;
+						// The slot can be written again the next time around the ring
+						sequences.set(index, position + slots);
+						wakeAll(senders);
+						return value;
+					}
+					position = receivePosition.get();
+				} else if (difference < 0) {
+					return EMPTY;
+				} else {
+					position = receivePosition.get();
+				}
+			}
+		}
+
+		/**
+		 * Sends a value, waiting for space if the channel is full
+		 */
+		void send(Object value, Token paren) {
+			while (true) {
+				if (closed) {
+					throw new InterpretError("Cannot send to a closed channel", paren);
+				}
+				if (offer(value)) {
+					wakeAll(receivers);
+					return;
+				}
+				Thread thread = Thread.currentThread();
+				senders.add(thread);
+				// Space may have been made before this thread was added, in which case nothing will wake it
+				if (closed || offer(value)) {
+					senders.remove(thread);
+					if (closed) {
+						continue;
+					}
+					wakeAll(receivers);
+					return;
+				}
+				park(paren);
+			}
+		}
+
+		/**
+		 * Receives a value, waiting for one if the channel is empty
+		 * @return the value, or <code>nil</code> once the channel is closed and empty
+		 */
+		Object receive(Token paren) {
+			while (true) {
+				Object value = poll();
+				if (value != EMPTY) {
+					return value;
+				}
+				if (closed) {
+					// A value may have been sent just before the channel was closed
+					value = poll();
+					return value == EMPTY ? null : value;
+				}
+				Thread thread = Thread.currentThread();
+				receivers.add(thread);
+				value = poll();
+				if (value != EMPTY || closed) {
+					receivers.remove(thread);
+					if (value != EMPTY) {
+						return value;
+					}
+					continue;
+				}
+				park(paren);
+			}
+		}
+
+		/**
+		 * Stops values being sent, and wakes every waiting thread. Values already sent can still be received
+		 */
+		void close() {
+			closed = true;
+			wakeAll(receivers);
+			wakeAll(senders);
+		}
+
+		boolean isClosed() {
+			return closed;
+		}
+
+		@Override
+		public String toString() {
+			return "<chan " + capacity + ">";
+		}
+	}
+
+	private static void wakeAll(Queue<Thread> waiters) {
+		if (waiters.isEmpty()) {
+			return;
+		}
+		Thread thread;
+		while ((thread = waiters.poll()) != null) {
+			LockSupport.unpark(thread);
+		}
+	}
+
+	/**
+	 * Waits until a waiting thread is woken. It may also wake for no reason, so the caller checks again
+	 */
+	private static void park(Token paren) {
+		LockSupport.park(Channel.class);
+		if (Thread.interrupted()) {
+			throw new InterpretError("Interrupted while waiting on a channel", paren);
+		}
+	}
+
+	/**
+	 * Receives from whichever channel has a value first
+	 * @param channels the channels
+	 * @return a list of the index of the channel and the value, or <code>nil</code> once every channel is closed and empty
+	 */
+	private static Object select(Channel[] channels, Token paren) {
+		Thread thread = Thread.currentThread();
+		while (true) {
+			Object selected = trySelect(channels);
+			if (selected != Channel.EMPTY) {
+				return selected;
+			}
+			if (allClosed(channels)) {
+				// Values may have been sent just before the channels were closed
+				selected = trySelect(channels);
+				return selected == Channel.EMPTY ? null : selected;
+			}
+			for (Channel channel : channels) {
+				channel.receivers.add(thread);
+			}
+			selected = trySelect(channels);
+			if (selected != Channel.EMPTY || allClosed(channels)) {
+				for (Channel channel : channels) {
+					channel.receivers.remove(thread);
+				}
+				if (selected != Channel.EMPTY) {
+					return selected;
+				}
+				continue;
+			}
+			park(paren);
+			for (Channel channel : channels) {
+				channel.receivers.remove(thread);
+			}
+		}
+	}
+
+	/**
+	 * Tries each channel once, starting from a random one so no channel is always passed over
+	 * @return a list of the index of the channel and the value, or {@link Channel#EMPTY} if every channel was empty
+	 */
+	private static Object trySelect(Channel[] channels) {
+		int start = ThreadLocalRandom.current().nextInt(channels.length);
+		for (int i = 0; i < channels.length; i++) {
+			int index = (start + i) % channels.length;
+			Object value = channels[index].poll();
+			if (value != Channel.EMPTY) {
+				PackedList selected = new PackedList(2);
+				selected.add((double) index);
+				selected.add(value);
+				return selected;
+			}
+		}
+		return Channel.EMPTY;
+	}
+
+	private static boolean allClosed(Channel[] channels) {
+		for (Channel channel : channels) {
+			if (!channel.isClosed()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static Channel channel(Object value, Token paren) {
+		if (!(value instanceof Channel)) {
+			throw new InterpretError("Expect a channel", paren);
+		}
+		return (Channel) value;
+	}
+
+	/**
+	 * @return the module
+	 */
+	static Environment module() {
+		Environment channel = new Environment();
+		channel.define("chan", new IFn() {
+
+			@Override
+			public int getArity() {
+				return 1;
+			}
+
+			@Override
+			public Object call(Interpreter interpreter, List<Object> args, Token paren) {
+				return call1(interpreter, args.get(0), paren);
+			}
+
+			@Override
+			public Object call1(Interpreter interpreter, Object a, Token paren) {
+				if (!(a instanceof Double) || (Double) a < 1 || (Double) a != Math.floor((Double) a) || (Double) a > Integer.MAX_VALUE) {
+					throw new InterpretError("Expect a capacity of at least 1", paren);
+				}
+				return new Channel(((Double) a).intValue());
+			}
+
+			@Override
+			public String toString() {
+				return "<natve fn channel.chan>";
+			}
+		});
+
+		channel.define("send", new IFn() {
+
+			@Override
+			public int getArity() {
+				return 2;
+			}
+
+			@Override
+			public Object call(Interpreter interpreter, List<Object> args, Token paren) {
+				return call2(interpreter, args.get(0), args.get(1), paren);
+			}
+
+			@Override
+			public Object call2(Interpreter interpreter, Object a, Object b, Token paren) {
+				channel(a, paren).send(b, paren);
+				return null;
+			}
+
+			@Override
+			public String toString() {
+				return "<natve fn channel.send>";
+			}
+		});
+
+		channel.define("recv", new IFn() {
+
+			@Override
+			public int getArity() {
+				return 1;
+			}
+
+			@Override
+			public Object call(Interpreter interpreter, List<Object> args, Token paren) {
+				return call1(interpreter, args.get(0), paren);
+			}
+
+			@Override
+			public Object call1(Interpreter interpreter, Object a, Token paren) {
+				return channel(a, paren).receive(paren);
+			}
+
+			@Override
+			public String toString() {
+				return "<natve fn channel.recv>";
+			}
+		});
+
+		channel.define("close", new IFn() {
+
+			@Override
+			public int getArity() {
+				return 1;
+			}
+
+			@Override
+			public Object call(Interpreter interpreter, List<Object> args, Token paren) {
+				return call1(interpreter, args.get(0), paren);
+			}
+
+			@Override
+			public Object call1(Interpreter interpreter, Object a, Token paren) {
+				channel(a, paren).close();
+				return null;
+			}
+
+			@Override
+			public String toString() {
+				return "<natve fn channel.close>";
+			}
+		});
+
+		channel.define("select", new IFn() {
+
+			@Override
+			public int getArity() {
+				return 1;
+			}
+
+			@Override
+			public Object call(Interpreter interpreter, List<Object> args, Token paren) {
+				return call1(interpreter, args.get(0), paren);
+			}
+
+			@Override
+			public Object call1(Interpreter interpreter, Object a, Token paren) {
+				if (!(a instanceof List) || ((List<?>) a).isEmpty()) {
+					throw new InterpretError("Expect a list of channels", paren);
+				}
+				List<?> list = (List<?>) a;
+				Channel[] channels = new Channel[list.size()];
+				for (int i = 0; i < channels.length; i++) {
+					channels[i] = channel(list.get(i), paren);
+				}
+				return select(channels, paren);
+			}
+
+			@Override
+			public String toString() {
+				return "<natve fn channel.select>";
+			}
+		});
+		return channel;
+	}
+}
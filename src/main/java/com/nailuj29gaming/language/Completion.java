@@ -0,0 +1,29 @@
+package com.nailuj29gaming.language;
+
+/**
+ * How a statement finished, returned by the {@link Interpreter}'s statement visitors.
+ * Statements that simply fall through to the next one return <code>null</code>
+ */
+public enum Completion {
+	/**
+	 * A <code>break</code> statement was hit, and should end the innermost loop
+	 */
+	BREAK,
+	/**
+	 * A <code>continue</code> statement was hit, and should end the current iteration of the innermost loop
+	 */
+	CONTINUE,
+	/**
+	 * A <code>return</code> statement was hit, and should end the current function.
+	 * The value is kept in the interpreter until the function collects it
+	 * @see Interpreter#takeReturnValue()
+	 */
+	RETURN,
+	/**
+	 * A <code>return</code> statement whose value is a call to the running function, with as many arguments as it takes.
+	 * Rather than calling itself, the function runs again in the same frame, so deep tail recursion doesn't use up the stack.
+	 * The arguments are kept in the interpreter until the function collects them
+	 * @see Interpreter#takeTailCallArgs()
+	 */
+	TAIL_CALL
+}
@@ -1,5 +1,6 @@
 package com.nailuj29gaming.language;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -26,13 +27,11 @@ public class CurriedFn implements IFn {
 
 	@Override
 	public Object call(Interpreter interpreter, List<Object> args, Token paren) {
-		int temp = params.size();
-		params.addAll(args);
-	
-		Object result = parent.call(interpreter, params, paren);
-		
-		params = params.subList(0, temp);
-		return result;
+		// A new list each time, so nested and recursive calls don't see each other's arguments
+		List<Object> allArgs = new ArrayList<>(params.size() + args.size());
+		allArgs.addAll(params);
+		allArgs.addAll(args);
+		return parent.call(interpreter, allArgs, paren);
 	}
 
 }
@@ -2,13 +2,32 @@ package com.nailuj29gaming.language;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
- * A collection of named variables
+ * A collection of named variables.
+ * Variables are kept in an open addressed table indexed by their {@link Symbol}'s id, so finding one never hashes its name.
+ * Tasks the script spawns read and set the variables of the script while it runs, so an environment can be used by several threads.
+ * Getting and setting a variable never locks: the table is an {@link AtomicReferenceArray}, and a name is only stored after its value,
+ * so a reader that finds a name also sees the value stored with it. Declaring a variable locks the environment, since it may grow the table,
+ * and a variable set while the table grows is set again in the new table, so it isn't left behind in the old one.
+ * One that has been {@link #freeze() frozen} can't be changed at all
  */
 public class Environment {
 	
-	private Map<String, Object> values;
+	/**
+	 * Each variable's {@link Symbol}, followed by its value
+	 */
+	private volatile AtomicReferenceArray<Object> table = new AtomicReferenceArray<>(16);
+	/**
+	 * How many variables are in the table. Only used while holding the lock
+	 */
+	private int size;
+	/**
+	 * Incremented before and after the table grows, so it is odd while the table is being copied
+	 */
+	private volatile int version;
+	private boolean frozen;
 	
 	/**
 	 * The enclosing scope. Calls to get or set will try this scope if the variable is undefined.
@@ -26,7 +45,78 @@ public class Environment {
 	 * Initializes a global scope
 	 */
 	public Environment() {
-		values = new HashMap<>();
+	}
+	
+	/**
+	 * Stops the variables in this scope from being declared or set, so it can be shared between threads
+	 * @return the environment
+	 */
+	public Environment freeze() {
+		frozen = true;
+		return this;
+	}
+	
+	/**
+	 * @return whether or not the variables in this scope can be declared or set
+	 */
+	public boolean isFrozen() {
+		return frozen;
+	}
+	
+	/**
+	 * Copies the variables in this scope. The copy has the same enclosing scope, and isn't frozen
+	 * @return the copy
+	 */
+	public Environment copy() {
+		Environment copy = new Environment(enclosing);
+		synchronized (this) {
+			AtomicReferenceArray<Object> table = this.table;
+			AtomicReferenceArray<Object> copied = new AtomicReferenceArray<>(table.length());
+			for (int i = 0; i < table.length(); i++) {
+				copied.lazySet(i, table.get(i));
+			}
+			copy.table = copied;
+			copy.size = size;
+		}
+		return copy;
+	}
+	
+	/**
+	 * @return the variables in this scope by name, not including the enclosing scopes
+	 */
+	public Map<String, Object> getValues() {
+		Map<String, Object> variables = new HashMap<>();
+		AtomicReferenceArray<Object> table = this.table;
+		for (int i = 0; i < table.length(); i += 2) {
+			Object name = table.get(i);
+			if (name != null) {
+				variables.put(((Symbol) name).getName(), table.get(i + 1));
+			}
+		}
+		return variables;
+	}
+	
+	private void checkNotFrozen() {
+		if (frozen) {
+			throw new IllegalStateException("Cannot change a frozen environment");
+		}
+	}
+	
+	/**
+	 * Finds where a variable is kept in a table
+	 * @param table the table
+	 * @param name the variable's name
+	 * @return the index of the variable's name, which its value follows, or -1 if it isn't in the table
+	 */
+	private static int find(AtomicReferenceArray<Object> table, Symbol name) {
+		int mask = table.length() - 2;
+		Object found;
+		for (int i = (name.getId() << 1) & mask; (found = table.get(i)) != null; i = (i + 2) & mask) {
+			if (found == name) {
+				return i;
+			}
+		}
+		return -1;
 	}
 	
 	/**
@@ -37,13 +127,26 @@ public class Environment {
 	 * @throws com.nailuj29gaming.language.Interpreter.InterpretError if the variable is undefined
 	 */
 	public Object get(String name, Token location) {
-		if (values.containsKey(name)) {
-			return values.get(name);
-		}
-		
-		if (enclosing != null) {
-			return enclosing.get(name, location);
-		}
+		return get(Symbol.intern(name), location);
+	}
+	
+	/**
+	 * Gets a variable
+	 * @param name the name to get
+	 * @param location the location of the variable
+	 * @return the variable
+	 * @throws com.nailuj29gaming.language.Interpreter.InterpretError if the variable is undefined
+	 */
+	public Object get(Symbol name, Token location) {
+		Environment environment = this;
+		do {
+			AtomicReferenceArray<Object> table = environment.table;
+			int index = find(table, name);
+			if (index >= 0) {
+				return table.get(index + 1);
+			}
+			environment = environment.enclosing;
+		} while (environment != null);
 		
 		throw new Interpreter.InterpretError("Undefined variable '" + name +"'", location);
 	}
@@ -56,6 +159,17 @@ public class Environment {
 	 * @see set
 	 */
 	public void define(String name, Object value) {
+		define(Symbol.intern(name), value);
+	}
+	
+	/**
+	 * Declares and defined a variable at the same time
+	 * @param name the name of the variable
+	 * @param value the definition of the variable
+	 * @see declare
+	 * @see set
+	 */
+	public void define(Symbol name, Object value) {
 		declare(name);
 		set(name, value);
 	}
@@ -66,6 +180,15 @@ public class Environment {
 	 * @param value the value to set
 	 */
 	public void set(String name, Object value) {
+		set(Symbol.intern(name), value, null);
+	}
+	
+	/**
+	 * Set a a variable that is guaranteed to exist, and will never throw an error
+	 * @param name the name of the variable
+	 * @param value the value to set
+	 */
+	public void set(Symbol name, Object value) {
 		set(name, value, null);
 	}
 	
@@ -76,27 +199,106 @@ public class Environment {
 	 * @param location the location for error handling
 	 */
 	public void set(String name, Object value, Token location) {
-		if (values.containsKey(name)) {
-			values.put(name, value);
-			return;
-		}
-		
-		if (enclosing != null) {
-			enclosing.set(name, value, location);
-			return;
-		}
+		set(Symbol.intern(name), value, location);
+	}
+	
+	/**
+	 * Set a variable, including proper error handling
+	 * @param name The name to set
+	 * @param value the new value of the of the variable
+	 * @param location the location for error handling
+	 */
+	public void set(Symbol name, Object value, Token location) {
+		Environment environment = this;
+		do {
+			int version = environment.version;
+			AtomicReferenceArray<Object> table = environment.table;
+			int index = find(table, name);
+			if (index >= 0) {
+				environment.checkNotFrozen();
+				table.set(index + 1, value);
+				if ((version & 1) != 0 || environment.version != version) {
+					// The table grew while the value was being set, and may have been copied before it
+					environment.setAfterGrowing(name, value);
+				}
+				return;
+			}
+			environment = environment.enclosing;
+		} while (environment != null);
 		
 		throw new Interpreter.InterpretError("Undefined variable '" + name +"'", location);
 	}
 	
+	/**
+	 * Sets a variable in the table that replaced the one it was set in
+	 * @param name the name of the variable, which is in this scope
+	 * @param value the value to set
+	 */
+	private synchronized void setAfterGrowing(Symbol name, Object value) {
+		AtomicReferenceArray<Object> table = this.table;
+		table.set(find(table, name) + 1, value);
+	}
+	
 	/**
 	 * Declares a variable, setting it to null
 	 * @param name the name of the variable
 	 */
 	public void declare(String name) {
+		declare(Symbol.intern(name));
+	}
+	
+	/**
+	 * Declares a variable, setting it to null
+	 * @param name the name of the variable
+	 */
+	public void declare(Symbol name) {
+		checkNotFrozen();
 		if (Main.DEBUG) {
 			System.out.printf("Defining %s\n", name);
 		}
-		values.put(name, null);
+		synchronized (this) {
+			AtomicReferenceArray<Object> table = this.table;
+			int index = find(table, name);
+			if (index >= 0) {
+				table.set(index + 1, null);
+				return;
+			}
+			if ((size + 1) * 4 > table.length()) {
+				table = grow(table);
+			}
+			insert(table, name, null);
+			size++;
+		}
+	}
+	
+	private static void insert(AtomicReferenceArray<Object> table, Symbol name, Object value) {
+		int mask = table.length() - 2;
+		int index = (name.getId() << 1) & mask;
+		while (table.get(index) != null) {
+			index = (index + 2) & mask;
+		}
+		// The name is stored with release semantics after the value, so a reader that finds the name sees the value
+		table.lazySet(index + 1, value);
+		table.lazySet(index, name);
+	}
+	
+	/**
+	 * Moves the variables into a table twice as large, which replaces the old one once it is filled.
+	 * Must be called while holding the lock
+	 * @param old the table being replaced
+	 * @return the new table
+	 */
+	private AtomicReferenceArray<Object> grow(AtomicReferenceArray<Object> old) {
+		version++;
+		AtomicReferenceArray<Object> grown = new AtomicReferenceArray<>(old.length() * 2);
+		for (int i = 0; i < old.length(); i += 2) {
+			Object name = old.get(i);
+			if (name != null) {
+				insert(grown, (Symbol) name, old.get(i + 1));
+			}
+		}
+		table = grown;
+		version++;
+		return grown;
 	}
 }
@@ -1,8 +1,11 @@
 package com.nailuj29gaming.language;
 
+import java.util.Arrays;
 import java.util.List;
 
 import com.nailuj29gaming.language.ast.Stmt;
+import com.nailuj29gaming.language.jit.CompiledFn;
+import com.nailuj29gaming.language.jit.Jit;
 
 /**
  * A function defined in {LANGUAGE NAME}
@@ -13,6 +16,36 @@ public class Fn implements IFn {
 	private final Stmt.Block body;
 	private final int arity;
 	private final Token name;
+	private int frameSize = -1;
+	private int[] cellSlots = new int[0];
+	private boolean[] upvalueLocal = new boolean[0];
+	private int[] upvalueIndices = new int[0];
+	
+	/**
+	 * Where names that aren't local are looked up
+	 */
+	private final Environment enclosing;
+	
+	/**
+	 * The variables this closure captured
+	 */
+	private final Cell[] upvalues;
+	
+	/**
+	 * The function as it was parsed, which every closure of it shares
+	 */
+	private final Fn template;
+	
+	/**
+	 * How many times the function and its closures have been called, counted on the template.
+	 * Not atomic, so interpreters on other threads may lose a call, which only delays compiling the function
+	 */
+	private int calls;
+	
+	/**
+	 * The body compiled by the {@link Jit}, kept on the template
+	 */
+	private volatile CompiledFn compiled;
 
 	/**
 	 * @param params the parameters of the function
@@ -24,6 +57,29 @@ public class Fn implements IFn {
 		this.params = params;
 		this.body = body;
 		this.arity = params.size();
+		this.enclosing = Interpreter.BUILTINS;
+		this.upvalues = new Cell[0];
+		this.template = this;
+	}
+	
+	/**
+	 * Creates a closure of a function
+	 * @param fn the function, as it was parsed
+	 * @param enclosing where names that aren't local are looked up
+	 * @param upvalues the variables the closure captured
+	 */
+	private Fn(Fn fn, Environment enclosing, Cell[] upvalues) {
+		this.name = fn.name;
+		this.params = fn.params;
+		this.body = fn.body;
+		this.arity = fn.arity;
+		this.frameSize = fn.frameSize;
+		this.cellSlots = fn.cellSlots;
+		this.upvalueLocal = fn.upvalueLocal;
+		this.upvalueIndices = fn.upvalueIndices;
+		this.enclosing = enclosing;
+		this.upvalues = upvalues;
+		this.template = fn.template;
 	}
 
 	@Override
@@ -31,21 +87,225 @@ public class Fn implements IFn {
 		return arity;
 	}
 
+	/**
+	 * @return the names of the parameters
+	 */
+	public List<String> getParams() {
+		return params;
+	}
+
+	/**
+	 * @return the statements in the function
+	 */
+	public Stmt.Block getBody() {
+		return body;
+	}
+
+	/**
+	 * @return the name of the function
+	 */
+	public Token getName() {
+		return name;
+	}
+
+	/**
+	 * @return the number of slots in the function's frame
+	 */
+	public int getFrameSize() {
+		return frameSize;
+	}
+
+	/**
+	 * @param frameSize the number of slots needed for the parameters, the function itself and its variables
+	 * @see Resolver
+	 */
+	public void setFrameSize(int frameSize) {
+		this.frameSize = frameSize;
+	}
+
+	/**
+	 * @return the slots of the parameters, or of the function itself, that closures capture
+	 */
+	public int[] getCellSlots() {
+		return cellSlots;
+	}
+
+	/**
+	 * @param cellSlots the slots of the parameters, or of the function itself, that closures capture
+	 * @see Resolver
+	 */
+	public void setCellSlots(int[] cellSlots) {
+		this.cellSlots = cellSlots;
+	}
+
+	/**
+	 * @return for each captured variable, whether it is captured from a slot of the enclosing frame rather than
+	 * from the enclosing function's captured variables
+	 */
+	public boolean[] getUpvalueLocal() {
+		return upvalueLocal;
+	}
+
+	/**
+	 * @return for each captured variable, its slot or index in the enclosing function
+	 */
+	public int[] getUpvalueIndices() {
+		return upvalueIndices;
+	}
+
+	/**
+	 * @param upvalueLocal for each captured variable, whether it comes from a slot of the enclosing frame
+	 * @param upvalueIndices for each captured variable, its slot or index in the enclosing function
+	 * @see Resolver
+	 */
+	public void setUpvalues(boolean[] upvalueLocal, int[] upvalueIndices) {
+		this.upvalueLocal = upvalueLocal;
+		this.upvalueIndices = upvalueIndices;
+	}
+
+	/**
+	 * @return the variables this closure captured
+	 */
+	public Cell[] getUpvalues() {
+		return upvalues;
+	}
+
+	/**
+	 * @return where names that aren't local are looked up
+	 */
+	public Environment getEnclosing() {
+		return enclosing;
+	}
+
+	/**
+	 * @return the function as it was parsed, which every closure of it shares
+	 */
+	public Fn getTemplate() {
+		return template;
+	}
+
+	/**
+	 * @return the compiled body of the function, or <code>null</code> if it is interpreted
+	 */
+	public CompiledFn getCompiled() {
+		return template.compiled;
+	}
+
+	/**
+	 * Creates a closure of this function, capturing the variables it uses from the running function
+	 * @param enclosing where names that aren't local are looked up
+	 * @param frame the frame of the running function
+	 * @param enclosingUpvalues the variables the running function captured
+	 * @return the closure
+	 */
+	public Fn bind(Environment enclosing, Object[] frame, Cell[] enclosingUpvalues) {
+		Cell[] captured = new Cell[upvalueIndices.length];
+		for (int i = 0; i < captured.length; i++) {
+			if (upvalueLocal[i]) {
+				captured[i] = (Cell) frame[upvalueIndices[i]];
+			} else {
+				captured[i] = enclosingUpvalues[upvalueIndices[i]];
+			}
+		}
+		return new Fn(this, enclosing, captured);
+	}
+
 	@Override
 	public Object call(Interpreter interpreter, List<Object> args, Token paren) {
-		Environment scope = new Environment(Interpreter.globals);
+		CompiledFn compiled = compiled();
+		if (compiled != null) {
+			return compiled.invoke(interpreter, this, args);
+		}
+		// The resolver puts the parameters in the first slots, followed by the function itself
+		Object[] frame = new Object[frameSize];
 		for (int i = 0; i < args.size(); i++) {
-			scope.declare(params.get(i));
-			scope.set(params.get(i), args.get(i), null);
+			frame[i] = args.get(i);
+		}
+		return run(interpreter, frame);
+	}
+
+	@Override
+	public Object call0(Interpreter interpreter, Token paren) {
+		CompiledFn compiled = compiled();
+		if (compiled != null) {
+			return compiled.invoke(interpreter, this, null, null, null);
+		}
+		return run(interpreter, new Object[frameSize]);
+	}
+
+	@Override
+	public Object call1(Interpreter interpreter, Object a, Token paren) {
+		CompiledFn compiled = compiled();
+		if (compiled != null) {
+			return compiled.invoke(interpreter, this, a, null, null);
+		}
+		Object[] frame = new Object[frameSize];
+		frame[0] = a;
+		return run(interpreter, frame);
+	}
+
+	@Override
+	public Object call2(Interpreter interpreter, Object a, Object b, Token paren) {
+		CompiledFn compiled = compiled();
+		if (compiled != null) {
+			return compiled.invoke(interpreter, this, a, b, null);
 		}
-		scope.define(name.getLexeme(), this);
-		try {
-			interpreter.execute(body, scope);
-		} catch (Return r) {
-			return r.getValue();
+		Object[] frame = new Object[frameSize];
+		frame[0] = a;
+		frame[1] = b;
+		return run(interpreter, frame);
+	}
+
+	@Override
+	public Object call3(Interpreter interpreter, Object a, Object b, Object c, Token paren) {
+		CompiledFn compiled = compiled();
+		if (compiled != null) {
+			return compiled.invoke(interpreter, this, a, b, c);
+		}
+		Object[] frame = new Object[frameSize];
+		frame[0] = a;
+		frame[1] = b;
+		frame[2] = c;
+		return run(interpreter, frame);
+	}
+
+	/**
+	 * Counts a call, compiling the function once it is hot
+	 * @return the compiled body, or <code>null</code> if the function is interpreted
+	 */
+	private CompiledFn compiled() {
+		CompiledFn compiled = template.compiled;
+		if (compiled == null && Jit.isEnabled() && ++template.calls == Jit.getThreshold()) {
+			compiled = Jit.compile(template);
+			template.compiled = compiled;
+		}
+		return compiled;
+	}
+
+	/**
+	 * Runs the body of the function. A tail call to itself runs the body again in the same frame
+	 * @param interpreter the interpreter to run it in
+	 * @param frame the frame, with the arguments in the first slots
+	 * @return the value returned by the function
+	 */
+	private Object run(Interpreter interpreter, Object[] frame) {
+		while (true) {
+			frame[arity] = this;
+			for (int slot : cellSlots) {
+				frame[slot] = new Cell(frame[slot]);
+			}
+			Completion completion = interpreter.execute(this, frame);
+			if (completion == Completion.RETURN) {
+				return interpreter.takeReturnValue();
+			} else if (completion != Completion.TAIL_CALL) {
+				interpreter.checkOutsideLoop(completion);
+				return null;
+			}
+			// Closures made by the last run keep their own cells, so the frame can be cleared and reused
+			Object[] args = interpreter.takeTailCallArgs();
+			Arrays.fill(frame, null);
+			System.arraycopy(args, 0, frame, 0, args.length);
 		}
-		
-		return null;
 	}
 	
 	@Override
@@ -1,10 +1,15 @@
 package com.nailuj29gaming.language;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 /**
  * A callable class. 
- * Used in {@link Fn}s and created as anonmyous inner classes for native functions
+ * Used in {@link Fn}s and created as anonmyous inner classes for native functions.
+ * Calls with up to three arguments go through <code>call0</code> to <code>call3</code> when there are exactly as many
+ * arguments as the function takes, so the arguments don't need a list. Those default to {@link #call},
+ * and functions that are called often override them
  */
 public interface IFn {
 	/**
@@ -19,6 +24,52 @@ public interface IFn {
 	 * @return the value returned by the function
 	 */
 	public Object call(Interpreter interpreter, List<Object> args, Token paren);
+
+	/**
+	 * Calls a function that takes no arguments
+	 * @param interpreter same as {@link call}
+	 * @param paren same as {@link call}
+	 * @return the value returned by the function
+	 */
+	public default Object call0(Interpreter interpreter, Token paren) {
+		return call(interpreter, Collections.emptyList(), paren);
+	}
+
+	/**
+	 * Calls a function that takes one argument
+	 * @param interpreter same as {@link call}
+	 * @param a the argument
+	 * @param paren same as {@link call}
+	 * @return the value returned by the function
+	 */
+	public default Object call1(Interpreter interpreter, Object a, Token paren) {
+		return call(interpreter, Collections.singletonList(a), paren);
+	}
+
+	/**
+	 * Calls a function that takes two arguments
+	 * @param interpreter same as {@link call}
+	 * @param a the first argument
+	 * @param b the second argument
+	 * @param paren same as {@link call}
+	 * @return the value returned by the function
+	 */
+	public default Object call2(Interpreter interpreter, Object a, Object b, Token paren) {
+		return call(interpreter, Arrays.asList(a, b), paren);
+	}
+
+	/**
+	 * Calls a function that takes three arguments
+	 * @param interpreter same as {@link call}
+	 * @param a the first argument
+	 * @param b the second argument
+	 * @param c the third argument
+	 * @param paren same as {@link call}
+	 * @return the value returned by the function
+	 */
+	public default Object call3(Interpreter interpreter, Object a, Object b, Object c, Token paren) {
+		return call(interpreter, Arrays.asList(a, b, c), paren);
+	}
 	
 	/**
 	 * Calls a function with currying
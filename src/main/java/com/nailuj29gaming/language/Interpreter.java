@@ -1,54 +1,229 @@
 package com.nailuj29gaming.language;
 
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.Writer;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.nailuj29gaming.language.ast.AstPrinter;
 import com.nailuj29gaming.language.ast.Expr;
+import com.nailuj29gaming.language.ast.Optimizer;
 import com.nailuj29gaming.language.ast.Stmt;
 
 /**
- * Interprets an AST
+ * Interprets an AST.
+ * Each interpreter has its own globals, imports and streams, so a parsed program can be run by several interpreters
+ * on different threads at once. An interpreter itself should only be used by one thread at a time
  * 
  * @see Expr
  * @see Stmt
  * @see Parser
  */
-public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
+public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Completion> {
 
 	/**
-	 * The global variables defined by default
+	 * The version of the language, which scripts can read as <code>VERSION</code>
 	 */
-	public static Environment globals = new Environment();
+	public static final String VERSION = "0.0.1";
+
+	/**
+	 * The global variables defined by default. Frozen once the class is initialized, each interpreter starts with a copy of it
+	 */
+	static final Environment BUILTINS = new Environment();
+
+	/**
+	 * The built-in modules you can import. If a module isn't found, fall back to one of these.
+	 * They are frozen, so every interpreter shares them
+	 */
+	private static final Map<String, Environment> BUILTIN_IMPORTS;
+	
+	/**
+	 * The modules imported from files by interpreters that weren't given a registry of their own,
+	 * so each module is only parsed and run once however many interpreters import it
+	 */
+	private static final ModuleRegistry SHARED_MODULES = new ModuleRegistry();
+	
+	/**
+	 * This interpreter's copy of the global variables defined by default
+	 */
+	private final Environment globals;
+	
+	/**
+	 * All modules that have been imported, shared with the interpreters {@link #fork() forked} from this one
+	 */
+	public final Map<String, Environment> imports;
+	
+	/**
+	 * Every module imported from a file, shared with the interpreters that run those modules.
+	 * Unless another is passed in, this is the registry every interpreter shares
+	 */
+	private final ModuleRegistry modules;
+	
+	/**
+	 * Where <code>input</code> reads from
+	 */
+	private final Scanner in;
+	
+	/**
+	 * Where <code>print</code> and <code>printRaw</code> write to
+	 */
+	private final PrintWriter out;
+	
+	/**
+	 * The variables and functions currently defined, that weren't resolved to a slot
+	 */
+	private Environment environment;
+	
+	/**
+	 * The slots of the running function, or of the block at the top level of the script that is running
+	 */
+	private Object[] frame;
+	
+	/**
+	 * The variables captured by the running function
+	 */
+	private Cell[] upvalues;
+	
+	/**
+	 * Set by {@link #number(Expr)} when the expression did not evaluate to a number
+	 */
+	private boolean notANumber;
+	
+	/**
+	 * The value of the last expression {@link #number(Expr)} could not turn into a number
+	 */
+	private Object notANumberValue;
+	
+	/**
+	 * The value of the last <code>return</code> statement, until its function collects it
+	 */
+	private Object returnValue;
+
+	/**
+	 * The function running, or <code>null</code> at the top level of a script
+	 */
+	private Fn function;
+
+	/**
+	 * The arguments of the last tail call, until its function collects them
+	 */
+	private Object[] tailCallArgs;
 	
 	/**
-	 * All modules that have been imported
+	 * The keyword of the last <code>break</code> or <code>continue</code> statement, used for error reporting
 	 */
-	public Map<String, Environment> imports = new HashMap<>();
+	private Token completionKeyword;
+	
 
 	/**
-	 * The built-in modules you can import. If a module isn't found, fall back to one of these
+	 * Creates an interpreter that reads from standard input and writes to standard output
+	 */
+	public Interpreter() {
+		this(new InputStreamReader(System.in), new PrintWriter(System.out, true));
+	}
+	
+	/**
+	 * Creates an interpreter with its own streams
+	 * @param in where <code>input</code> reads from
+	 * @param out where <code>print</code> and <code>printRaw</code> write to
 	 */
-	public static Map<String, Environment> builtInImports = new HashMap<>();
+	public Interpreter(Reader in, Writer out) {
+		this(in, out, SHARED_MODULES);
+	}
 	
 	/**
-	 * The variables and functions currently defined
+	 * Creates an interpreter with its own streams, that keeps the modules it imports in a registry
+	 * @param in where <code>input</code> reads from
+	 * @param out where <code>print</code> and <code>printRaw</code> write to
+	 * @param modules the registry of modules imported from files, which may be shared with other interpreters
 	 */
-	private Environment environment = new Environment(globals);
+	public Interpreter(Reader in, Writer out, ModuleRegistry modules) {
+		this(new Scanner(in), out instanceof PrintWriter ? (PrintWriter) out : new PrintWriter(out, true), modules,
+				new ConcurrentHashMap<String, Environment>());
+	}
 	
 	/**
-	 * The scanner used in <code>input</code>
+	 * Creates an interpreter with its own globals and imports that shares another's streams and modules, to run a module it imports
+	 * @param parent the interpreter to share with
 	 */
-	private static Scanner scan = new Scanner(System.in);
+	public Interpreter(Interpreter parent) {
+		this(parent.in, parent.out, parent.modules, new ConcurrentHashMap<String, Environment>());
+	}
 	
+	private Interpreter(Scanner in, PrintWriter out, ModuleRegistry modules, Map<String, Environment> imports) {
+		this.in = in;
+		this.out = out;
+		this.modules = modules;
+		this.imports = imports;
+		this.globals = BUILTINS.copy();
+		this.environment = new Environment(globals);
+	}
+	
+	/**
+	 * Creates an interpreter to call this one's functions on another thread.
+	 * It has its own globals, and shares this one's streams, modules and imports, so the functions can use the modules this one imported
+	 * @return the new interpreter
+	 */
+	public Interpreter fork() {
+		return new Interpreter(in, out, modules, imports);
+	}
+	
+	/**
+	 * @return this interpreter's copy of the global variables defined by default
+	 */
+	public Environment getGlobals() {
+		return globals;
+	}
+	
+	/**
+	 * @return the variables defined at the top level of the script, that weren't resolved to a slot. Only meaningful while the script isn't running
+	 */
+	public Environment getEnvironment() {
+		return environment;
+	}
+	
+	/**
+	 * @return where <code>print</code> and <code>printRaw</code> write to
+	 */
+	public PrintWriter getOut() {
+		return out;
+	}
+	
+	/**
+	 * @return the registry of modules this interpreter has imported from files
+	 */
+	public ModuleRegistry getModules() {
+		return modules;
+	}
+	
+	/**
+	 * @return the registry of modules shared by every interpreter that wasn't given one of its own
+	 */
+	public static ModuleRegistry getSharedModules() {
+		return SHARED_MODULES;
+	}
+	
+	/**
+	 * @param name the name of a built-in module
+	 * @return the module, or <code>null</code> if there isn't one with that name
+	 */
+	public static Environment getBuiltInImport(String name) {
+		return BUILTIN_IMPORTS.get(name);
+	}
 
 	private static String stringify(Object value) {
 		if (value instanceof Double) {
@@ -81,7 +256,8 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 	
 	static {
 		// Builtin functions
-		globals.define("print", new IFn() {
+		Map<String, Environment> builtInImports = new HashMap<>();
+		BUILTINS.define("print", new IFn() {
 
 			@Override
 			public int getArity() {
@@ -90,9 +266,12 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
 			@Override
 			public Object call(Interpreter interpreter, List<Object> args, Token paren) {
-				Object value = args.get(0);
-				
-				System.out.println(stringify(value));
+				return call1(interpreter, args.get(0), paren);
+			}
+
+			@Override
+			public Object call1(Interpreter interpreter, Object value, Token paren) {
+				interpreter.out.println(stringify(value));
 				return null;
 			}
 			
@@ -102,7 +281,7 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 			}
 		});
 		
-		globals.define("printRaw", new IFn() {
+		BUILTINS.define("printRaw", new IFn() {
 
 			@Override
 			public int getArity() {
@@ -111,8 +290,13 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
 			@Override
 			public Object call(Interpreter interpreter, List<Object> args, Token paren) {
-				Object value = args.get(0);
-				System.out.print(stringify(value));
+				return call1(interpreter, args.get(0), paren);
+			}
+
+			@Override
+			public Object call1(Interpreter interpreter, Object value, Token paren) {
+				interpreter.out.print(stringify(value));
+				interpreter.out.flush();
 				return null;
 			}
 			
@@ -122,7 +306,7 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 			}
 		});
 		
-		globals.define("input", new IFn() {
+		BUILTINS.define("input", new IFn() {
 			
 			@Override
 			public int getArity() {
@@ -131,7 +315,11 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 			
 			@Override
 			public Object call(Interpreter interpreter, List<Object> args, Token paren) {
-				String line = scan.next();
+				String line;
+				// Interpreters on other threads may share the scanner
+				synchronized (interpreter.in) {
+					line = interpreter.in.next();
+				}
 				
 				return line;
 			}
@@ -142,7 +330,7 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 			}
 		});
 		
-		globals.define("len", new IFn() {
+		BUILTINS.define("len", new IFn() {
 			
 			@Override
 			public int getArity() {
@@ -151,12 +339,17 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 			
 			@Override
 			public Object call(Interpreter interpreter, List<Object> args, Token paren) {
-				if (args.get(0) instanceof List<?>) {
-					return (double)(((List<?>)args.get(0)).size());
+				return call1(interpreter, args.get(0), paren);
+			}
+
+			@Override
+			public Object call1(Interpreter interpreter, Object a, Token paren) {
+				if (a instanceof List<?>) {
+					return (double)(((List<?>)a).size());
 				}
 				
-				if (args.get(0) instanceof String) {
-					return (double)((String)args.get(0)).length();
+				if (a instanceof String) {
+					return (double)((String)a).length();
 				}
 				throw new InterpretError("Expect a list", paren);
 			}
@@ -167,7 +360,9 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 			}
 		});
 		
-		globals.define("VERSION", "0.0.1");
+		Tasks.define(BUILTINS);
+		
+		BUILTINS.define("VERSION", VERSION);
 		
 		Environment os = new Environment();
 		os.define("name", System.getProperty("os.name"));
@@ -273,6 +468,8 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 		});
 		
 		builtInImports.put("io", io);
+		builtInImports.put("parallel", Parallel.module());
+		builtInImports.put("channel", Channels.module());
 		
 		Environment math = new Environment();
 		math.define("pi", Math.PI);
@@ -286,9 +483,14 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 			
 			@Override
 			public Object call(Interpreter interpreter, List<Object> args, Token paren) {
+				return call1(interpreter, args.get(0), paren);
+			}
+
+			@Override
+			public Object call1(Interpreter interpreter, Object a, Token paren) {
 			
-				if (args.get(0) instanceof Double) {
-					double value = (Double)args.get(0);
+				if (a instanceof Double) {
+					double value = (Double)a;
 					return Math.sqrt(value);
 				}
 				
@@ -311,10 +513,15 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 			
 			@Override
 			public Object call(Interpreter interpreter, List<Object> args, Token paren) {
+				return call2(interpreter, args.get(0), args.get(1), paren);
+			}
+
+			@Override
+			public Object call2(Interpreter interpreter, Object a, Object b, Token paren) {
 	
-				if (args.get(0) instanceof Double && args.get(1) instanceof Double) {
-					double base = (Double)args.get(0);
-					double exp = (Double)args.get(1);
+				if (a instanceof Double && b instanceof Double) {
+					double base = (Double)a;
+					double exp = (Double)b;
 					return Math.pow(base, exp);
 				}
 				
@@ -336,8 +543,13 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 			
 			@Override
 			public Object call(Interpreter interpreter, List<Object> args, Token paren) {
-				if (args.get(0) instanceof Double) {
-					double value = (Double)args.get(0);
+				return call1(interpreter, args.get(0), paren);
+			}
+
+			@Override
+			public Object call1(Interpreter interpreter, Object a, Token paren) {
+				if (a instanceof Double) {
+					double value = (Double)a;
 					return Math.exp(value);
 				}
 				
@@ -359,8 +571,13 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 			
 			@Override
 			public Object call(Interpreter interpreter, List<Object> args, Token paren) {
-				if (args.get(0) instanceof Double) {
-					double value = (Double)args.get(0);
+				return call1(interpreter, args.get(0), paren);
+			}
+
+			@Override
+			public Object call1(Interpreter interpreter, Object a, Token paren) {
+				if (a instanceof Double) {
+					double value = (Double)a;
 					return Math.sin(value);
 				}
 				
@@ -382,8 +599,13 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 			
 			@Override
 			public Object call(Interpreter interpreter, List<Object> args, Token paren) {
-				if (args.get(0) instanceof Double) {
-					double value = (Double)args.get(0);
+				return call1(interpreter, args.get(0), paren);
+			}
+
+			@Override
+			public Object call1(Interpreter interpreter, Object a, Token paren) {
+				if (a instanceof Double) {
+					double value = (Double)a;
 					return Math.cos(value);
 				}
 				
@@ -405,8 +627,13 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 			
 			@Override
 			public Object call(Interpreter interpreter, List<Object> args, Token paren) {
-				if (args.get(0) instanceof Double) {
-					double value = (Double)args.get(0);
+				return call1(interpreter, args.get(0), paren);
+			}
+
+			@Override
+			public Object call1(Interpreter interpreter, Object a, Token paren) {
+				if (a instanceof Double) {
+					double value = (Double)a;
 					return Math.tan(value);
 				}
 				
@@ -428,8 +655,13 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 			
 			@Override
 			public Object call(Interpreter interpreter, List<Object> args, Token paren) {
-				if (args.get(0) instanceof Double) {
-					double value = (Double)args.get(0);
+				return call1(interpreter, args.get(0), paren);
+			}
+
+			@Override
+			public Object call1(Interpreter interpreter, Object a, Token paren) {
+				if (a instanceof Double) {
+					double value = (Double)a;
 					return Math.log(value);
 				}
 				
@@ -442,8 +674,11 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 			}
 		});
 		
-		
-		
+		BUILTINS.freeze();
+		for (Environment module : builtInImports.values()) {
+			module.freeze();
+		}
+		BUILTIN_IMPORTS = Collections.unmodifiableMap(builtInImports);
 	}
 
 	/**
@@ -481,94 +716,68 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 	}
 
 	/**
-	 * An exception meant to send a message to certain syntactic structures by unwinding the stack until it finds one of them
-	 *
+	 * Evaluate an expression
+	 * @param expr the expression to evaluate
+	 * @return the value returned by the expression
 	 */
-	static class StackUnwindingMessage extends RuntimeException {
-
-		/**
-		 * 
-		 */
-		private static final long serialVersionUID = -6816328639177916215L;
-
+	public Object evaluate(Expr expr) {
+		return expr.accept(this);
 	}
 
 	/**
-	 * Signals a <code>break</code> statement
+	 * Runs a list of statements
+	 * @param stmts the statements to run
 	 */
-	private class Break extends StackUnwindingMessage {
-		/**
-		 * 
-		 */
-		private static final long serialVersionUID = -4281311888639783169L;
-		Token keyword;
-
-		/**
-		 * @param keyword
-		 */
-		public Break(Token keyword) {
-			this.keyword = keyword;
-		}
-
-		/**
-		 * @return the keyword
-		 */
-		public Token getKeyword() {
-			return keyword;
-		}
-
+	public void interpret(List<Stmt> stmts) {
+		run(stmts);
 	}
-
+	
 	/**
-	 * Signals a <code>continue</code> statement
+	 * Runs a list of statements, returning what the script returned
+	 * @param stmts the statements to run
+	 * @return the value of a <code>return</code> at the top level of the script, or <code>null</code> if it didn't return
 	 */
-	private class Continue extends StackUnwindingMessage {
-		/**
-		 * 
-		 */
-		private static final long serialVersionUID = -8406027968416425753L;
-		Token keyword;
-
-		/**
-		 * @param keyword
-		 */
-		public Continue(Token keyword) {
-			this.keyword = keyword;
+	public Object run(List<Stmt> stmts) {
+		for (Stmt stmt : stmts) {
+			Completion completion = execute(stmt);
+			if (completion == Completion.RETURN) {
+				// Returning from the script ends it
+				return takeReturnValue();
+			}
+			checkOutsideLoop(completion);
 		}
-
-		/**
-		 * @return the keyword
-		 */
-		public Token getKeyword() {
-			return keyword;
+		return null;
+	}
+	
+	/**
+	 * Throws if a <code>break</code> or <code>continue</code> got out of every loop
+	 * @param completion how the statement finished
+	 */
+	void checkOutsideLoop(Completion completion) {
+		if (completion == Completion.BREAK || completion == Completion.CONTINUE) {
+			throw new InterpretError("Cant break outside a loop", completionKeyword);
 		}
-
 	}
-
+	
 	/**
-	 * Evaluate an expression
-	 * @param expr the expression to evaluate
-	 * @return the value returned by the expression
+	 * Collects the value of the last <code>return</code> statement
+	 * @return the value
 	 */
-	public Object evaluate(Expr expr) {
-		return expr.accept(this);
+	public Object takeReturnValue() {
+		Object value = returnValue;
+		returnValue = null;
+		return value;
 	}
 
 	/**
-	 * Runs a list of statements
-	 * @param stmts the statements to run
+	 * Collects the arguments of the last tail call
+	 * @return the arguments
+	 * @see Completion#TAIL_CALL
 	 */
-	public void interpret(List<Stmt> stmts) {
-		try {
-			for (Stmt stmt : stmts) {
-				execute(stmt);
-			}
-		} catch (Break e) {
-			throw new InterpretError("Cant break outside a loop", e.getKeyword());
-		} catch (Continue e) {
-			throw new InterpretError("Cant break outside a loop", e.getKeyword());
-		}
-
+	public Object[] takeTailCallArgs() {
+		Object[] args = tailCallArgs;
+		tailCallArgs = null;
+		return args;
 	}
 	
 	/**
@@ -584,140 +793,278 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 	/**
 	 * Runs a single statement
 	 * @param stmt the statement to run
+	 * @return how the statement finished, or <code>null</code> if it finished normally
 	 */
-	public void execute(Stmt stmt) {
-		stmt.accept(this);
+	public Completion execute(Stmt stmt) {
+		return stmt.accept(this);
 	}
 
 	/**
-	 * Runs a single statement in an environment
-	 * @param stmt the statement to run
-	 * @param scope the environment to run it in
+	 * Runs the body of a function
+	 * @param function the closure being called, which holds its captured variables and where names that weren't resolved to a slot are looked up
+	 * @param frame the slots of the function
+	 * @return how the body finished, or <code>null</code> if it finished normally
 	 */
-	public void execute(Stmt stmt, Environment scope) {
+	public Completion execute(Fn function, Object[] frame) {
+		Object[] previousFrame = this.frame;
+		Cell[] previousUpvalues = this.upvalues;
 		Environment previous = this.environment;
-		this.environment = scope;
+		Fn previousFunction = this.function;
+		this.frame = frame;
+		this.upvalues = function.getUpvalues();
+		this.environment = function.getEnclosing();
+		this.function = function;
 		try {
-			execute(stmt);
+			return execute(function.getBody());
 		} finally {
+			this.frame = previousFrame;
+			this.upvalues = previousUpvalues;
 			this.environment = previous;
+			this.function = previousFunction;
 		}
 	}
 
 	@Override
-	public Void visitBlockStmt(Stmt.Block stmt) {
-		Environment previous = environment;
-		environment = new Environment(previous);
+	public Completion visitBlockStmt(Stmt.Block stmt) {
+		if (stmt.getSlots() < 0) {
+			// The block's variables live in the frame of the running function
+			return executeBlock(stmt);
+		}
+		Object[] previous = frame;
+		frame = new Object[stmt.getSlots()];
 		try {
-			for (Stmt statement : stmt.getStmts()) {
-				statement.accept(this);
-			}
+			return executeBlock(stmt);
 		} finally {
-			environment = previous;
+			frame = previous;
+		}
+	}
+	
+	private Completion executeBlock(Stmt.Block stmt) {
+		for (Stmt statement : stmt.getStmts()) {
+			Completion completion = statement.accept(this);
+			if (completion != null) {
+				return completion;
+			}
 		}
 		return null;
 	}
 
 	@Override
-	public Void visitBreakStmt(Stmt.Break stmt) {
-		throw new Break(stmt.getKeyword());
+	public Completion visitBreakStmt(Stmt.Break stmt) {
+		completionKeyword = stmt.getKeyword();
+		return Completion.BREAK;
 	}
 
 	@Override
-	public Void visitContinueStmt(Stmt.Continue stmt) {
-		throw new Continue(stmt.getKeyword());
+	public Completion visitContinueStmt(Stmt.Continue stmt) {
+		completionKeyword = stmt.getKeyword();
+		return Completion.CONTINUE;
 	}
 
 	@Override
-	public Void visitExpressionStmt(Stmt.Expression stmt) {
+	public Completion visitExpressionStmt(Stmt.Expression stmt) {
 		evaluate(stmt.getExpression());
 		return null;
 	}
 
-	public Void visitIfStmt(Stmt.If stmt) {
-		if (isTrue(stmt.getCondition())) {
-			execute(stmt.getIfBranch());
-		} else {
-			execute(stmt.getElseBranch());
+	@Override
+	public Completion visitForEachStmt(Stmt.ForEach stmt) {
+		Iterator<?> items = iterate(evaluate(stmt.getIterable()), stmt.getKeyword());
+		if (stmt.getSlots() < 0) {
+			return loop(stmt, items);
+		}
+		Object[] previous = frame;
+		frame = new Object[stmt.getSlots()];
+		try {
+			return loop(stmt, items);
+		} finally {
+			frame = previous;
 		}
+	}
 
+	private Completion loop(Stmt.ForEach stmt, Iterator<?> items) {
+		int slot = stmt.getVariable().getSlot();
+		boolean captured = stmt.getVariable().isCaptured();
+		while (items.hasNext()) {
+			// Each iteration has its own variable, so closures made in the body keep the item they saw
+			frame[slot] = captured ? new Cell(items.next()) : items.next();
+			Completion completion = executeBlock(stmt.getBody());
+			if (completion == Completion.BREAK) {
+				break;
+			} else if (completion == Completion.RETURN || completion == Completion.TAIL_CALL) {
+				return completion;
+			}
+		}
 		return null;
 	}
+
+	/**
+	 * Starts a for-each loop
+	 * @param iterable the value being looped over
+	 * @param keyword the for keyword, used for error reporting
+	 * @return an iterator over the items of the list
+	 */
+	public static Iterator<?> iterate(Object iterable, Token keyword) {
+		if (iterable instanceof List<?>) {
+			return ((List<?>) iterable).iterator();
+		}
+		throw new InterpretError("Can only loop over a list", keyword);
+	}
+
+	public Completion visitIfStmt(Stmt.If stmt) {
+		if (isTrue(stmt.getCondition())) {
+			return execute(stmt.getIfBranch());
+		} else {
+			return execute(stmt.getElseBranch());
+		}
+	}
 	
-	public Void visitImportStmt(Stmt.Import stmt) {
+	public Completion visitImportStmt(Stmt.Import stmt) {
 		String filename = String.format("%s.scr", stmt.getImportName().getLexeme());
 		if (Files.exists(Paths.get(filename))) {
-			String source;
 			try {
-				source = new String(Files.readAllBytes(Paths.get(filename)));
-
-				Lexer lexer = new Lexer();
-				Parser parser = new Parser();
-				List<Token> tokens = lexer.lex(source);
-				
-				
-				if (Main.DEBUG) {
-					for (Token tkn : tokens) {
-						System.out.println(tkn);
+				imports.put(stmt.getImportName().getLexeme(), modules.load(Paths.get(filename), stmt.getImportName(), new ModuleRegistry.Loader() {
+					@Override
+					public Environment load(Path path) throws IOException {
+						return new Interpreter(Interpreter.this).interpretForImport(parseModule(path));
 					}
-					System.out.println("Lexed " + tokens.size() + " tokens.");
-				}
-				List<Stmt> statements = new ArrayList<Stmt>();
-				try {
-					statements = parser.parse(tokens);
-				} catch (Parser.ParseError e) {
-					Main.error(e.getMessage(), e.getToken().getLine(), e.getToken().getColumn());
-					System.exit(1);
-				}
-				if (Main.DEBUG) {
-					AstPrinter printer = new AstPrinter();
-					System.out.println(printer.print(statements));
-					System.out.println("Done parsing");
-				}
-				Interpreter interpreter = new Interpreter();
-				try {
-					imports.put(stmt.getImportName().getLexeme(), interpreter.interpretForImport(statements));
-				} catch (InterpretError e) {
-					Main.error(e.getMessage(), e.getToken().getLine(), e.getToken().getColumn());
-					System.exit(1);
-				}
+				}));
 			} catch (IOException e) {
-				// Should never happen
+				// The file can't be read, or was deleted after it was found
+				throw new InterpretError("Could not read import: " + e.getMessage(), stmt.getImportName());
 			}
 	
-		} else if (builtInImports.containsKey(stmt.getImportName().getLexeme())) {
-			imports.put(stmt.getImportName().getLexeme(), builtInImports.get(stmt.getImportName().getLexeme()));
+		} else if (BUILTIN_IMPORTS.containsKey(stmt.getImportName().getLexeme())) {
+			imports.put(stmt.getImportName().getLexeme(), BUILTIN_IMPORTS.get(stmt.getImportName().getLexeme()));
 		} else {
 			throw new InterpretError("Could not find import", stmt.getImportName());
 		}
 		return null;
 	}
+	
+	/**
+	 * Reads, lexes, parses and resolves the source file of a module
+	 * @param path the path to the module
+	 * @return the statements in the module
+	 * @throws IOException if the file can't be read
+	 * @throws Parser.ParseError if the module can't be parsed
+	 * @throws Lexer.LexError if the module can't be lexed
+	 */
+	public static List<Stmt> parseModule(Path path) throws IOException {
+		return parseModule(SourceFile.open(path));
+	}
+	
+	/**
+	 * Lexes, parses, optimizes and resolves the source of a module, unless the {@link ModuleCache} already has it.
+	 * The cache isn't read while tokens or trees are being dumped, so every module is parsed and dumped
+	 * @param source the module's source file
+	 * @return the statements in the module
+	 * @throws Parser.ParseError if the module can't be parsed
+	 * @throws Lexer.LexError if the module can't be lexed
+	 */
+	public static List<Stmt> parseModule(SourceFile source) {
+		List<Stmt> cached = Lexer.isDumping() || Optimizer.isDumping() ? null : ModuleCache.load(source);
+		if (cached != null) {
+			if (Main.DEBUG) {
+				System.out.println("Loaded " + source.getPath() + " from the cache");
+			}
+			return cached;
+		}
+		Lexer lexer = new Lexer();
+		// The module is lexed as it is parsed, so unless they are dumped, its tokens are never all in memory at once
+		TokenStream tokens = lexer.lex(source.getBytes());
+		if (Lexer.isDumping()) {
+			// Lexes the whole module, so a lex error is thrown from here instead of from the parser
+			List<Token> tokenList = tokens.readAll().toList();
+			for (Token tkn : tokenList) {
+				System.out.println(tkn);
+			}
+			System.out.println("Lexed " + tokenList.size() + " tokens.");
+		}
+		List<Stmt> statements = parse(tokens, source.getPath().toString());
+		if (Main.DEBUG) {
+			AstPrinter printer = new AstPrinter();
+			System.out.println(printer.print(statements));
+			System.out.println("Done parsing");
+		}
+		ModuleCache.store(source, statements);
+		return statements;
+	}
+	
+	/**
+	 * Parses, optimizes and resolves tokens, so the statements can be run by any number of interpreters
+	 * @param tokens the tokens, ending with an EOF token
+	 * @param name what to call the source when its tree is dumped
+	 * @return the statements
+	 * @throws Parser.ParseError if the tokens can't be parsed
+	 * @throws Lexer.LexError if the source can't be lexed
+	 */
+	public static List<Stmt> parse(TokenStream tokens, String name) {
+		List<Stmt> statements = new Parser().parse(tokens);
+		if (Optimizer.isDumping()) {
+			System.out.println("== " + name + " before optimizing ==");
+			System.out.println(new AstPrinter().print(statements));
+		}
+		Optimizer optimizer = new Optimizer();
+		statements = optimizer.optimize(statements);
+		if (Optimizer.isDumping()) {
+			System.out.printf("== %s after optimizing (%d folded, %d removed) ==%n", name, optimizer.getFolded(),
+					optimizer.getRemoved());
+			System.out.println(new AstPrinter().print(statements));
+		}
+		new Resolver().resolve(statements);
+		return statements;
+	}
 
 	@Override
-	public Void visitReturnStmt(Stmt.Return stmt) {
-		if (stmt.getExpr() == null) {
-			throw new Return(null, stmt.getKeyword());
+	public Completion visitReturnStmt(Stmt.Return stmt) {
+		if (stmt.getExpr() instanceof Expr.Call && function != null) {
+			Expr.Call call = (Expr.Call) stmt.getExpr();
+			Object callee = evaluate(call.getCallee());
+			List<Expr> argExprs = call.getArgs();
+			if (callee == function && argExprs.size() == function.getArity()) {
+				// Every argument is evaluated before the frame is reused, since they may read the parameters
+				Object[] args = new Object[argExprs.size()];
+				for (int i = 0; i < args.length; i++) {
+					args[i] = evaluate(argExprs.get(i));
+				}
+				tailCallArgs = args;
+				return Completion.TAIL_CALL;
+			}
+			returnValue = call(call, callee);
+			return Completion.RETURN;
 		}
-		throw new Return(evaluate(stmt.getExpr()), stmt.getKeyword());
+		returnValue = stmt.getExpr() == null ? null : evaluate(stmt.getExpr());
+		return Completion.RETURN;
 	}
 
 	@Override
-	public Void visitVarStmt(Stmt.Var stmt) {
-		environment.declare(stmt.getIdentifier().getLexeme());
-		environment.set(stmt.getIdentifier().getLexeme(), evaluate(stmt.getRight()), stmt.getIdentifier());
+	public Completion visitVarStmt(Stmt.Var stmt) {
+		int slot = stmt.getSlot();
+		if (slot >= 0 && stmt.isCaptured()) {
+			Cell cell = new Cell();
+			frame[slot] = cell;
+			cell.set(evaluate(stmt.getRight()));
+			return null;
+		} else if (slot >= 0) {
+			frame[slot] = null;
+			frame[slot] = evaluate(stmt.getRight());
+			return null;
+		}
+		environment.declare(stmt.getIdentifier().getSymbol());
+		environment.set(stmt.getIdentifier().getSymbol(), evaluate(stmt.getRight()), stmt.getIdentifier());
 
 		return null;
 	}
 
 	@Override
-	public Void visitWhileStmt(Stmt.While stmt) {
+	public Completion visitWhileStmt(Stmt.While stmt) {
 		while (isTrue(stmt.getCondition())) {
-			try {
-				execute(stmt.getBody());
-			} catch (Break e) {
+			Completion completion = execute(stmt.getBody());
+			if (completion == Completion.BREAK) {
 				break;
-			} catch (Continue e) {
-				continue;
+			} else if (completion == Completion.RETURN || completion == Completion.TAIL_CALL) {
+				return completion;
 			}
 		}
 		return null;
@@ -725,39 +1072,234 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
 	@Override
 	public Object visitAssignExpr(Expr.Assign expr) {
-		environment.set(expr.getIdentifier().getLexeme(), evaluate(expr.getRight()), expr.getIdentifier());
+		assignVariable(expr, evaluate(expr.getRight()));
 		return null;
 	}
 	
+	/**
+	 * Sets a variable, using its slot if the {@link Resolver} found one
+	 * @param expr the assignment
+	 * @param value the new value of the variable
+	 */
+	private void assignVariable(Expr.Assign expr, Object value) {
+		Expr.Storage storage = expr.getStorage();
+		if (storage == Expr.Storage.LOCAL) {
+			frame[expr.getSlot()] = value;
+		} else if (storage == Expr.Storage.CELL) {
+			((Cell) frame[expr.getSlot()]).set(value);
+		} else if (storage == Expr.Storage.UPVALUE) {
+			upvalues[expr.getSlot()].set(value);
+		} else {
+			environment.set(expr.getIdentifier().getSymbol(), value, expr.getIdentifier());
+		}
+	}
+	
 	@Override
 	public Object visitAssignIndexExpr(Expr.AssignIndex expr) {
-		Object value = environment.get(expr.getIdentifier().getLexeme(), expr.getIdentifier());
+		Object value = lookUpVariable(expr.getIdentifier(), expr.getStorage(), expr.getSlot());
+		if (!(value instanceof List)) {
+			throw new InterpretError("Cannot index non-iterable", expr.getIdentifier());
+		}
+		setIndex(value, evaluate(expr.getIndex()), evaluate(expr.getRight()), expr.getIdentifier());
+		assignVariable(expr, value);
+		return value;
+	}
+	
+	/**
+	 * Sets an item of a list
+	 * @param value the list
+	 * @param indexValue the index to set at
+	 * @param item the new item
+	 * @param identifier the name of the list, used for error reporting
+	 */
+	@SuppressWarnings("unchecked")
+	public static void setIndex(Object value, Object indexValue, Object item, Token identifier) {
 		if (value instanceof List) {
-			List list = (List)value;
+			List<Object> list = (List<Object>)value;
 			
-			Object indexValue = evaluate(expr.getIndex());
 			if (indexValue instanceof Double) {
 				int index = (int)(double)(Double)indexValue;
 				try {
-					list.set(index, evaluate(expr.getRight()));
+					list.set(index, item);
 				} catch (IndexOutOfBoundsException e) {
-					throw new InterpretError(String.format("Index out of bounds: %s", e.getMessage()), expr.getIdentifier());
+					throw new InterpretError(String.format("Index out of bounds: %s", e.getMessage()), identifier);
 				}
-				environment.set(expr.getIdentifier().getLexeme(), list, expr.getIdentifier());
 			} else {
-				throw new InterpretError("Cannot index using a value that isn't a number", expr.getIdentifier());
+				throw new InterpretError("Cannot index using a value that isn't a number", identifier);
 			}
 		} else {
-			throw new InterpretError("Cannot index non-iterable", expr.getIdentifier());
+			throw new InterpretError("Cannot index non-iterable", identifier);
 		}
-		return value;
 	}
 	
 	@Override
 	public Object visitBinaryExpr(Expr.Binary expr) {
+		Token operator = expr.getOperator();
+		if (isArithmetic(operator.getType()) || isComparison(operator.getType())) {
+			// Nested arithmetic is evaluated as primitive doubles, and only the final result is boxed
+			double left = number(expr.getLeft());
+			if (notANumber) {
+				return binary(operator, takeNotANumber(), evaluate(expr.getRight()));
+			}
+			double right = number(expr.getRight());
+			if (notANumber) {
+				return binary(operator, left, takeNotANumber());
+			}
+			if (isComparison(operator.getType())) {
+				return compare(operator.getType(), left, right);
+			}
+			return arithmetic(operator.getType(), left, right);
+		}
 		Object left = evaluate(expr.getLeft());
 		Object right = evaluate(expr.getRight());
-		switch (expr.getOperator().getType()) {
+		return binary(operator, left, right);
+	}
+	
+	/**
+	 * Evaluates an expression that is expected to be a number, without boxing the result of arithmetic.
+	 * If the expression turns out not to be a number, {@link #notANumber} is set and its value can be
+	 * retrieved with {@link #takeNotANumber()}, so the caller can fall back to {@link #binary(Token, Object, Object)}
+	 * @param expr the expression to evaluate
+	 * @return the value of the expression, if it is a number
+	 */
+	private double number(Expr expr) {
+		if (expr instanceof Expr.Binary) {
+			Expr.Binary binary = (Expr.Binary) expr;
+			Token operator = binary.getOperator();
+			if (isArithmetic(operator.getType())) {
+				double left = number(binary.getLeft());
+				if (notANumber) {
+					return toNumber(binary(operator, takeNotANumber(), evaluate(binary.getRight())));
+				}
+				double right = number(binary.getRight());
+				if (notANumber) {
+					return toNumber(binary(operator, left, takeNotANumber()));
+				}
+				notANumber = false;
+				return arithmetic(operator.getType(), left, right);
+			}
+		} else if (expr instanceof Expr.Grouping) {
+			return number(((Expr.Grouping) expr).getExpression());
+		} else if (expr instanceof Expr.Unary && ((Expr.Unary) expr).getOperator().getType() == TokenType.MINUS) {
+			Expr.Unary unary = (Expr.Unary) expr;
+			double value = number(unary.getValue());
+			if (notANumber) {
+				return toNumber(unary(unary.getOperator(), takeNotANumber()));
+			}
+			return -value;
+		} else if (expr instanceof Expr.Index) {
+			Expr.Index index = (Expr.Index) expr;
+			Object i = evaluate(index.getIndex());
+			Object indexee = evaluate(index.getIndexee());
+			if (indexee instanceof PackedList && ((PackedList) indexee).isPacked() && i instanceof Double) {
+				// The item is read straight out of the list's array
+				try {
+					double value = ((PackedList) indexee).getNumber((int) (double) (Double) i);
+					notANumber = false;
+					return value;
+				} catch (IndexOutOfBoundsException e) {
+					throw outOfBounds(e, index.getBracket());
+				}
+			}
+			return toNumber(index(indexee, i, index.getBracket()));
+		}
+		return toNumber(evaluate(expr));
+	}
+	
+	/**
+	 * Unboxes a value for {@link #number(Expr)}
+	 * @param value the value
+	 * @return the value, if it is a number
+	 */
+	private double toNumber(Object value) {
+		if (value instanceof Double) {
+			notANumber = false;
+			return (Double) value;
+		}
+		notANumber = true;
+		notANumberValue = value;
+		return 0;
+	}
+	
+	/**
+	 * @return the value that {@link #number(Expr)} could not turn into a number
+	 */
+	private Object takeNotANumber() {
+		Object value = notANumberValue;
+		notANumber = false;
+		notANumberValue = null;
+		return value;
+	}
+	
+	/**
+	 * @param type the type of an operator
+	 * @return whether or not the operator always produces a number from two numbers
+	 */
+	private static boolean isArithmetic(TokenType type) {
+		return type == TokenType.PLUS || type == TokenType.MINUS || type == TokenType.STAR
+				|| type == TokenType.SLASH || type == TokenType.PERCENT;
+	}
+	
+	/**
+	 * @param type the type of an operator
+	 * @return whether or not the operator compares two numbers
+	 */
+	private static boolean isComparison(TokenType type) {
+		return type == TokenType.LESS || type == TokenType.LESS_EQUAL || type == TokenType.GREATER
+				|| type == TokenType.GREATER_EQUAL;
+	}
+	
+	/**
+	 * Applies an arithmetic operator to two numbers
+	 * @param type the type of the operator
+	 * @param left the left hand value
+	 * @param right the right hand value
+	 * @return the result
+	 */
+	private static double arithmetic(TokenType type, double left, double right) {
+		switch (type) {
+		case PLUS:
+			return left + right;
+		case MINUS:
+			return left - right;
+		case STAR:
+			return left * right;
+		case SLASH:
+			return left / right;
+		default:
+			return left % right;
+		}
+	}
+	
+	/**
+	 * Applies a comparison operator to two numbers
+	 * @param type the type of the operator
+	 * @param left the left hand value
+	 * @param right the right hand value
+	 * @return the result
+	 */
+	private static boolean compare(TokenType type, double left, double right) {
+		switch (type) {
+		case LESS:
+			return left < right;
+		case LESS_EQUAL:
+			return left <= right;
+		case GREATER:
+			return left > right;
+		default:
+			return left >= right;
+		}
+	}
+
+	/**
+	 * Applies a binary operator to two values that have already been evaluated
+	 * @param operator the operator, used for error reporting
+	 * @param left the left hand value
+	 * @param right the right hand value
+	 * @return the result of the operation
+	 */
+	public static Object binary(Token operator, Object left, Object right) {
+		switch (operator.getType()) {
 		case PLUS:
 			if (left instanceof Double && right instanceof Double) {
 				return (Double) left + (Double) right;
@@ -771,38 +1313,32 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 				List<?> leftList = (List<?>)left;
 				List<?> rightList = (List<?>)right;
 				
-				List<Object> res = new ArrayList<>();
-				for (int i = 0; i < leftList.size(); i++) {
-					res.add(leftList.get(i));
-				}
-				
-				for (int i = 0; i < rightList.size(); i++) {
-					res.add(rightList.get(i));
-				}
-				
+				List<Object> res = new PackedList(leftList.size() + rightList.size());
+				res.addAll(leftList);
+				res.addAll(rightList);
 				return res;
 			}
-			throw new InterpretError("Invalid types for '+'", expr.getOperator());
+			throw new InterpretError("Invalid types for '+'", operator);
 		case MINUS:
 			if (left instanceof Double && right instanceof Double) {
 				return (Double) left - (Double) right;
 			}
-			throw new InterpretError("Invalid types for '-'", expr.getOperator());
+			throw new InterpretError("Invalid types for '-'", operator);
 		case STAR:
 			if (left instanceof Double && right instanceof Double) {
 				return (Double) left * (Double) right;
 			}
-			throw new InterpretError("Invalid types for '*'", expr.getOperator());
+			throw new InterpretError("Invalid types for '*'", operator);
 		case SLASH:
 			if (left instanceof Double && right instanceof Double) {
 				return (Double) left / (Double) right;
 			}
-			throw new InterpretError("Invalid types for '/'", expr.getOperator());
+			throw new InterpretError("Invalid types for '/'", operator);
 		case PERCENT:
 			if (left instanceof Double && right instanceof Double) {
 				return (Double) left % (Double) right;
 			}
-			throw new InterpretError("Invalid types for '%'", expr.getOperator());
+			throw new InterpretError("Invalid types for '%'", operator);
 		case EQUAL_EQUAL:
 			if (left == null) {
 				return right == null;
@@ -819,37 +1355,26 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 			if (left instanceof Double && right instanceof Double) {
 				return (Double) left > (Double) right;
 			}
-			throw new InterpretError("Invalid types for '>'", expr.getOperator());
+			throw new InterpretError("Invalid types for '>'", operator);
 
 		case GREATER_EQUAL:
 			if (left instanceof Double && right instanceof Double) {
 				return (Double) left >= (Double) right;
 			}
-			throw new InterpretError("Invalid types for '>='", expr.getOperator());
+			throw new InterpretError("Invalid types for '>='", operator);
 
 		case LESS:
 			if (left instanceof Double && right instanceof Double) {
 				return (Double) left < (Double) right;
 			}
-			throw new InterpretError("Invalid types for '<'", expr.getOperator());
+			throw new InterpretError("Invalid types for '<'", operator);
 
 		case LESS_EQUAL:
 			if (left instanceof Double && right instanceof Double) {
 				return (Double) left <= (Double) right;
 			}
-			throw new InterpretError("Invalid types for '<='", expr.getOperator());
-
-		case OR:
-			if (left instanceof Boolean && right instanceof Boolean) {
-				return (Boolean) left || (Boolean) right;
-			}
-			throw new InterpretError("Invalid types for '|'", expr.getOperator());
+			throw new InterpretError("Invalid types for '<='", operator);
 
-		case AND:
-			if (left instanceof Boolean && right instanceof Boolean) {
-				return (Boolean) left && (Boolean) right;
-			}
-			throw new InterpretError("Invalid types for '&'", expr.getOperator());
 		default:
 			// unreachable
 			System.out.println("default?");
@@ -858,26 +1383,73 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 	}
 
 	public Object visitCallExpr(Expr.Call expr) {
-		Object function = evaluate(expr.getCallee());
-		if (function instanceof IFn) {
-			IFn fn = (IFn) function;
-			List<Object> args = new ArrayList<>();
-			for (Expr arg : expr.getArgs()) {
-				args.add(evaluate(arg));
-			}
+		return call(expr, evaluate(expr.getCallee()));
+	}
 
-			if (args.size() > fn.getArity()) {
-				throw new InterpretError("Incorrect argument count", expr.getParen()); // Currying is planned
+	/**
+	 * Calls a function whose callee has already been evaluated
+	 * @param expr the call
+	 * @param callee the value of the callee
+	 * @return the value returned by the function
+	 */
+	private Object call(Expr.Call expr, Object callee) {
+		// The site checks the callee is a function the first time it sees it, and remembers its arity
+		int arity = expr.getSite().arity(callee, expr.getParen());
+		IFn fn = (IFn) callee;
+		List<Expr> argExprs = expr.getArgs();
+		int argc = argExprs.size();
+		if (argc == arity) {
+			// Small calls pass their arguments one by one, so they don't need a list
+			switch (argc) {
+			case 0:
+				return fn.call0(this, expr.getParen());
+			case 1:
+				return fn.call1(this, evaluate(argExprs.get(0)), expr.getParen());
+			case 2: {
+				Object a = evaluate(argExprs.get(0));
+				return fn.call2(this, a, evaluate(argExprs.get(1)), expr.getParen());
+			}
+			case 3: {
+				Object a = evaluate(argExprs.get(0));
+				Object b = evaluate(argExprs.get(1));
+				return fn.call3(this, a, b, evaluate(argExprs.get(2)), expr.getParen());
 			}
-
-			return fn.callCurried(this, args, expr.getParen());
+			}
+		}
+		List<Object> args = new ArrayList<>(argc);
+		for (int i = 0; i < argc; i++) {
+			args.add(evaluate(argExprs.get(i)));
 		}
-		throw new InterpretError("Cannot call non-function", expr.getParen());
+		if (argc > arity) {
+			throw new InterpretError("Incorrect argument count", expr.getParen());
+		}
+		if (argc == arity) {
+			return fn.call(this, args, expr.getParen());
+		}
+		return new CurriedFn(fn, args);
 	}
 
 	@Override
 	public Object visitGetVarExpr(Expr.GetVar expr) {
-		return environment.get(expr.getIdentifier().getLexeme(), expr.getIdentifier());
+		return lookUpVariable(expr.getIdentifier(), expr.getStorage(), expr.getSlot());
+	}
+	
+	/**
+	 * Gets a variable, using its slot if the {@link Resolver} found one
+	 * @param identifier the name of the variable
+	 * @param storage how the resolver found it is stored, or <code>null</code>
+	 * @param slot the slot found by the resolver, or -1
+	 * @return the value of the variable
+	 */
+	private Object lookUpVariable(Token identifier, Expr.Storage storage, int slot) {
+		if (storage == Expr.Storage.LOCAL) {
+			return frame[slot];
+		} else if (storage == Expr.Storage.CELL) {
+			return ((Cell) frame[slot]).get();
+		} else if (storage == Expr.Storage.UPVALUE) {
+			return upvalues[slot].get();
+		}
+		return environment.get(identifier.getSymbol(), identifier);
 	}
 
 	@Override
@@ -889,7 +1461,7 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 	@Override
 	public Object visitImportExpr(Expr.Import expr) {
 		if (imports.containsKey(expr.getModule().getLexeme())) {
-			return imports.get(expr.getModule().getLexeme()).get(expr.getIdentifier().getLexeme(), expr.getIdentifier());
+			return imports.get(expr.getModule().getLexeme()).get(expr.getIdentifier().getSymbol(), expr.getIdentifier());
 		}
 		throw new InterpretError("Undefined or un-imported module", expr.getModule());
 	}
@@ -898,7 +1470,18 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 	public Object visitIndexExpr(Expr.Index expr) {
 		Object index = evaluate(expr.getIndex());
 		Object indexee = evaluate(expr.getIndexee());
-		
+		return index(indexee, index, expr.getBracket());
+	}
+	
+	/**
+	 * Indexes a list
+	 * @param indexee the value being indexed
+	 * @param index the index
+	 * @param bracket the opening bracket, used for error reporting
+	 * @return the item at the index
+	 */
+	@SuppressWarnings("unchecked")
+	public static Object index(Object indexee, Object index, Token bracket) {
 		if (indexee instanceof List<?>) {
 			List<Object> list = (List<Object>) indexee;
 			if (index instanceof Double) {
@@ -906,19 +1489,23 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 				try {
 					return list.get((int)d);
 				} catch (IndexOutOfBoundsException e) {
-					throw new InterpretError(String.format("Index out of bounds: %s", e.getMessage()), expr.getBracket());
+					throw outOfBounds(e, bracket);
 				}
 			} else {
-				throw new InterpretError("Cannot index with a non-number", expr.getBracket());
+				throw new InterpretError("Cannot index with a non-number", bracket);
 			}
 		} else {
-			throw new InterpretError("Cannot index a non-iterable", expr.getBracket());
+			throw new InterpretError("Cannot index a non-iterable", bracket);
 		}
 	}
 	
+	private static InterpretError outOfBounds(IndexOutOfBoundsException e, Token bracket) {
+		return new InterpretError(String.format("Index out of bounds: %s", e.getMessage()), bracket);
+	}
+	
 	@Override
 	public Object visitListExpr(Expr.EList expr) {
-		List<Object> items = new ArrayList<>();
+		List<Object> items = new PackedList(expr.getExprs().size());
 		
 		for (Expr item : expr.getExprs()) {
 			items.add(evaluate(item));
@@ -929,30 +1516,74 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
 	@Override
 	public Object visitLiteralExpr(Expr.Literal expr) {
-		return expr.getValue();
+		Object value = expr.getValue();
+		if (value instanceof Fn) {
+			// Each time a function declaration runs, it creates a new closure
+			return ((Fn) value).bind(environment, frame, upvalues);
+		}
+		return value;
+	}
+
+	@Override
+	public Object visitLogicalExpr(Expr.Logical expr) {
+		boolean left = logical(evaluate(expr.getLeft()), expr.getOperator());
+		if (left == (expr.getOperator().getType() == TokenType.OR)) {
+			return left;
+		}
+		return logical(evaluate(expr.getRight()), expr.getOperator());
+	}
+
+	/**
+	 * Checks an operand of <code>&amp;</code> or <code>|</code>
+	 * @param operand the value of the operand
+	 * @param operator the operator, used for error reporting
+	 * @return the operand
+	 */
+	public static boolean logical(Object operand, Token operator) {
+		if (operand instanceof Boolean) {
+			return (Boolean) operand;
+		}
+		throw new InterpretError(String.format("Invalid types for '%s'", operator.getLexeme()), operator);
 	}
 
 	@Override
 	public Object visitUnaryExpr(Expr.Unary expr) {
-		Object target = evaluate(expr.getValue());
-		switch (expr.getOperator().getType()) {
+		return unary(expr.getOperator(), evaluate(expr.getValue()));
+	}
+
+	/**
+	 * Applies a unary operator to a value that has already been evaluated
+	 * @param operator the operator, used for error reporting
+	 * @param target the value to apply it to
+	 * @return the result of the operation
+	 */
+	public static Object unary(Token operator, Object target) {
+		switch (operator.getType()) {
 		case MINUS:
 			if (target instanceof Double) {
 				return -(Double) target;
 			}
-			throw new InterpretError("Invalid type for '-'", expr.getOperator());
+			throw new InterpretError("Invalid type for '-'", operator);
 		case NOT:
 			if (target instanceof Boolean) {
 				return !(Boolean) target;
 			}
-			throw new InterpretError("Invalid type for '!'", expr.getOperator());
+			throw new InterpretError("Invalid type for '!'", operator);
 		default:
 			return null;
 		}
 	}
 
 	private boolean isTrue(Expr value) {
-		Object result = evaluate(value);
+		return isTruthy(evaluate(value));
+	}
+
+	/**
+	 * Determines whether a value counts as true in a condition. Only <code>false</code> and <code>nil</code> are false
+	 * @param result the value to check
+	 * @return whether or not the value is true
+	 */
+	public static boolean isTruthy(Object result) {
 		if (result == null) {
 			return false;
 		}
@@ -1,19 +1,101 @@
 package com.nailuj29gaming.language;
 
-import java.util.ArrayList;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 /**
- * Lexes a string into a list of tokens
+ * Lexes source code into a {@link TokenStream}, either all at once from a string, or as it is read from a {@link Reader} or {@link ByteBuffer}
  */
 public class Lexer {
-	private List<Token> tokens;
+	
+	/**
+	 * An error occurring while lexing
+	 */
+	public static class LexError extends RuntimeException {
+		
+		private static final long serialVersionUID = 3167395127749834521L;
+		
+		private final int line;
+		private final int column;
+		
+		/**
+		 * @param message the error message
+		 * @param line the line the error occurred at
+		 * @param column the column the error occurred at
+		 */
+		public LexError(String message, int line, int column) {
+			super(message);
+			this.line = line;
+			this.column = column;
+		}
+		
+		/**
+		 * @return the line the error occurred at
+		 */
+		public int getLine() {
+			return line;
+		}
+		
+		/**
+		 * @return the column the error occurred at
+		 */
+		public int getColumn() {
+			return column;
+		}
+	}
+	
+	/**
+	 * How many characters are read from a {@link Reader} at once. The buffer only grows if a single token is longer than this
+	 */
+	private static final int BUFFER_SIZE = 8192;
+	
+	private static boolean dumping = false;
+	
+	/**
+	 * The characters being lexed. <code>current</code> and <code>start</code> are positions in this buffer
+	 */
+	private char[] buffer;
+	private int limit;
+	private Reader reader;
+	private ByteBuffer bytes;
+	private CharsetDecoder decoder;
+	private TokenStream stream;
+	private boolean emitted, done;
 	private int current, start, line, column;
-	private String source;
 	private static Map<String, TokenType> keywords;
 	
+	/**
+	 * @param dumping whether or not the tokens of each module are printed before it is parsed
+	 */
+	public static void setDumping(boolean dumping) {
+		Lexer.dumping = dumping;
+	}
+	
+	/**
+	 * @return whether or not the tokens of each module are printed before it is parsed
+	 */
+	public static boolean isDumping() {
+		return dumping;
+	}
+	
+	/**
+	 * The keywords and their types, by length, so identifiers can be looked up without making a string of them
+	 */
+	private static final char[][][] KEYWORDS;
+	private static final TokenType[][] KEYWORD_TYPES;
+	
 	static {
 		keywords = new HashMap<>();
 		keywords.put("fn", TokenType.FN);
@@ -33,25 +115,123 @@ public class Lexer {
 		keywords.put("NaN", TokenType.NAN);
 		keywords.put("infinity", TokenType.INFINITY);
 		keywords.put("in", TokenType.IN);
+		
+		int longest = 0;
+		for (String keyword : keywords.keySet()) {
+			longest = Math.max(longest, keyword.length());
+		}
+		KEYWORDS = new char[longest + 1][][];
+		KEYWORD_TYPES = new TokenType[longest + 1][];
+		for (Map.Entry<String, TokenType> keyword : keywords.entrySet()) {
+			int length = keyword.getKey().length();
+			int i = KEYWORDS[length] == null ? 0 : KEYWORDS[length].length;
+			KEYWORDS[length] = KEYWORDS[length] == null ? new char[1][] : Arrays.copyOf(KEYWORDS[length], i + 1);
+			KEYWORD_TYPES[length] = KEYWORD_TYPES[length] == null ? new TokenType[1] : Arrays.copyOf(KEYWORD_TYPES[length], i + 1);
+			KEYWORDS[length][i] = keyword.getKey().toCharArray();
+			KEYWORD_TYPES[length][i] = keyword.getValue();
+		}
 	}
 
 	/**
-	 * Lexes source code into a token stream
+	 * Lexes source code into a list of tokens
 	 * @param source the source code to lex
 	 * @return the tokens
 	 */
 	public List<Token> lex(String source) {
-		tokens = new ArrayList<>();
+		return stream(null, source.toCharArray()).toList();
+	}
+	
+	/**
+	 * Lexes source code as it is read. Only a small part of the source is kept in memory,
+	 * and each token is only lexed when it is asked for, so a {@link Parser} can parse while the source is lexed
+	 * @param reader where to read the source code from. It isn't closed
+	 * @return the tokens, ending with an EOF token
+	 */
+	public TokenStream lex(Reader reader) {
+		return stream(reader, new char[BUFFER_SIZE]);
+	}
+	
+	/**
+	 * Lexes source code straight out of a buffer, such as a memory mapped {@link SourceFile}, like {@link #lex(Reader)}.
+	 * The bytes are decoded a little at a time as they are lexed, so the source is never copied onto the heap all at once
+	 * @param bytes the source code, in the default charset
+	 * @return the tokens, ending with an EOF token
+	 */
+	public TokenStream lex(ByteBuffer bytes) {
+		TokenStream stream = stream(null, new char[BUFFER_SIZE]);
+		limit = 0;
+		this.bytes = bytes;
+		decoder = Charset.defaultCharset().newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		return stream;
+	}
+	
+	/**
+	 * Lexes source code as it is read from a channel, like {@link #lex(Reader)}
+	 * @param channel where to read the source code from. It isn't closed
+	 * @return the tokens, ending with an EOF token
+	 */
+	public TokenStream lex(ReadableByteChannel channel) {
+		return lex(Channels.newReader(channel, Charset.defaultCharset().newDecoder(), BUFFER_SIZE));
+	}
+	
+	/**
+	 * Starts lexing a new source
+	 * @param reader where to read the source from, or <code>null</code> if the buffer holds all of it
+	 * @param buffer the buffer to lex in
+	 * @return the stream the tokens are lexed into
+	 */
+	private TokenStream stream(Reader reader, char[] buffer) {
+		this.reader = reader;
+		this.buffer = buffer;
+		bytes = null;
+		decoder = null;
+		limit = reader == null ? buffer.length : 0;
 		current = start = 0;
 		line = column = 1;
-		this.source = source;
-		while (!isAtEnd()) {
+		done = false;
+		stream = new TokenStream(this);
+		return stream;
+	}
+	
+	/**
+	 * Lexes until a token has been added to the stream, adding EOF at the end of the source
+	 * @return whether or not a token was added, which is only false once EOF has been added
+	 */
+	boolean lexMore() {
+		if (done) {
+			return false;
+		}
+		emitted = false;
+		while (!emitted && !isAtEnd()) {
 			start = current;
 			lexToken();
 		}
-		start = current;
-		tokens.add(makeToken(TokenType.EOF));
-		return tokens;
+		if (!emitted) {
+			start = current;
+			done = true;
+			emit(TokenType.EOF);
+		}
+		return true;
+	}
+	
+	/**
+	 * Adds the token that was just lexed to the stream
+	 * @param type the token's type
+	 * @param literal the token's literal
+	 */
+	private void emit(TokenType type, Object literal) {
+		stream.add(type, buffer, start, current - start, line, column, literal);
+		emitted = true;
+	}
+	
+	/**
+	 * Adds the token that was just lexed to the stream
+	 * @param type the token's type
+	 */
+	private void emit(TokenType type) {
+		emit(type, null);
 	}
 
 	/**
@@ -61,71 +241,74 @@ public class Lexer {
 		char c = advance();
 		switch (c) {
 		case '+':
-			tokens.add(makeToken(TokenType.PLUS));
+			emit(TokenType.PLUS);
 			break;
 		case '-':
-			tokens.add(makeToken(TokenType.MINUS));
+			emit(TokenType.MINUS);
 			break;
 		case '*':
-			tokens.add(makeToken(TokenType.STAR));
+			emit(TokenType.STAR);
 			break;
 		case '/':
 			if (peek() == '/') {
 				while (!isAtEnd() && peek() != '\n' && peek() != '\r') {
 					advance();
+					// Comments aren't tokens, so there's no need to keep them in the buffer
+					start = current;
 				}
 			} else if (peek() == '*') {
 				multilineComment();
 			} else {
-				tokens.add(makeToken(TokenType.SLASH));
+				emit(TokenType.SLASH);
 			}
 			break;
 		case '%':
-			tokens.add(makeToken(TokenType.PERCENT));
+			emit(TokenType.PERCENT);
+			break;
 		case '<':
-			tokens.add(makeToken(match('=') ? TokenType.LESS_EQUAL : TokenType.LESS));
+			emit(match('=') ? TokenType.LESS_EQUAL : TokenType.LESS);
 			break;
 		case '>':
-			tokens.add(makeToken(match('=') ? TokenType.GREATER_EQUAL : TokenType.GREATER));
+			emit(match('=') ? TokenType.GREATER_EQUAL : TokenType.GREATER);
 			break;
 		case '=':
-			tokens.add(makeToken(match('=') ? TokenType.EQUAL_EQUAL : TokenType.EQUALS));
+			emit(match('=') ? TokenType.EQUAL_EQUAL : TokenType.EQUALS);
 			break;
 		case '!':
-			tokens.add(makeToken(match('=') ? TokenType.NOT_EQUAL : TokenType.NOT));
+			emit(match('=') ? TokenType.NOT_EQUAL : TokenType.NOT);
 			break;
 		case '&':
-			tokens.add(makeToken(TokenType.AND));
+			emit(TokenType.AND);
 			break;
 		case '|':
-			tokens.add(makeToken(TokenType.OR));
+			emit(TokenType.OR);
 			break;
 		case '(':
-			tokens.add(makeToken(TokenType.PAREN_LEFT));
+			emit(TokenType.PAREN_LEFT);
 			break;
 		case ')':
-			tokens.add(makeToken(TokenType.PAREN_RIGHT));
+			emit(TokenType.PAREN_RIGHT);
 			break;
 		case '{':
-			tokens.add(makeToken(TokenType.BRACE_LEFT));
+			emit(TokenType.BRACE_LEFT);
 			break;
 		case '}':
-			tokens.add(makeToken(TokenType.BRACE_RIGHT));
+			emit(TokenType.BRACE_RIGHT);
 			break;
 		case '[':
-			tokens.add(makeToken(TokenType.BRACKET_LEFT));
+			emit(TokenType.BRACKET_LEFT);
 			break;
 		case ']':
-			tokens.add(makeToken(TokenType.BRACKET_RIGHT));
+			emit(TokenType.BRACKET_RIGHT);
 			break;
 		case ',':
-			tokens.add(makeToken(TokenType.COMMA));
+			emit(TokenType.COMMA);
 			break;
 		case '.':
-			tokens.add(makeToken(TokenType.DOT));
+			emit(TokenType.DOT);
 			break;
 		case ';':
-			tokens.add(makeToken(TokenType.SEMICOLON));
+			emit(TokenType.SEMICOLON);
 			break;
 		case '"':
 		case '\'':
@@ -141,8 +324,7 @@ public class Lexer {
 				identifier();
 				break;
 			}
-			Main.error("Invalid Character: " + c, line, column);
-			System.exit(1);
+			throw new LexError("Invalid Character: " + c, line, column);
 		}
 	}
 	
@@ -152,6 +334,7 @@ public class Lexer {
 	private void multilineComment() {
 		int nesting = 1;
 		while (nesting > 0) {
+			start = current;
 			char c = advance();
 			isWhiteSpace(c);
 			column++; // Still keep track of the column and line
@@ -168,8 +351,7 @@ public class Lexer {
 			}
 
 			if (isAtEnd() && nesting != 0) {
-				Main.error("Unexpected EOF", line, column);
-				System.exit(1);
+				throw new LexError("Unexpected EOF", line, column);
 			}
 		}
 		
@@ -182,17 +364,15 @@ public class Lexer {
 	private void string(char c) {
 		while (!isAtEnd() && peek() != c) {
 			if (advance() == '\n') {
-				Main.error("Unterminated string", line, column);
-				System.exit(1);
+				throw new LexError("Unterminated string", line, column);
 			}
 		}
 		
 		if (isAtEnd()) {
-			Main.error("Unterminated string", line, column);
-			System.exit(1);
+			throw new LexError("Unterminated string", line, column);
 		}
 		advance();
-		tokens.add(makeToken(TokenType.STRING, source.substring(start + 1, current - 1).replace("\\n", "\n")));
+		emit(TokenType.STRING, text(start + 1, current - 1).replace("\\n", "\n"));
 	}
 	
 	/**
@@ -203,8 +383,7 @@ public class Lexer {
 			advance();
 		}
 		
-		TokenType type = keywords.getOrDefault(source.substring(start, current), TokenType.IDENTIFIER);
-		tokens.add(makeToken(type));
+		emit(keyword(start, current - start));
 	}
 	/**
 	 * Lex a number
@@ -219,8 +398,8 @@ public class Lexer {
 			}
 		}
 		
-		double value = Double.parseDouble(source.substring(start, current));
-		tokens.add(makeToken(TokenType.NUMBER, value));
+		double value = Double.parseDouble(text(start, current));
+		emit(TokenType.NUMBER, value);
 	}
 	
 	/**
@@ -271,31 +450,104 @@ public class Lexer {
 	}
 	
 	/**
-	 * creates a token from a type and literal
-	 * @param type the token's type
-	 * @param literal the token's literal
-	 * @return the token
+	 * Finds the type of an identifier without making a string of it
+	 * @param from where the identifier starts in the buffer
+	 * @param length how long the identifier is
+	 * @return the keyword's type, or IDENTIFIER if it isn't a keyword
 	 */
-	private Token makeToken(TokenType type, Object literal) {
-		return new Token(type, source.substring(start, current), line, column, literal);
+	private TokenType keyword(int from, int length) {
+		if (length >= KEYWORDS.length || KEYWORDS[length] == null) {
+			return TokenType.IDENTIFIER;
+		}
+		char[][] candidates = KEYWORDS[length];
+		for (int i = 0; i < candidates.length; i++) {
+			char[] keyword = candidates[i];
+			int j = 0;
+			while (j < length && keyword[j] == buffer[from + j]) {
+				j++;
+			}
+			if (j == length) {
+				return KEYWORD_TYPES[length][i];
+			}
+		}
+		return TokenType.IDENTIFIER;
 	}
 
 	/**
-	 * Creates a token from a type
-	 * @param type the token's type
-	 * @return the token
+	 * @param from the position in the buffer to start at
+	 * @param to the position in the buffer to end before
+	 * @return the text between the positions
 	 */
-	private Token makeToken(TokenType type) {
-		return makeToken(type, null);
+	private String text(int from, int to) {
+		return new String(buffer, from, to - from);
 	}
 
 	/**
-	 * Checks if the lexer has consumed all the source code
+	 * Checks if the lexer has consumed all the source code, reading more of it if needed
 	 * @return whether or not the lexer has consumed all of the source code
 	 */
 	private boolean isAtEnd() {
-		return current >= source.length();
+		return current >= limit && !fill();
 	}
+	
+	/**
+	 * Reads more of the source into the buffer, keeping the token being lexed
+	 * @return whether or not anything was read
+	 */
+	private boolean fill() {
+		if (reader == null && bytes == null) {
+			return false;
+		}
+		if (start > 0) {
+			System.arraycopy(buffer, start, buffer, 0, limit - start);
+			limit -= start;
+			current -= start;
+			start = 0;
+		}
+		if (limit == buffer.length) {
+			buffer = Arrays.copyOf(buffer, buffer.length * 2);
+		}
+		if (bytes != null) {
+			return decode();
+		}
+		try {
+			int read;
+			do {
+				read = reader.read(buffer, limit, buffer.length - limit);
+			} while (read == 0);
+			if (read < 0) {
+				reader = null;
+				return false;
+			}
+			limit += read;
+			return true;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Decodes more of the source into the buffer
+	 * @return whether or not anything was decoded
+	 */
+	private boolean decode() {
+		while (true) {
+			CharBuffer out = CharBuffer.wrap(buffer, limit, buffer.length - limit);
+			if (decoder.decode(bytes, out, true).isUnderflow()) {
+				// Everything has been decoded
+				decoder.flush(out);
+				bytes = null;
+			}
+			int decoded = out.position() - limit;
+			limit = out.position();
+			if (decoded > 0 || bytes == null) {
+				return decoded > 0;
+			}
+			// There wasn't room for a whole character
+			buffer = Arrays.copyOf(buffer, buffer.length * 2);
+		}
+	}
+
 	/**
 	 * Advances the lexer forward
 	 * @return the next character
@@ -303,7 +555,7 @@ public class Lexer {
 	private char advance() {
 		if (isAtEnd()) return '\0';
 		column++;
-		return source.charAt(current++);
+		return buffer[current++];
 	}
 	
 	/**
@@ -311,7 +563,7 @@ public class Lexer {
 	 */
 	private char peek() {
 		if (isAtEnd()) return '\0';
-		return source.charAt(current);
+		return buffer[current];
 	}
 
 	/**
@@ -321,7 +573,7 @@ public class Lexer {
 	 */
 	private boolean match(char next) {
 		if (isAtEnd()) return false;
-		if (source.charAt(current) == next) {
+		if (buffer[current] == next) {
 			advance();
 			return true;
 		}
@@ -1,18 +1,18 @@
 package com.nailuj29gaming.language;
 
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Scanner;
 
 import javax.xml.parsers.ParserConfigurationException;
 
-import com.nailuj29gaming.language.ast.AstPrinter;
 import com.nailuj29gaming.language.ast.Expr;
+import com.nailuj29gaming.language.ast.Optimizer;
 import com.nailuj29gaming.language.ast.Stmt;
+import com.nailuj29gaming.language.jit.Jit;
+import com.nailuj29gaming.language.vm.VM;
 
 /**
  * The main class
@@ -21,55 +21,65 @@ public class Main {
 	
 	public static final boolean DEBUG = true;
 
-	private static String[] lines;
+	private static SourceFile source;
 	
 	
 	/**
 	 * The main method
-	 * @param args the command line arguments
+	 * @param args the command line arguments. <code>--vm</code> runs the script on the bytecode {@link VM},
+	 * <code>--jit</code> compiles hot functions to JVM bytecode, <code>--no-cache</code> doesn't use the {@link ModuleCache},
+	 * <code>--dump-tokens</code> prints the tokens of each module that is lexed,
+	 * and <code>--dump-ast</code> prints the tree of each module that is parsed before and after the {@link Optimizer} simplifies it
 	 */
 	public static void main(String[] args) {
-		if (args.length != 1) {
+		boolean useVm = false;
+		String file = null;
+		for (String arg : args) {
+			if (arg.equals("--vm")) {
+				useVm = true;
+			} else if (arg.equals("--jit")) {
+				Jit.setThreshold(Jit.DEFAULT_THRESHOLD);
+			} else if (arg.equals("--no-cache")) {
+				ModuleCache.setEnabled(false);
+			} else if (arg.equals("--dump-tokens")) {
+				Lexer.setDumping(true);
+			} else if (arg.equals("--dump-ast")) {
+				Optimizer.setDumping(true);
+			} else if (file == null) {
+				file = arg;
+			} else {
+				System.err.println("Must pass only a single file");
+				System.exit(1);
+			}
+		}
+		if (file == null) {
 			System.err.println("Must pass only a single file");
 			System.exit(1);
 		}
-		Path filename = Paths.get(args[0]);
-		String source;
+		Path filename = Paths.get(file);
 		try {
-			source = new String(Files.readAllBytes(filename));
+			source = SourceFile.open(filename);
 		} catch (IOException e) {
 			System.err.printf("Cannot find file %s", filename.toString());
 			System.exit(1);
 			return;
 		}
-		lines = source.split("\n");
-		Lexer lexer = new Lexer();
-		Parser parser = new Parser();
-		List<Token> tokens = lexer.lex(source);
-		if (DEBUG) {
-			for (Token tkn : tokens) {
-				System.out.println(tkn);
-			}
-			System.out.println("Lexed " + tokens.size() + " tokens.");
-		}
-		List<Stmt> statements = new ArrayList<Stmt>();
 		try {
-			statements = parser.parse(tokens);
-		} catch (Parser.ParseError e) {
+			List<Stmt> statements = Interpreter.parseModule(source);
+			if (useVm) {
+				new VM().interpret(statements);
+			} else {
+				new Interpreter().interpret(statements);
+			}
+		} catch (Interpreter.InterpretError e) {
 			error(e.getMessage(), e.getToken().getLine(), e.getToken().getColumn());
 			System.exit(1);
-		}
-		if (DEBUG) {
-			AstPrinter printer = new AstPrinter();
-			System.out.println(printer.print(statements));
-			System.out.println("Done parsing");
-		}
-		Interpreter interpreter = new Interpreter();
-		try {
-			interpreter.interpret(statements);
-		} catch (Interpreter.InterpretError e) {
+		} catch (Parser.ParseError e) {
 			error(e.getMessage(), e.getToken().getLine(), e.getToken().getColumn());
 			System.exit(1);
+		} catch (Lexer.LexError e) {
+			error(e.getMessage(), e.getLine(), e.getColumn());
+			System.exit(1);
 		}
 	}
 
@@ -81,19 +91,19 @@ public class Main {
 	 */
 	public static void error(String error, int line, int column) {
 		System.out.printf("Message: %s, line: %d, column: %d", error, line, column);
-		String lineText = lines[line - 1];
+		String lineText = source.getLine(line);
 		System.err.println("There was an error running your program\n" +
 						   "---------------------------------------");
 		if (line != 1) {
-			System.err.printf("%3d| %s\n", line - 1, lines[line - 2]);
+			System.err.printf("%3d| %s\n", line - 1, source.getLine(line - 1));
 		}
 		System.err.printf("%3d| %s\n", line, lineText);
 		String arrow = new String(new char[column + 3]).replace("\0", "~") + "^";
 		System.err.println(arrow);
 		System.err.printf("Message: %s\n", error);
 		
-		if (line < lines.length) {
-			System.err.printf("%3d| %s\n", line + 1, lines[line]);	
+		if (line < source.getLineCount()) {
+			System.err.printf("%3d| %s\n", line + 1, source.getLine(line + 1));	
 		}
 	}
 }
@@ -0,0 +1,151 @@
+package com.nailuj29gaming.language;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+import com.nailuj29gaming.language.ast.AstReader;
+import com.nailuj29gaming.language.ast.AstWriter;
+import com.nailuj29gaming.language.ast.Stmt;
+
+/**
+ * Stores parsed and resolved modules on disk, so a script that hasn't changed doesn't need to be lexed,
+ * parsed and resolved again the next time it is run or imported. The AST is written by an {@link AstWriter}.
+ * A module's cache is kept in a <code>.scrcache</code> directory next to it, and is only used if the
+ * hash of the source it was made from matches the current source
+ */
+public class ModuleCache {
+
+	/**
+	 * The name of the directory the cache is kept in
+	 */
+	public static final String DIRECTORY = ".scrcache";
+
+	private static final int MAGIC = 0x53435243;
+
+	/**
+	 * Bump whenever the AST, what the {@link Resolver} stores in it or what the {@link com.nailuj29gaming.language.ast.Optimizer}
+	 * does to it changes, so old caches are ignored
+	 */
+	private static final int FORMAT = 4;
+
+	private static boolean enabled = true;
+
+	/**
+	 * @param enabled whether or not modules are read from and written to the cache
+	 */
+	public static void setEnabled(boolean enabled) {
+		ModuleCache.enabled = enabled;
+	}
+
+	/**
+	 * @return whether or not modules are read from and written to the cache
+	 */
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Loads a module from the cache
+	 * @param source the module's source
+	 * @return the statements in the module, or <code>null</code> if there is no valid cache for this source
+	 */
+	public static List<Stmt> load(SourceFile source) {
+		if (!enabled) {
+			return null;
+		}
+		Path file = cacheFile(source.getPath());
+		if (!Files.isRegularFile(file)) {
+			return null;
+		}
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			if (in.readInt() != MAGIC || in.readInt() != FORMAT) {
+				return null;
+			}
+			if (in.readInt() != source.size() || in.readLong() != hash(source.getBytes())) {
+				return null;
+			}
+			return new AstReader(in).read();
+		} catch (IOException e) {
+			// A cache that can't be read is the same as no cache, the module is just parsed again
+			return null;
+		}
+	}
+
+	/**
+	 * Stores a module in the cache. Failing to write the cache isn't an error, the module just won't be cached
+	 * @param source the module's source
+	 * @param statements the statements in the module, after they have been resolved
+	 */
+	public static void store(SourceFile source, List<Stmt> statements) {
+		if (!enabled) {
+			return;
+		}
+		Path file = cacheFile(source.getPath());
+		Path temp = null;
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeInt(MAGIC);
+			out.writeInt(FORMAT);
+			out.writeInt(source.size());
+			out.writeLong(hash(source.getBytes()));
+			new AstWriter(out).write(statements);
+
+			Files.createDirectories(file.getParent());
+			// Other processes may be reading the cache, so it is replaced all at once
+			temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+			Files.write(temp, bytes.toByteArray());
+			try {
+				Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+			}
+			temp = null;
+		} catch (IOException e) {
+			if (Main.DEBUG) {
+				System.out.println("Could not cache " + source.getPath() + ": " + e);
+			}
+		} finally {
+			if (temp != null) {
+				try {
+					Files.deleteIfExists(temp);
+				} catch (IOException e) {
+					// Nothing else can be done
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param path the path to a module's source
+	 * @return where the module is cached
+	 */
+	static Path cacheFile(Path path) {
+		Path absolute = path.toAbsolutePath().normalize();
+		return absolute.resolveSibling(DIRECTORY).resolve(absolute.getFileName() + ".ast");
+	}
+
+	/**
+	 * Hashes a module's source with 64 bit FNV-1a. This only needs to notice that a file has changed,
+	 * and is much faster to start up than a {@link java.security.MessageDigest}
+	 * @param source a module's source
+	 * @return the hash of the source
+	 */
+	private static long hash(ByteBuffer source) {
+		long hash = 0xcbf29ce484222325L;
+		for (int i = source.position(); i < source.limit(); i++) {
+			hash ^= source.get(i) & 0xff;
+			hash *= 0x100000001b3L;
+		}
+		return hash;
+	}
+}
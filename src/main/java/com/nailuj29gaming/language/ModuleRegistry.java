@@ -0,0 +1,183 @@
+package com.nailuj29gaming.language;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import com.nailuj29gaming.language.Interpreter.InterpretError;
+
+/**
+ * Keeps track of every module that has been imported, so each module is only run once
+ * and everything that imports it shares the same exported {@link Environment}.
+ * Modules can be imported from several threads at once: the first thread loads the module, and the others wait for it.
+ * A module that ends up importing itself, directly or through other modules, is an error
+ */
+public class ModuleRegistry {
+
+	/**
+	 * Runs a module for the registry
+	 */
+	public interface Loader {
+		/**
+		 * @param path the path to the module
+		 * @return the environment the module exports
+		 * @throws IOException if the module can't be read
+		 */
+		Environment load(Path path) throws IOException;
+	}
+
+	/**
+	 * A module that has been loaded, or is being loaded
+	 */
+	private static class Module {
+		/**
+		 * The thread loading the module, or <code>null</code> once it has finished
+		 */
+		Thread loader;
+		Environment exports;
+		RuntimeException failure;
+
+		Module(Thread loader) {
+			this.loader = loader;
+		}
+	}
+
+	private final Object lock = new Object();
+	private final Map<Path, Module> modules = new HashMap<>();
+
+	/**
+	 * The module each thread is waiting for another thread to load, used to find cycles between threads
+	 */
+	private final Map<Thread, Module> waiting = new HashMap<>();
+
+	private long hits;
+	private long misses;
+
+	/**
+	 * Gets the environment a module exports, running the module if it hasn't been run yet
+	 * @param path the path to the module
+	 * @param name the name in the import statement, used for error reporting
+	 * @param loader runs the module
+	 * @return the environment the module exports
+	 * @throws IOException if the module can't be read
+	 */
+	public Environment load(Path path, Token name, Loader loader) throws IOException {
+		Path key = path.toAbsolutePath().normalize();
+		Thread current = Thread.currentThread();
+		Module module;
+		synchronized (lock) {
+			module = modules.get(key);
+			if (module != null) {
+				hits++;
+				while (module.loader != null) {
+					if (leadsTo(module.loader, current)) {
+						throw new InterpretError("Circular import", name);
+					}
+					waiting.put(current, module);
+					try {
+						lock.wait();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new InterpretError("Interrupted while importing", name);
+					} finally {
+						waiting.remove(current);
+					}
+				}
+				if (module.failure != null) {
+					throw module.failure;
+				}
+				return module.exports;
+			}
+			misses++;
+			module = new Module(current);
+			modules.put(key, module);
+		}
+
+		// The module is run without holding the lock, so it can import other modules
+		boolean loaded = false;
+		try {
+			Environment exports = loader.load(key);
+			synchronized (lock) {
+				module.exports = exports;
+			}
+			loaded = true;
+			return exports;
+		} catch (RuntimeException e) {
+			synchronized (lock) {
+				module.failure = e;
+			}
+			throw e;
+		} finally {
+			synchronized (lock) {
+				if (!loaded) {
+					// Let a later import try again
+					modules.remove(key);
+				}
+				module.loader = null;
+				lock.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Checks whether a thread is, possibly through other threads, waiting for a module another thread is loading.
+	 * Must be called while holding the lock
+	 * @param loader the thread loading a module
+	 * @param current the thread that wants to wait for the module
+	 * @return whether waiting would never finish
+	 */
+	private boolean leadsTo(Thread loader, Thread current) {
+		Thread thread = loader;
+		while (thread != null) {
+			if (thread == current) {
+				return true;
+			}
+			Module next = waiting.get(thread);
+			thread = next == null ? null : next.loader;
+		}
+		return false;
+	}
+
+	/**
+	 * @return how many imports were of a module that had already been loaded, or was being loaded
+	 */
+	public long getHits() {
+		synchronized (lock) {
+			return hits;
+		}
+	}
+
+	/**
+	 * @return how many imports had to load their module
+	 */
+	public long getMisses() {
+		synchronized (lock) {
+			return misses;
+		}
+	}
+
+	/**
+	 * @return how many modules have been loaded, or are being loaded
+	 */
+	public int size() {
+		synchronized (lock) {
+			return modules.size();
+		}
+	}
+
+	/**
+	 * Forgets every module that has finished loading, so they are run again the next time they are imported
+	 */
+	public void clear() {
+		synchronized (lock) {
+			Iterator<Module> iterator = modules.values().iterator();
+			while (iterator.hasNext()) {
+				if (iterator.next().loader == null) {
+					iterator.remove();
+				}
+			}
+		}
+	}
+}
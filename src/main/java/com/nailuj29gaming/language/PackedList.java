@@ -0,0 +1,160 @@
+package com.nailuj29gaming.language;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.RandomAccess;
+
+/**
+ * A list value. While a list only holds numbers they are packed into a <code>double[]</code>,
+ * which takes a third of the memory of boxed {@link Double}s and lets arithmetic read an item without unboxing it.
+ * The first time anything else is stored, the items are boxed into an <code>Object[]</code> and the list stays that way.
+ * Reading an item through {@link #get(int)} still boxes it, so code that wants a number should use {@link #getNumber(int)}
+ */
+public final class PackedList extends AbstractList<Object> implements RandomAccess {
+
+	private static final int DEFAULT_CAPACITY = 8;
+
+	/**
+	 * The items, or <code>null</code> once the list holds something that isn't a number
+	 */
+	private double[] numbers;
+
+	/**
+	 * The items, once the list holds something that isn't a number
+	 */
+	private Object[] items;
+
+	private int size;
+
+	/**
+	 * Creates an empty list
+	 */
+	public PackedList() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates an empty list
+	 * @param capacity how many items the list can hold before it has to grow
+	 */
+	public PackedList(int capacity) {
+		numbers = new double[capacity];
+	}
+
+	/**
+	 * @return whether or not every item is a number, stored without boxing
+	 */
+	public boolean isPacked() {
+		return numbers != null;
+	}
+
+	/**
+	 * Gets an item of a list that {@link #isPacked() is packed}, without boxing it
+	 * @param index the index of the item
+	 * @return the item
+	 * @throws IndexOutOfBoundsException if there is no item at the index
+	 */
+	public double getNumber(int index) {
+		checkIndex(index);
+		return numbers[index];
+	}
+
+	@Override
+	public Object get(int index) {
+		checkIndex(index);
+		return numbers != null ? (Object) numbers[index] : items[index];
+	}
+
+	@Override
+	public Object set(int index, Object item) {
+		checkIndex(index);
+		if (numbers != null) {
+			double old = numbers[index];
+			if (item instanceof Double) {
+				numbers[index] = (Double) item;
+				return old;
+			}
+			unpack();
+		}
+		Object old = items[index];
+		items[index] = item;
+		return old;
+	}
+
+	@Override
+	public void add(int index, Object item) {
+		if (index < 0 || index > size) {
+			throw new IndexOutOfBoundsException(outOfBounds(index));
+		}
+		if (numbers != null && !(item instanceof Double)) {
+			unpack();
+		}
+		grow(size + 1);
+		if (numbers != null) {
+			System.arraycopy(numbers, index, numbers, index + 1, size - index);
+			numbers[index] = (Double) item;
+		} else {
+			System.arraycopy(items, index, items, index + 1, size - index);
+			items[index] = item;
+		}
+		size++;
+		modCount++;
+	}
+
+	@Override
+	public boolean addAll(Collection<?> other) {
+		if (!(other instanceof PackedList) || numbers == null || ((PackedList) other).numbers == null) {
+			return super.addAll(other);
+		}
+		// Two packed lists are joined without boxing anything
+		PackedList list = (PackedList) other;
+		grow(size + list.size);
+		System.arraycopy(list.numbers, 0, numbers, size, list.size);
+		size += list.size;
+		modCount++;
+		return list.size > 0;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Boxes every item, so the list can hold things that aren't numbers
+	 */
+	private void unpack() {
+		items = new Object[numbers.length];
+		for (int i = 0; i < size; i++) {
+			items[i] = numbers[i];
+		}
+		numbers = null;
+	}
+
+	private void grow(int capacity) {
+		int length = numbers != null ? numbers.length : items.length;
+		if (capacity <= length) {
+			return;
+		}
+		int grown = Math.max(capacity, length + (length >> 1) + 1);
+		if (numbers != null) {
+			numbers = Arrays.copyOf(numbers, grown);
+		} else {
+			items = Arrays.copyOf(items, grown);
+		}
+	}
+
+	private void checkIndex(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException(outOfBounds(index));
+		}
+	}
+
+	/**
+	 * The same message as {@link java.util.ArrayList} gives, since it is shown to the user
+	 */
+	private String outOfBounds(int index) {
+		return "Index " + index + " out of bounds for length " + size;
+	}
+}
@@ -0,0 +1,379 @@
+package com.nailuj29gaming.language;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import com.nailuj29gaming.language.Interpreter.InterpretError;
+
+/**
+ * The <code>parallel</code> builtin module, which runs a function over the items of a list on every core.
+ * A list is split in half until the parts are small enough, and the parts are run as tasks in the common {@link ForkJoinPool}.
+ * Each part runs in its own {@link Interpreter}, {@link Interpreter#fork() forked} from the one that called the builtin.
+ * Lists of up to {@link #SEQUENTIAL_THRESHOLD} items aren't worth splitting, and are run on the calling thread.
+ * The functions run at the same time, so they shouldn't change variables outside of themselves.
+ * <code>preduce</code> folds a small list from the left, but reduces each part of a larger one and then combines the parts,
+ * so unless its function is associative, the result depends on how long the list is
+ */
+final class Parallel {
+
+	/**
+	 * The most items a list can have and still be run on the calling thread, which is also the fewest items a part is split into
+	 */
+	static final int SEQUENTIAL_THRESHOLD = 256;
+
+	/**
+	 * How many parts each thread in the pool should get, so a thread that finishes early can steal work from one that is behind
+	 */
+	private static final int PARTS_PER_THREAD = 4;
+
+	private Parallel() {
+	}
+
+	/**
+	 * Part of a list that a function is run over
+	 */
+	private abstract static class Part extends RecursiveTask<Object> {
+
+		private static final long serialVersionUID = -2671452408834361297L;
+
+		final Interpreter parent;
+		final List<?> list;
+		final IFn fn;
+		final Token paren;
+		final int from;
+		final int to;
+		final int threshold;
+
+		/**
+		 * The interpreter this part called the function in, which belongs to the thread that computed it
+		 */
+		Interpreter interpreter;
+
+		Part(Interpreter parent, List<?> list, IFn fn, Token paren, int from, int to, int threshold) {
+			this.parent = parent;
+			this.list = list;
+			this.fn = fn;
+			this.paren = paren;
+			this.from = from;
+			this.to = to;
+			this.threshold = threshold;
+		}
+
+		@Override
+		protected Object compute() {
+			if (to - from <= threshold) {
+				interpreter = parent.fork();
+				return run(interpreter, from, to);
+			}
+			int middle = (from + to) >>> 1;
+			Part left = split(from, middle);
+			Part right = split(middle, to);
+			left.fork();
+			Object rightResult = right.compute();
+			// The right half was computed on this thread, so its interpreter is reused instead of forking another
+			interpreter = right.interpreter;
+			return combine(interpreter, left.join(), rightResult);
+		}
+
+		/**
+		 * @return a part of the same list, doing the same thing
+		 */
+		abstract Part split(int from, int to);
+
+		/**
+		 * Runs the function over some of the items
+		 * @param interpreter the interpreter to call the function in
+		 * @param from the first item
+		 * @param to the item after the last one
+		 * @return the result of this part
+		 */
+		abstract Object run(Interpreter interpreter, int from, int to);
+
+		/**
+		 * Combines the results of two halves of a part
+		 * @param interpreter the interpreter to call the function in
+		 * @return the result of the part
+		 */
+		Object combine(Interpreter interpreter, Object left, Object right) {
+			return null;
+		}
+	}
+
+	/**
+	 * Stores the function's result for each item
+	 */
+	private static final class MapPart extends Part {
+
+		private static final long serialVersionUID = 4503785862713981446L;
+
+		private final Object[] results;
+
+		MapPart(Interpreter parent, List<?> list, IFn fn, Token paren, int from, int to, int threshold, Object[] results) {
+			super(parent, list, fn, paren, from, to, threshold);
+			this.results = results;
+		}
+
+		@Override
+		Part split(int from, int to) {
+			return new MapPart(parent, list, fn, paren, from, to, threshold, results);
+		}
+
+		@Override
+		Object run(Interpreter interpreter, int from, int to) {
+			for (int i = from; i < to; i++) {
+				results[i] = fn.call1(interpreter, list.get(i), paren);
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Stores whether the function's result for each item is truthy
+	 */
+	private static final class FilterPart extends Part {
+
+		private static final long serialVersionUID = -6052874019432861128L;
+
+		private final boolean[] kept;
+
+		FilterPart(Interpreter parent, List<?> list, IFn fn, Token paren, int from, int to, int threshold, boolean[] kept) {
+			super(parent, list, fn, paren, from, to, threshold);
+			this.kept = kept;
+		}
+
+		@Override
+		Part split(int from, int to) {
+			return new FilterPart(parent, list, fn, paren, from, to, threshold, kept);
+		}
+
+		@Override
+		Object run(Interpreter interpreter, int from, int to) {
+			for (int i = from; i < to; i++) {
+				kept[i] = Interpreter.isTruthy(fn.call1(interpreter, list.get(i), paren));
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Reduces the items with the function, which has to be associative since the halves are reduced separately
+	 */
+	private static final class ReducePart extends Part {
+
+		private static final long serialVersionUID = 2846016484530312567L;
+
+		ReducePart(Interpreter parent, List<?> list, IFn fn, Token paren, int from, int to, int threshold) {
+			super(parent, list, fn, paren, from, to, threshold);
+		}
+
+		@Override
+		Part split(int from, int to) {
+			return new ReducePart(parent, list, fn, paren, from, to, threshold);
+		}
+
+		@Override
+		Object run(Interpreter interpreter, int from, int to) {
+			Object result = list.get(from);
+			for (int i = from + 1; i < to; i++) {
+				result = fn.call2(interpreter, result, list.get(i), paren);
+			}
+			return result;
+		}
+
+		@Override
+		Object combine(Interpreter interpreter, Object left, Object right) {
+			return fn.call2(interpreter, left, right, paren);
+		}
+	}
+
+	/**
+	 * Calls the function on each item, ignoring what it returns
+	 */
+	private static final class EachPart extends Part {
+
+		private static final long serialVersionUID = 7390563328126470974L;
+
+		EachPart(Interpreter parent, List<?> list, IFn fn, Token paren, int from, int to, int threshold) {
+			super(parent, list, fn, paren, from, to, threshold);
+		}
+
+		@Override
+		Part split(int from, int to) {
+			return new EachPart(parent, list, fn, paren, from, to, threshold);
+		}
+
+		@Override
+		Object run(Interpreter interpreter, int from, int to) {
+			for (int i = from; i < to; i++) {
+				fn.call1(interpreter, list.get(i), paren);
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Runs a function over a whole list, splitting it up if it is large enough
+	 * @param interpreter the interpreter that called the builtin
+	 * @param part the whole list
+	 * @return the result of the whole list
+	 */
+	private static Object run(Interpreter interpreter, Part part) {
+		if (part.to <= SEQUENTIAL_THRESHOLD) {
+			return part.run(interpreter, 0, part.to);
+		}
+		return ForkJoinPool.commonPool().invoke(part);
+	}
+
+	/**
+	 * @param size the number of items in a list
+	 * @return how many items a part of the list can have before it is split
+	 */
+	private static int threshold(int size) {
+		return Math.max(SEQUENTIAL_THRESHOLD, size / (ForkJoinPool.getCommonPoolParallelism() * PARTS_PER_THREAD));
+	}
+
+	private static List<?> list(Object value, Token paren) {
+		if (!(value instanceof List)) {
+			throw new InterpretError("Expect a list", paren);
+		}
+		return (List<?>) value;
+	}
+
+	private static IFn function(Object value, int arity, Token paren) {
+		if (!(value instanceof IFn) || ((IFn) value).getArity() != arity) {
+			throw new InterpretError("Expect a function that takes " + arity + (arity == 1 ? " argument" : " arguments"), paren);
+		}
+		return (IFn) value;
+	}
+
+	/**
+	 * @return the module
+	 */
+	static Environment module() {
+		Environment parallel = new Environment();
+		parallel.define("pmap", new IFn() {
+
+			@Override
+			public int getArity() {
+				return 2;
+			}
+
+			@Override
+			public Object call(Interpreter interpreter, List<Object> args, Token paren) {
+				return call2(interpreter, args.get(0), args.get(1), paren);
+			}
+
+			@Override
+			public Object call2(Interpreter interpreter, Object a, Object b, Token paren) {
+				List<?> list = list(a, paren);
+				Object[] results = new Object[list.size()];
+				run(interpreter, new MapPart(interpreter, list, function(b, 1, paren), paren, 0, results.length, threshold(results.length), results));
+				PackedList mapped = new PackedList(results.length);
+				for (Object result : results) {
+					mapped.add(result);
+				}
+				return mapped;
+			}
+
+			@Override
+			public String toString() {
+				return "<natve fn parallel.pmap>";
+			}
+		});
+
+		parallel.define("pfilter", new IFn() {
+
+			@Override
+			public int getArity() {
+				return 2;
+			}
+
+			@Override
+			public Object call(Interpreter interpreter, List<Object> args, Token paren) {
+				return call2(interpreter, args.get(0), args.get(1), paren);
+			}
+
+			@Override
+			public Object call2(Interpreter interpreter, Object a, Object b, Token paren) {
+				List<?> list = list(a, paren);
+				boolean[] kept = new boolean[list.size()];
+				run(interpreter, new FilterPart(interpreter, list, function(b, 1, paren), paren, 0, kept.length, threshold(kept.length), kept));
+				PackedList filtered = new PackedList();
+				for (int i = 0; i < kept.length; i++) {
+					if (kept[i]) {
+						filtered.add(list.get(i));
+					}
+				}
+				return filtered;
+			}
+
+			@Override
+			public String toString() {
+				return "<natve fn parallel.pfilter>";
+			}
+		});
+
+		// preduce(list, fn, initial) is fn(initial, the items reduced with fn). The function has to be associative,
+		// since lists of more than SEQUENTIAL_THRESHOLD items are reduced in parts, while smaller ones are folded from the left
+		parallel.define("preduce", new IFn() {
+
+			@Override
+			public int getArity() {
+				return 3;
+			}
+
+			@Override
+			public Object call(Interpreter interpreter, List<Object> args, Token paren) {
+				return call3(interpreter, args.get(0), args.get(1), args.get(2), paren);
+			}
+
+			@Override
+			public Object call3(Interpreter interpreter, Object a, Object b, Object initial, Token paren) {
+				List<?> list = list(a, paren);
+				IFn fn = function(b, 2, paren);
+				if (list.size() <= SEQUENTIAL_THRESHOLD) {
+					// Small lists are folded from the left, so the function doesn't have to be associative
+					Object result = initial;
+					for (Object item : list) {
+						result = fn.call2(interpreter, result, item, paren);
+					}
+					return result;
+				}
+				Object reduced = run(interpreter, new ReducePart(interpreter, list, fn, paren, 0, list.size(), threshold(list.size())));
+				return fn.call2(interpreter, initial, reduced, paren);
+			}
+
+			@Override
+			public String toString() {
+				return "<natve fn parallel.preduce>";
+			}
+		});
+
+		parallel.define("peach", new IFn() {
+
+			@Override
+			public int getArity() {
+				return 2;
+			}
+
+			@Override
+			public Object call(Interpreter interpreter, List<Object> args, Token paren) {
+				return call2(interpreter, args.get(0), args.get(1), paren);
+			}
+
+			@Override
+			public Object call2(Interpreter interpreter, Object a, Object b, Token paren) {
+				List<?> list = list(a, paren);
+				run(interpreter, new EachPart(interpreter, list, function(b, 1, paren), paren, 0, list.size(), threshold(list.size())));
+				return null;
+			}
+
+			@Override
+			public String toString() {
+				return "<natve fn parallel.peach>";
+			}
+		});
+		return parallel;
+	}
+}
@@ -49,7 +49,7 @@ public class Parser {
 		
 	}
 
-	private List<Token> tokens;
+	private TokenStream tokens;
 	private int current;
 
 	/**
@@ -58,7 +58,20 @@ public class Parser {
 	 * @return a list of statements
 	 */
 	public List<Stmt> parse(List<Token> tokens) {
+		return parse(TokenStream.of(tokens));
+	}
+
+	/**
+	 * Parses tokens as they are lexed, such as by {@link Lexer#lex(java.io.Reader)}.
+	 * The parser only looks at the types of most tokens, a {@link Token} is only made for the ones the AST keeps,
+	 * and the stream is allowed to throw away tokens the parser has moved past
+	 * @param tokens the tokens, ending with an EOF token
+	 * @return a list of statements
+	 */
+	public List<Stmt> parse(TokenStream tokens) {
 		this.tokens = tokens;
+		current = 0;
+		tokens.has(current);
 		
 		List<Stmt> stmts = new ArrayList<Stmt>();
 		while (!isAtEnd()) {
@@ -128,7 +141,7 @@ public class Parser {
 	 * @return the statement parsed
 	 */
 	private Stmt importStatement() {
-		Token identifier = consume(TokenType.IDENTIFIER, "Expect an identifier after 'import'");
+		Token identifier = consumeToken(TokenType.IDENTIFIER, "Expect an identifier after 'import'");
 		consume(TokenType.SEMICOLON, "Expect ';' after statement");
 		
 		return new Stmt.Import(identifier);
@@ -153,12 +166,12 @@ public class Parser {
 	 * @return a statement defining the function
 	 */
 	private Stmt functionDeclaration() {
-		Token name = consume(TokenType.IDENTIFIER, "This should never happen, please report a bug");
+		Token name = consumeToken(TokenType.IDENTIFIER, "This should never happen, please report a bug");
 		consume(TokenType.PAREN_LEFT, "Expect '(' after function name");
 		List<String> params = new ArrayList<>();
 		if (!match(TokenType.PAREN_RIGHT)) {
-			while(previous().getType() != TokenType.PAREN_RIGHT) {
-				params.add(consume(TokenType.IDENTIFIER, "Expect identifier for parameter").getLexeme());
+			while(previousType() != TokenType.PAREN_RIGHT) {
+				params.add(consumeToken(TokenType.IDENTIFIER, "Expect identifier for parameter").getLexeme());
 				
 				if (!match(TokenType.COMMA)) {
 					if (!(match(TokenType.PAREN_RIGHT))) {
@@ -217,7 +230,7 @@ public class Parser {
 	 */
 	private Stmt forStatement() {
 		Token keyword = previous();
-		if (peek().getType() == TokenType.VAR && peek(1).getType() == TokenType.IDENTIFIER && peek(2).getType() == TokenType.IN) {
+		if (peekType(0) == TokenType.VAR && peekType(1) == TokenType.IDENTIFIER && peekType(2) == TokenType.IN) {
 			return forEach();
 		}
 		Stmt initializer = statement();
@@ -237,65 +250,27 @@ public class Parser {
 	}
 	
 	/**
-	 * Desugars a for-each loop
+	 * Parses a for-each loop
 	 * Ex:
-	 * var list = [1, 2, 3, 4];
 	 * for var item in list {
 	 * 	print(item);
 	 * }
-	 * Desugars to:
-	 * var list = [1, 2, 3, 4];
-	 * {
-	 * 	var __iter__ = 0;
-	 * 	var __iterable__ = list;
-	 * 	while __iter__ < len(__iterable__) {
-	 * 		var item = __iterable__[__iter__];
-	 * 		print(item);
-	 * 		__iter__ = __iter__ + 1;
-	 * 	}
-	 * }
-	 * @return the desugared loop
+	 * @return the loop
 	 */
 	private Stmt forEach() {
-		System.out.println("ForEach");
 		Token keyword = previous();
 		consume(TokenType.VAR, "Expect 'var'");
-		Token identifier = consume(TokenType.IDENTIFIER, "Expect an identifier");
-		Token in = consume(TokenType.IN, "Expect 'in'");
+		Token identifier = consumeToken(TokenType.IDENTIFIER, "Expect an identifier");
+		consume(TokenType.IN, "Expect 'in'");
 		Expr iterable = expression();
-		Stmt initializer = new Stmt.Var(new Token(TokenType.IDENTIFIER, "__iter__", -1, -1), new Expr.Literal(0.0));
-		Stmt initializeIterable = new Stmt.Var(new Token(TokenType.IDENTIFIER, "__iterable__", -1, -1), iterable);
-		Expr condition = new Expr.Binary(
-				new Expr.GetVar(new Token(TokenType.IDENTIFIER, "__iter__", -1, -1)), 
-				new Token(TokenType.LESS, "<", -1, -1),
-				new Expr.Call(
-						new Expr.GetVar(new Token(TokenType.IDENTIFIER, "len", -1, -1)), 
-						Arrays.asList(new Expr.GetVar(new Token(TokenType.IDENTIFIER, "__iterable__", -1, -1))),
-						in));
-		
-		Stmt increment = new Stmt.Expression(
-				new Expr.Assign(
-						new Token(TokenType.IDENTIFIER, "__iter__", -1, -1), 
-						new Expr.Binary(
-								new Expr.GetVar(new Token(TokenType.IDENTIFIER, "__iter__", -1, -1)),
-								new Token(TokenType.PLUS, "+", -1, -1), 
-								new Expr.Literal(1.0))));
 		
 		consume(TokenType.BRACE_LEFT, "Expect '{' to begin for loop");
 		List<Stmt> body = new ArrayList<>();
-		body.add(new Stmt.Var(identifier, new Expr.Index(
-				new Expr.GetVar(
-						new Token(TokenType.IDENTIFIER, "__iter__", -1, -1)), 
-				new Expr.GetVar(new Token(TokenType.IDENTIFIER, "__iterable__", -1, -1)), 
-				in)));
-		
 		while (!check(TokenType.BRACE_RIGHT) && !isAtEnd()) {
 			body.add(statement());
 		}
-		body.add(increment);
 		consume(TokenType.BRACE_RIGHT, "Expect '}' to close block");
-		List<Stmt> block = Arrays.asList(initializer, initializeIterable, new Stmt.While(condition, new Stmt.Block(body), keyword));
-		return new Stmt.Block(block);
+		return new Stmt.ForEach(keyword, new Stmt.Var(identifier, null), iterable, new Stmt.Block(body));
 	}
 	
 	/**
@@ -322,7 +297,7 @@ public class Parser {
 	 * @return the declaration
 	 */
 	private Stmt varStatement() {
-		Token identifier = consume(TokenType.IDENTIFIER, "Expect identifier after 'var'");
+		Token identifier = consumeToken(TokenType.IDENTIFIER, "Expect identifier after 'var'");
 		Expr right = null;
 		if (match(TokenType.EQUALS)) {
 			right = expression();
@@ -405,7 +380,7 @@ public class Parser {
 		while (match(TokenType.OR)) {
 			Token operator = previous();
 			Expr right = and();
-			expr = new Expr.Binary(expr, operator, right);
+			expr = new Expr.Logical(expr, operator, right);
 		}
 		
 		return expr;
@@ -421,7 +396,7 @@ public class Parser {
 		while (match(TokenType.AND)) {
 			Token operator = previous();
 			Expr right = equality();
-			expr = new Expr.Binary(expr, operator, right);
+			expr = new Expr.Logical(expr, operator, right);
 		}
 		
 		return expr;
@@ -512,13 +487,15 @@ public class Parser {
 	 */
 	private Expr indexing() {
 		Expr expr = primary();
-		Token finalOfIndexee = previous();
+		int finalOfIndexee = current - 1;
 		if (match(TokenType.BRACKET_LEFT)) {
+			// Made now, since the stream may throw it away while the index is parsed
+			Token indexee = tokens.token(finalOfIndexee);
 			Token bracket = previous();
 			expr = new Expr.Index(expression(), expr, bracket);
 			consume(TokenType.BRACKET_RIGHT, "Expect ']' after index");
-			if (match(TokenType.EQUALS) && finalOfIndexee.getType() == TokenType.IDENTIFIER) {
-				expr = new Expr.AssignIndex(finalOfIndexee, expression(), ((Expr.Index)expr).getIndex());
+			if (match(TokenType.EQUALS) && indexee.getType() == TokenType.IDENTIFIER) {
+				expr = new Expr.AssignIndex(indexee, expression(), ((Expr.Index)expr).getIndex());
 			}
 		}
 		return expr;
@@ -530,7 +507,7 @@ public class Parser {
 	 */
 	private Expr primary() {
 		if (match(TokenType.NUMBER, TokenType.STRING)) {
-			return new Expr.Literal(previous().getLiteral());
+			return new Expr.Literal(tokens.literal(current - 1));
 		}
 		
 		if (match(TokenType.TRUE)) {
@@ -593,13 +570,13 @@ public class Parser {
 			return new Expr.Assign(identifier, expression());
 		}
 		if (match(TokenType.DOT)) {
-			expr = new Expr.Import(identifier, consume(TokenType.IDENTIFIER, "Expect an identifier"));
+			expr = new Expr.Import(identifier, consumeToken(TokenType.IDENTIFIER, "Expect an identifier"));
 		}
 		if (match(TokenType.PAREN_LEFT)) {
 			Token paren = previous();
 			List<Expr> args = new ArrayList<Expr>();
 			if (!match(TokenType.PAREN_RIGHT)) {
-				while(previous().getType() != TokenType.PAREN_RIGHT) {
+				while(previousType() != TokenType.PAREN_RIGHT) {
 					args.add(expression());
 					
 					if (!match(TokenType.COMMA)) {
@@ -621,8 +598,12 @@ public class Parser {
 	 * @return whether or not the parser moved forward
 	 */
 	private boolean match(TokenType... types) {
+		TokenType next = tokens.type(current);
+		if (next == TokenType.EOF) {
+			return false;
+		}
 		for (TokenType type : types) {
-			if (check(type)) {
+			if (next == type) {
 				advance();
 				return true;
 			}
@@ -635,23 +616,38 @@ public class Parser {
 	 * Checks if the current token is a certain type, and fails with an error if it doesn't match
 	 * @param type the type to match
 	 * @param message the message to fail with
-	 * @return the token matched
 	 */
-	private Token consume(TokenType type, String message) {
-		if (check(type))
-			return advance();
+	private void consume(TokenType type, String message) {
+		if (check(type)) {
+			advance();
+			return;
+		}
 
 		throw error(peek(), message);
 	}
 	
+	/**
+	 * Checks if the current token is a certain type, and fails with an error if it doesn't match
+	 * @param type the type to match
+	 * @param message the message to fail with
+	 * @return the token matched
+	 */
+	private Token consumeToken(TokenType type, String message) {
+		consume(type, message);
+		return previous();
+	}
+	
 	/**
 	 * Moves the parser forward
-	 * @return the token that was previously under the parser
 	 */
-	private Token advance() {
-		if (!isAtEnd())
+	private void advance() {
+		if (!isAtEnd()) {
 			current++;
-		return previous();
+			// The previous token can still be asked for
+			tokens.discardBefore(current - 1);
+			// Lexing the next token here keeps looking at it cheap everywhere else
+			tokens.has(current);
+		}
 	}
 	
 	/**
@@ -660,9 +656,8 @@ public class Parser {
 	 * @return whether or not it was matched
 	 */
 	private boolean check(TokenType type) {
-		if (isAtEnd())
-			return false;
-		return peek().getType() == type;
+		TokenType next = tokens.type(current);
+		return next != TokenType.EOF && next == type;
 	}
 
 	/**
@@ -670,7 +665,7 @@ public class Parser {
 	 * @return whether or not the current token is an EOF
 	 */
 	private boolean isAtEnd() {
-		return peek().getType() == TokenType.EOF;
+		return tokens.type(current) == TokenType.EOF;
 	}
 
 	/**
@@ -678,18 +673,19 @@ public class Parser {
 	 * @return the current token
 	 */
 	private Token peek() {
-		return tokens.get(current);
+		return tokens.token(current);
 	}
 	
-	private Token peek(int distance) {
-		if (distance == 0) {
-			return peek();
-		}
-		try {
-			return tokens.get(current + distance);
-		} catch (IndexOutOfBoundsException e) {
+	/**
+	 * The type of a token after the current one
+	 * @param distance how far after the current token to look
+	 * @return the token's type
+	 */
+	private TokenType peekType(int distance) {
+		if (!tokens.has(current + distance)) {
 			throw error(peek(), "Unexpected EOF");
 		}
+		return tokens.type(current + distance);
 	}
 	
 	/**
@@ -697,7 +693,14 @@ public class Parser {
 	 * @return the previous token
 	 */
 	private Token previous() {
-		return tokens.get(current - 1);
+		return tokens.token(current - 1);
+	}
+	
+	/**
+	 * @return the type of the previous token
+	 */
+	private TokenType previousType() {
+		return tokens.type(current - 1);
 	}
 
 	/**
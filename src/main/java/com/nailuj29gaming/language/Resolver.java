@@ -0,0 +1,431 @@
+package com.nailuj29gaming.language;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.nailuj29gaming.language.ast.Expr;
+import com.nailuj29gaming.language.ast.Stmt;
+
+/**
+ * Statically resolves every local variable to a slot in its function's frame, so the {@link Interpreter}
+ * and the {@link com.nailuj29gaming.language.vm.Compiler} can find it without hashing its name.
+ * Each function gets one fixed-size frame for its parameters and all of its blocks, and so does each block
+ * at the top level of a script.
+ * <p>
+ * Variables that a nested function refers to are captured: they are stored in a {@link Cell},
+ * and the function keeps the cells it needs when it is created.
+ * Variables declared at the top level of a script, and builtins, are left unresolved and looked up by name.
+ *
+ * @see Expr.Storage
+ */
+public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+
+	/**
+	 * A variable declared in a frame
+	 */
+	private static class Variable {
+		final int slot;
+		/**
+		 * The declaration, or <code>null</code> for parameters and the function itself
+		 */
+		final Stmt.Var declaration;
+		final List<Expr.GetVar> reads = new ArrayList<>();
+		final List<Expr.Assign> writes = new ArrayList<>();
+		boolean captured;
+
+		Variable(int slot, Stmt.Var declaration) {
+			this.slot = slot;
+			this.declaration = declaration;
+		}
+	}
+
+	/**
+	 * A block scope. Redeclared variables shadow the earlier declaration, but both keep their slot
+	 */
+	private static class Scope {
+		final Map<String, Variable> names = new HashMap<>();
+		final List<Variable> variables = new ArrayList<>();
+	}
+
+	/**
+	 * A function being resolved, or a block at the top level of a script
+	 */
+	private static class Frame {
+		final Frame enclosing;
+		final List<Scope> scopes = new ArrayList<>();
+		/**
+		 * Where each captured variable comes from: <code>true</code> for a slot of the enclosing frame,
+		 * <code>false</code> for one of the enclosing function's own captured variables
+		 */
+		final List<Boolean> upvalueLocal = new ArrayList<>();
+		final List<Integer> upvalueIndices = new ArrayList<>();
+		/**
+		 * The number of slots in use by open scopes
+		 */
+		int size;
+		int maxSize;
+
+		Frame(Frame enclosing) {
+			this.enclosing = enclosing;
+		}
+	}
+
+	/**
+	 * The frame being resolved, or <code>null</code> at the top level of a script
+	 */
+	private Frame current;
+
+	/**
+	 * Resolves a list of statements
+	 * @param stmts the statements to resolve
+	 */
+	public void resolve(List<Stmt> stmts) {
+		for (Stmt stmt : stmts) {
+			resolve(stmt);
+		}
+	}
+
+	private void resolve(Stmt stmt) {
+		stmt.accept(this);
+	}
+
+	private void resolve(Expr expr) {
+		expr.accept(this);
+	}
+
+	/**
+	 * Resolves the body of a function. The parameters come first in the frame, followed by the function itself
+	 * @param fn the function to resolve
+	 */
+	private void resolveFunction(Fn fn) {
+		current = new Frame(current);
+		beginScope();
+		for (String param : fn.getParams()) {
+			declare(param, null);
+		}
+		declare(fn.getName().getLexeme(), null);
+		resolve(fn.getBody().getStmts());
+
+		List<Integer> cellSlots = new ArrayList<>();
+		for (Variable variable : endScope()) {
+			if (variable.captured) {
+				cellSlots.add(variable.slot);
+			}
+		}
+		fn.setFrameSize(current.maxSize);
+		fn.setCellSlots(toIntArray(cellSlots));
+		boolean[] upvalueLocal = new boolean[current.upvalueLocal.size()];
+		for (int i = 0; i < upvalueLocal.length; i++) {
+			upvalueLocal[i] = current.upvalueLocal.get(i);
+		}
+		fn.setUpvalues(upvalueLocal, toIntArray(current.upvalueIndices));
+		current = current.enclosing;
+	}
+
+	private static int[] toIntArray(List<Integer> list) {
+		int[] array = new int[list.size()];
+		for (int i = 0; i < array.length; i++) {
+			array[i] = list.get(i);
+		}
+		return array;
+	}
+
+	private void beginScope() {
+		current.scopes.add(new Scope());
+	}
+
+	/**
+	 * Closes the innermost scope, freeing its slots for later scopes.
+	 * Now that every reference to its variables is known, the captured ones are marked as stored in cells
+	 * @return the variables declared in the scope
+	 */
+	private List<Variable> endScope() {
+		Scope scope = current.scopes.remove(current.scopes.size() - 1);
+		current.size -= scope.variables.size();
+		for (Variable variable : scope.variables) {
+			if (!variable.captured) {
+				continue;
+			}
+			for (Expr.GetVar read : variable.reads) {
+				read.resolve(Expr.Storage.CELL, variable.slot);
+			}
+			for (Expr.Assign write : variable.writes) {
+				write.resolve(Expr.Storage.CELL, variable.slot);
+			}
+			if (variable.declaration != null) {
+				variable.declaration.setCaptured(true);
+			}
+		}
+		return scope.variables;
+	}
+
+	/**
+	 * Declares a variable in the innermost scope.
+	 * Redeclaring a variable gives it a new slot, references after the redeclaration use the new one
+	 * @param name the name of the variable
+	 * @param declaration the declaration, or <code>null</code> for parameters
+	 * @return the slot of the variable, or -1 if it is a global
+	 */
+	private int declare(String name, Stmt.Var declaration) {
+		if (current == null) {
+			return -1;
+		}
+		Variable variable = new Variable(current.size++, declaration);
+		current.maxSize = Math.max(current.maxSize, current.size);
+		Scope scope = current.scopes.get(current.scopes.size() - 1);
+		scope.names.put(name, variable);
+		scope.variables.add(variable);
+		return variable.slot;
+	}
+
+	/**
+	 * Finds a variable declared in a frame
+	 * @param frame the frame to search
+	 * @param name the name of the variable
+	 * @return the variable, or <code>null</code> if the frame doesn't declare it
+	 */
+	private static Variable lookup(Frame frame, String name) {
+		for (int i = frame.scopes.size() - 1; i >= 0; i--) {
+			Variable variable = frame.scopes.get(i).names.get(name);
+			if (variable != null) {
+				return variable;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Finds a variable in the frames enclosing a function, capturing it in every function in between
+	 * @param frame the function's frame
+	 * @param name the name of the variable
+	 * @return the index of the captured variable, or -1 if it is a global
+	 */
+	private static int lookupUpvalue(Frame frame, String name) {
+		if (frame.enclosing == null) {
+			return -1;
+		}
+		Variable variable = lookup(frame.enclosing, name);
+		if (variable != null) {
+			variable.captured = true;
+			return addUpvalue(frame, true, variable.slot);
+		}
+		int index = lookupUpvalue(frame.enclosing, name);
+		if (index >= 0) {
+			return addUpvalue(frame, false, index);
+		}
+		return -1;
+	}
+
+	private static int addUpvalue(Frame frame, boolean local, int index) {
+		for (int i = 0; i < frame.upvalueIndices.size(); i++) {
+			if (frame.upvalueLocal.get(i) == local && frame.upvalueIndices.get(i) == index) {
+				return i;
+			}
+		}
+		frame.upvalueLocal.add(local);
+		frame.upvalueIndices.add(index);
+		return frame.upvalueIndices.size() - 1;
+	}
+
+	@Override
+	public Void visitBlockStmt(Stmt.Block stmt) {
+		boolean startsFrame = current == null;
+		if (startsFrame) {
+			current = new Frame(null);
+		}
+		beginScope();
+		resolve(stmt.getStmts());
+		endScope();
+		if (startsFrame) {
+			stmt.setSlots(current.maxSize);
+			current = null;
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitBreakStmt(Stmt.Break stmt) {
+		return null;
+	}
+
+	@Override
+	public Void visitContinueStmt(Stmt.Continue stmt) {
+		return null;
+	}
+
+	@Override
+	public Void visitExpressionStmt(Stmt.Expression stmt) {
+		resolve(stmt.getExpression());
+		return null;
+	}
+
+	@Override
+	public Void visitForEachStmt(Stmt.ForEach stmt) {
+		resolve(stmt.getIterable());
+		boolean startsFrame = current == null;
+		if (startsFrame) {
+			current = new Frame(null);
+		}
+		beginScope();
+		// The iterator is named after the keyword, so no variable can refer to it
+		stmt.setIteratorSlot(declare(stmt.getKeyword().getLexeme(), null));
+		Stmt.Var variable = stmt.getVariable();
+		variable.setSlot(declare(variable.getIdentifier().getLexeme(), variable));
+		resolve(stmt.getBody().getStmts());
+		endScope();
+		if (startsFrame) {
+			stmt.setSlots(current.maxSize);
+			current = null;
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitIfStmt(Stmt.If stmt) {
+		resolve(stmt.getCondition());
+		resolve(stmt.getIfBranch());
+		resolve(stmt.getElseBranch());
+		return null;
+	}
+
+	@Override
+	public Void visitImportStmt(Stmt.Import stmt) {
+		return null;
+	}
+
+	@Override
+	public Void visitReturnStmt(Stmt.Return stmt) {
+		if (stmt.getExpr() != null) {
+			resolve(stmt.getExpr());
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitVarStmt(Stmt.Var stmt) {
+		// The variable is declared before its value is evaluated
+		stmt.setSlot(declare(stmt.getIdentifier().getLexeme(), stmt));
+		if (stmt.getRight() != null) {
+			resolve(stmt.getRight());
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitWhileStmt(Stmt.While stmt) {
+		resolve(stmt.getCondition());
+		resolve(stmt.getBody());
+		return null;
+	}
+
+	@Override
+	public Void visitAssignExpr(Expr.Assign expr) {
+		resolve(expr.getRight());
+		if (current == null) {
+			return null;
+		}
+		String name = expr.getIdentifier().getLexeme();
+		Variable variable = lookup(current, name);
+		if (variable != null) {
+			expr.resolve(Expr.Storage.LOCAL, variable.slot);
+			variable.writes.add(expr);
+			return null;
+		}
+		int upvalue = lookupUpvalue(current, name);
+		if (upvalue >= 0) {
+			expr.resolve(Expr.Storage.UPVALUE, upvalue);
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitAssignIndexExpr(Expr.AssignIndex expr) {
+		resolve(expr.getIndex());
+		return visitAssignExpr(expr);
+	}
+
+	@Override
+	public Void visitBinaryExpr(Expr.Binary expr) {
+		resolve(expr.getLeft());
+		resolve(expr.getRight());
+		return null;
+	}
+
+	@Override
+	public Void visitCallExpr(Expr.Call expr) {
+		resolve(expr.getCallee());
+		for (Expr arg : expr.getArgs()) {
+			resolve(arg);
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitGetVarExpr(Expr.GetVar expr) {
+		if (current == null) {
+			return null;
+		}
+		String name = expr.getIdentifier().getLexeme();
+		Variable variable = lookup(current, name);
+		if (variable != null) {
+			expr.resolve(Expr.Storage.LOCAL, variable.slot);
+			variable.reads.add(expr);
+			return null;
+		}
+		int upvalue = lookupUpvalue(current, name);
+		if (upvalue >= 0) {
+			expr.resolve(Expr.Storage.UPVALUE, upvalue);
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitGroupingExpr(Expr.Grouping expr) {
+		resolve(expr.getExpression());
+		return null;
+	}
+
+	@Override
+	public Void visitImportExpr(Expr.Import expr) {
+		// Imports are looked up in their module, not in a scope
+		return null;
+	}
+
+	@Override
+	public Void visitIndexExpr(Expr.Index expr) {
+		resolve(expr.getIndex());
+		resolve(expr.getIndexee());
+		return null;
+	}
+
+	@Override
+	public Void visitListExpr(Expr.EList expr) {
+		for (Expr item : expr.getExprs()) {
+			resolve(item);
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitLiteralExpr(Expr.Literal expr) {
+		if (expr.getValue() instanceof Fn) {
+			resolveFunction((Fn) expr.getValue());
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitLogicalExpr(Expr.Logical expr) {
+		resolve(expr.getLeft());
+		resolve(expr.getRight());
+		return null;
+	}
+
+	@Override
+	public Void visitUnaryExpr(Expr.Unary expr) {
+		resolve(expr.getValue());
+		return null;
+	}
+}
@@ -0,0 +1,151 @@
+package com.nailuj29gaming.language;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * The contents of a source file. Large files are memory mapped rather than read onto the heap,
+ * so the {@link Lexer} can lex straight out of the file.
+ * Where each line starts is only worked out the first time a line is asked for, which is usually only when there is an error
+ */
+public class SourceFile {
+
+	/**
+	 * Files smaller than this are read rather than mapped, since mapping a file costs more than reading a small one
+	 */
+	private static final int MAP_THRESHOLD = 64 * 1024;
+
+	private final Path path;
+	private final ByteBuffer bytes;
+
+	/**
+	 * The position each line starts at, with an extra entry for the end of the file. Worked out when it is first needed
+	 */
+	private int[] lineStarts;
+	private int lineCount;
+
+	/**
+	 * @param path the path to the file
+	 * @param bytes the contents of the file
+	 */
+	public SourceFile(Path path, byte[] bytes) {
+		this(path, ByteBuffer.wrap(bytes));
+	}
+
+	private SourceFile(Path path, ByteBuffer bytes) {
+		this.path = path;
+		this.bytes = bytes;
+	}
+
+	/**
+	 * Opens a source file, mapping it into memory if it is large
+	 * @param path the path to the file
+	 * @return the file
+	 * @throws IOException if the file can't be read
+	 */
+	public static SourceFile open(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE) {
+				throw new IOException(path + " is too large");
+			}
+			if (size >= MAP_THRESHOLD) {
+				// The mapping stays valid after the channel is closed
+				return new SourceFile(path, channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+			}
+			ByteBuffer bytes = ByteBuffer.allocate((int) size);
+			while (bytes.hasRemaining() && channel.read(bytes) >= 0) {
+			}
+			bytes.flip();
+			return new SourceFile(path, bytes);
+		}
+	}
+
+	/**
+	 * @return the path to the file
+	 */
+	public Path getPath() {
+		return path;
+	}
+
+	/**
+	 * @return the contents of the file. Each call returns a new buffer, so reading it doesn't affect anything else
+	 */
+	public ByteBuffer getBytes() {
+		return bytes.duplicate();
+	}
+
+	/**
+	 * @return the number of bytes in the file
+	 */
+	public int size() {
+		return bytes.limit();
+	}
+
+	/**
+	 * @return the contents of the file as a string
+	 */
+	public String getText() {
+		return decode(0, bytes.limit());
+	}
+
+	/**
+	 * @return the number of lines in the file, not counting empty lines at the end
+	 */
+	public int getLineCount() {
+		findLines();
+		return lineCount;
+	}
+
+	/**
+	 * @param line the line number, starting at 1
+	 * @return the text of the line, without the newline, or an empty string if the file doesn't have that line
+	 */
+	public String getLine(int line) {
+		findLines();
+		if (line < 1 || line > lineCount) {
+			return "";
+		}
+		int end = lineStarts[line] - 1;
+		return decode(lineStarts[line - 1], Math.max(end, lineStarts[line - 1]));
+	}
+
+	private void findLines() {
+		if (lineStarts != null) {
+			return;
+		}
+		int[] starts = new int[64];
+		int count = 1;
+		int size = bytes.limit();
+		for (int i = 0; i < size; i++) {
+			if (bytes.get(i) == '\n') {
+				if (count == starts.length) {
+					starts = Arrays.copyOf(starts, count * 2);
+				}
+				starts[count++] = i + 1;
+			}
+		}
+		if (count == starts.length) {
+			starts = Arrays.copyOf(starts, count + 1);
+		}
+		// The last line ends at the end of the file, as if it were followed by a newline
+		starts[count] = size + 1;
+		int lines = count;
+		while (lines > 1 && starts[lines] - starts[lines - 1] <= 1) {
+			lines--;
+		}
+		lineCount = lines;
+		lineStarts = starts;
+	}
+
+	private String decode(int from, int to) {
+		ByteBuffer range = bytes.duplicate();
+		range.limit(to).position(from);
+		return Charset.defaultCharset().decode(range).toString();
+	}
+}
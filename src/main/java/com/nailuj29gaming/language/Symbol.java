@@ -0,0 +1,141 @@
+package com.nailuj29gaming.language;
+
+/**
+ * An interned identifier. There is only ever one symbol for each name, so symbols can be compared by identity,
+ * and each has a small id that an {@link Environment} can use as an index rather than hashing the name.
+ * Identifiers are interned straight out of the {@link Lexer}'s buffer, so an identifier that has been seen before doesn't make a new string
+ */
+public final class Symbol {
+
+	/**
+	 * Every symbol, in an open addressed table. Symbols are only added while holding the lock, but the table
+	 * can be searched without it, since a symbol's fields are final and a symbol that is missed is looked for again under the lock
+	 */
+	private static volatile Symbol[] table = new Symbol[1024];
+	private static int size;
+	private static final Object lock = new Object();
+
+	private final String name;
+	private final int hash;
+	private final int id;
+
+	private Symbol(String name, int hash, int id) {
+		this.name = name;
+		this.hash = hash;
+		this.id = id;
+	}
+
+	/**
+	 * @param name the name
+	 * @return the symbol for the name
+	 */
+	public static Symbol intern(String name) {
+		int hash = name.hashCode();
+		Symbol[] symbols = table;
+		int mask = symbols.length - 1;
+		for (int i = hash & mask; symbols[i] != null; i = (i + 1) & mask) {
+			Symbol symbol = symbols[i];
+			if (symbol.hash == hash && symbol.name.equals(name)) {
+				return symbol;
+			}
+		}
+		return add(name, hash);
+	}
+
+	/**
+	 * Interns a name without making a string of it, unless it hasn't been seen before
+	 * @param chars holds the name
+	 * @param from where the name starts
+	 * @param length how long the name is
+	 * @return the symbol for the name
+	 */
+	public static Symbol intern(char[] chars, int from, int length) {
+		// The same hash as String.hashCode, so both ways of interning agree
+		int hash = 0;
+		for (int i = 0; i < length; i++) {
+			hash = 31 * hash + chars[from + i];
+		}
+		Symbol[] symbols = table;
+		int mask = symbols.length - 1;
+		for (int i = hash & mask; symbols[i] != null; i = (i + 1) & mask) {
+			Symbol symbol = symbols[i];
+			if (symbol.hash == hash && symbol.matches(chars, from, length)) {
+				return symbol;
+			}
+		}
+		return add(new String(chars, from, length), hash);
+	}
+
+	private boolean matches(char[] chars, int from, int length) {
+		if (name.length() != length) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (name.charAt(i) != chars[from + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static Symbol add(String name, int hash) {
+		synchronized (lock) {
+			// Another thread may have added it since the table was searched
+			Symbol[] symbols = table;
+			int mask = symbols.length - 1;
+			int i = hash & mask;
+			for (; symbols[i] != null; i = (i + 1) & mask) {
+				if (symbols[i].hash == hash && symbols[i].name.equals(name)) {
+					return symbols[i];
+				}
+			}
+			Symbol symbol = new Symbol(name, hash, size);
+			if ((size + 1) * 2 > symbols.length) {
+				symbols = new Symbol[symbols.length * 2];
+				mask = symbols.length - 1;
+				for (Symbol old : table) {
+					if (old != null) {
+						int j = old.hash & mask;
+						while (symbols[j] != null) {
+							j = (j + 1) & mask;
+						}
+						symbols[j] = old;
+					}
+				}
+				i = hash & mask;
+				while (symbols[i] != null) {
+					i = (i + 1) & mask;
+				}
+			}
+			// Slots are only ever filled in, so a thread searching without the lock at worst misses the new symbol
+			symbols[i] = symbol;
+			size++;
+			table = symbols;
+			return symbol;
+		}
+	}
+
+	/**
+	 * @return the name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return a small number that is different for every symbol, starting at 0
+	 */
+	public int getId() {
+		return id;
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+}
@@ -0,0 +1,153 @@
+package com.nailuj29gaming.language;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.nailuj29gaming.language.Interpreter.InterpretError;
+
+/**
+ * The <code>spawn</code> and <code>await</code> builtins, which run functions at the same time as the script.
+ * Each task is a function that takes no arguments, called in its own {@link Interpreter#fork() fork} of the interpreter that spawned it,
+ * so it has its own call stack and sees the same modules and builtins. Tasks run on virtual threads when the JVM has them,
+ * so a script can wait on many files at once without tying up a thread for each, and on a pool of daemon threads when it doesn't.
+ * Tasks that haven't finished when the script ends are abandoned, and an error in a task is only reported when it is awaited
+ */
+final class Tasks {
+
+	private static final ExecutorService EXECUTOR = executor();
+
+	private Tasks() {
+	}
+
+	/**
+	 * A function running in the background, which <code>spawn</code> returns
+	 */
+	static final class Task {
+
+		private final Future<Object> future;
+		private final IFn fn;
+
+		Task(Future<Object> future, IFn fn) {
+			this.future = future;
+			this.fn = fn;
+		}
+
+		@Override
+		public String toString() {
+			return "<task " + fn + ">";
+		}
+	}
+
+	/**
+	 * Looks up <code>Executors.newVirtualThreadPerTaskExecutor</code> by reflection, since it isn't in every JVM the language runs on
+	 * @return an executor that starts a virtual thread for each task, or a pool of daemon threads if there are no virtual threads
+	 */
+	private static ExecutorService executor() {
+		try {
+			Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) method.invoke(null);
+		} catch (ReflectiveOperationException | UnsupportedOperationException e) {
+			// Virtual threads are missing, or are a preview feature that hasn't been enabled
+		}
+		return Executors.newCachedThreadPool(new ThreadFactory() {
+
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "task-" + count.incrementAndGet());
+				// Tasks mustn't keep the JVM running after the script ends
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Defines the builtins
+	 * @param globals the global variables to define them in
+	 */
+	static void define(Environment globals) {
+		globals.define("spawn", new IFn() {
+
+			@Override
+			public int getArity() {
+				return 1;
+			}
+
+			@Override
+			public Object call(Interpreter interpreter, List<Object> args, Token paren) {
+				return call1(interpreter, args.get(0), paren);
+			}
+
+			@Override
+			public Object call1(Interpreter interpreter, Object a, Token paren) {
+				if (!(a instanceof IFn) || ((IFn) a).getArity() != 0) {
+					throw new InterpretError("Expect a function that takes 0 arguments", paren);
+				}
+				final IFn fn = (IFn) a;
+				// Forked here, while nothing else is using the interpreter
+				final Interpreter fork = interpreter.fork();
+				Future<Object> future = EXECUTOR.submit(new Callable<Object>() {
+					@Override
+					public Object call() {
+						return fn.call0(fork, paren);
+					}
+				});
+				return new Task(future, fn);
+			}
+
+			@Override
+			public String toString() {
+				return "<natve fn spawn>";
+			}
+		});
+
+		globals.define("await", new IFn() {
+
+			@Override
+			public int getArity() {
+				return 1;
+			}
+
+			@Override
+			public Object call(Interpreter interpreter, List<Object> args, Token paren) {
+				return call1(interpreter, args.get(0), paren);
+			}
+
+			@Override
+			public Object call1(Interpreter interpreter, Object a, Token paren) {
+				if (!(a instanceof Task)) {
+					throw new InterpretError("Expect a task", paren);
+				}
+				try {
+					return ((Task) a).future.get();
+				} catch (ExecutionException e) {
+					// The task's error is reported as if it happened here, with the location it happened at
+					if (e.getCause() instanceof RuntimeException) {
+						throw (RuntimeException) e.getCause();
+					}
+					if (e.getCause() instanceof Error) {
+						throw (Error) e.getCause();
+					}
+					throw new InterpretError("Task failed: " + e.getCause(), paren);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterpretError("Interrupted while awaiting a task", paren);
+				}
+			}
+
+			@Override
+			public String toString() {
+				return "<natve fn await>";
+			}
+		});
+	}
+}
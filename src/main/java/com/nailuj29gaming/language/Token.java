@@ -8,6 +8,7 @@ public class Token {
 	private String lexeme;
 	private int line, column;
 	private Object literal;
+	private Symbol symbol;
 	
 	
 	/**
@@ -36,6 +37,18 @@ public class Token {
 		this.literal = literal;
 	}
 
+	/**
+	 * Makes an identifier token for a symbol that has already been interned
+	 * @param type what kind of Token this is
+	 * @param symbol the identifier
+	 * @param line the line the token is on
+	 * @param column the column the token occurs at
+	 */
+	Token(TokenType type, Symbol symbol, int line, int column) {
+		this(type, symbol.getName(), line, column, null);
+		this.symbol = symbol;
+	}
+
 	/**
 	 * @return the type
 	 */
@@ -55,6 +68,17 @@ public class Token {
 	 */
 	public void setLexeme(String lexeme) {
 		this.lexeme = lexeme;
+		symbol = null;
+	}
+
+	/**
+	 * @return the interned lexeme, which variables are looked up by
+	 */
+	public Symbol getSymbol() {
+		if (symbol == null) {
+			symbol = Symbol.intern(lexeme);
+		}
+		return symbol;
 	}
 
 	/**
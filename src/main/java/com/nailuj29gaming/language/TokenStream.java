@@ -0,0 +1,308 @@
+package com.nailuj29gaming.language;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The tokens lexed from a source, packed into arrays rather than kept as a {@link Token} each.
+ * Every token is an entry in parallel arrays of its type, where its text starts, how long its text is, and its line and column,
+ * and the few tokens with a literal value keep it in a side table. Identifiers are interned as they are added, and keep their {@link Symbol}.
+ * A {@link Token} is only made when something needs one, such as the AST or an error message.
+ * Tokens are indexed from the start of the source, and are lexed from the {@link Lexer} the first time they are asked for.
+ * Tokens before {@link #discardBefore(int)} can be thrown away to make room for new ones, so a large source never has to be held all at once
+ */
+public class TokenStream {
+
+	private static final TokenType[] TYPES = TokenType.values();
+
+	private static final int INITIAL_SIZE = 256;
+
+	/**
+	 * Where more tokens come from, or <code>null</code> once the whole source has been lexed
+	 */
+	private Lexer lexer;
+
+	private int[] types = new int[INITIAL_SIZE];
+	private int[] starts = new int[INITIAL_SIZE];
+	private int[] lengths = new int[INITIAL_SIZE];
+	private int[] lines = new int[INITIAL_SIZE];
+	private int[] columns = new int[INITIAL_SIZE];
+	private Symbol[] symbols = new Symbol[INITIAL_SIZE];
+
+	/**
+	 * The text of every token, one after the other
+	 */
+	private char[] text = new char[INITIAL_SIZE * 4];
+	private int textLength;
+
+	/**
+	 * The tokens that have a literal, in order, and their literals
+	 */
+	private int[] literalTokens = new int[16];
+	private Object[] literals = new Object[16];
+	private int literalCount;
+
+	/**
+	 * The index of the first token that is still held
+	 */
+	private int base;
+	private int count;
+
+	/**
+	 * Tokens before this one may be thrown away
+	 */
+	private int mark;
+
+	/**
+	 * The last token that was made, so asking for the same token twice gives the same {@link Token}
+	 */
+	private int cachedIndex = -1;
+	private Token cached;
+
+	/**
+	 * @param lexer where to lex tokens from, or <code>null</code> if they are all added up front
+	 */
+	TokenStream(Lexer lexer) {
+		this.lexer = lexer;
+	}
+
+	/**
+	 * Packs a list of tokens into a stream
+	 * @param tokens the tokens
+	 * @return the stream
+	 */
+	public static TokenStream of(List<Token> tokens) {
+		TokenStream stream = new TokenStream(null);
+		for (Token token : tokens) {
+			char[] lexeme = token.getLexeme().toCharArray();
+			stream.add(token.getType(), lexeme, 0, lexeme.length, token.getLine(), token.getColumn(), token.getLiteral());
+		}
+		return stream;
+	}
+
+	/**
+	 * Adds a token to the end of the stream
+	 * @param type the token's type
+	 * @param chars holds the token's text
+	 * @param from where the token's text starts
+	 * @param length how long the token's text is
+	 * @param line the line the token is on
+	 * @param column the column the token occurs at
+	 * @param literal the value of the token, or <code>null</code>
+	 */
+	void add(TokenType type, char[] chars, int from, int length, int line, int column, Object literal) {
+		if (count == types.length) {
+			makeRoom();
+		}
+		if (textLength + length > text.length) {
+			text = Arrays.copyOf(text, Math.max(text.length * 2, textLength + length));
+		}
+		System.arraycopy(chars, from, text, textLength, length);
+		types[count] = type.ordinal();
+		starts[count] = textLength;
+		lengths[count] = length;
+		lines[count] = line;
+		columns[count] = column;
+		symbols[count] = type == TokenType.IDENTIFIER ? Symbol.intern(chars, from, length) : null;
+		textLength += length;
+		if (literal != null) {
+			if (literalCount == literals.length) {
+				literalTokens = Arrays.copyOf(literalTokens, literalCount * 2);
+				literals = Arrays.copyOf(literals, literalCount * 2);
+			}
+			literalTokens[literalCount] = base + count;
+			literals[literalCount] = literal;
+			literalCount++;
+		}
+		count++;
+	}
+
+	/**
+	 * Throws away the tokens before the mark if that frees up enough space, otherwise grows the arrays
+	 */
+	private void makeRoom() {
+		int discard = Math.min(mark - base, count);
+		if (discard > 0 && discard >= count / 2) {
+			int kept = count - discard;
+			int textStart = kept == 0 ? textLength : starts[discard];
+			System.arraycopy(types, discard, types, 0, kept);
+			System.arraycopy(starts, discard, starts, 0, kept);
+			System.arraycopy(lengths, discard, lengths, 0, kept);
+			System.arraycopy(lines, discard, lines, 0, kept);
+			System.arraycopy(columns, discard, columns, 0, kept);
+			System.arraycopy(symbols, discard, symbols, 0, kept);
+			Arrays.fill(symbols, kept, count, null);
+			for (int i = 0; i < kept; i++) {
+				starts[i] -= textStart;
+			}
+			System.arraycopy(text, textStart, text, 0, textLength - textStart);
+			textLength -= textStart;
+
+			int firstLiteral = findLiteral(mark);
+			if (firstLiteral < 0) {
+				firstLiteral = -firstLiteral - 1;
+			}
+			System.arraycopy(literalTokens, firstLiteral, literalTokens, 0, literalCount - firstLiteral);
+			System.arraycopy(literals, firstLiteral, literals, 0, literalCount - firstLiteral);
+			Arrays.fill(literals, literalCount - firstLiteral, literalCount, null);
+			literalCount -= firstLiteral;
+
+			base = mark;
+			count = kept;
+		}
+		if (count == types.length) {
+			int size = types.length * 2;
+			types = Arrays.copyOf(types, size);
+			starts = Arrays.copyOf(starts, size);
+			lengths = Arrays.copyOf(lengths, size);
+			lines = Arrays.copyOf(lines, size);
+			columns = Arrays.copyOf(columns, size);
+			symbols = Arrays.copyOf(symbols, size);
+		}
+	}
+
+	/**
+	 * Lets the stream throw away the tokens before a token, since they won't be asked for again
+	 * @param index the first token that may still be asked for
+	 */
+	public void discardBefore(int index) {
+		if (index > mark) {
+			mark = index;
+		}
+	}
+
+	/**
+	 * Checks whether the source has a token, lexing up to it if needed
+	 * @param index the token's index
+	 * @return whether or not there is a token at the index
+	 */
+	public boolean has(int index) {
+		while (index - base >= count) {
+			if (lexer == null || !lexer.lexMore()) {
+				lexer = null;
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Lexes the rest of the source, so none of it will be thrown away and the stream can be read more than once
+	 * @return the stream
+	 */
+	public TokenStream readAll() {
+		mark = 0;
+		while (has(base + count)) {
+		}
+		return this;
+	}
+
+	/**
+	 * Gets the slot in the arrays a token is kept in, lexing up to the token if needed
+	 * @param index the token's index
+	 * @return the slot
+	 */
+	private int slot(int index) {
+		if (index - base >= count && !has(index)) {
+			throw new IndexOutOfBoundsException("No token " + index);
+		}
+		if (index < base) {
+			throw new IllegalStateException("Token " + index + " has been discarded");
+		}
+		return index - base;
+	}
+
+	/**
+	 * @param index the token's index
+	 * @return the token's type
+	 */
+	public TokenType type(int index) {
+		int slot = index - base;
+		if (slot < 0 || slot >= count) {
+			slot = slot(index);
+		}
+		return TYPES[types[slot]];
+	}
+
+	/**
+	 * @param index the token's index
+	 * @return the token's text
+	 */
+	public String lexeme(int index) {
+		int slot = slot(index);
+		return new String(text, starts[slot], lengths[slot]);
+	}
+
+	/**
+	 * @param index the token's index
+	 * @return the line the token is on
+	 */
+	public int line(int index) {
+		return lines[slot(index)];
+	}
+
+	/**
+	 * @param index the token's index
+	 * @return the column the token occurs at
+	 */
+	public int column(int index) {
+		return columns[slot(index)];
+	}
+
+	/**
+	 * @param index the token's index
+	 * @return the identifier's symbol, or <code>null</code> if the token isn't an identifier
+	 */
+	public Symbol symbol(int index) {
+		return symbols[slot(index)];
+	}
+
+	/**
+	 * @param index the token's index
+	 * @return the value of the token, or <code>null</code> if it doesn't have one
+	 */
+	public Object literal(int index) {
+		slot(index);
+		int literal = findLiteral(index);
+		return literal < 0 ? null : literals[literal];
+	}
+
+	private int findLiteral(int index) {
+		return Arrays.binarySearch(literalTokens, 0, literalCount, index);
+	}
+
+	/**
+	 * Makes a {@link Token} for a token in the stream
+	 * @param index the token's index
+	 * @return the token
+	 */
+	public Token token(int index) {
+		if (index == cachedIndex) {
+			return cached;
+		}
+		int slot = slot(index);
+		TokenType type = TYPES[types[slot]];
+		if (symbols[slot] != null) {
+			cached = new Token(type, symbols[slot], lines[slot], columns[slot]);
+			cachedIndex = index;
+			return cached;
+		}
+		Object literal = type == TokenType.NUMBER || type == TokenType.STRING ? literal(index) : null;
+		cached = new Token(type, new String(text, starts[slot], lengths[slot]), lines[slot], columns[slot], literal);
+		cachedIndex = index;
+		return cached;
+	}
+
+	/**
+	 * Makes a {@link Token} for every token from the first one still held to the end of the source
+	 * @return the tokens
+	 */
+	public List<Token> toList() {
+		List<Token> tokens = new ArrayList<>();
+		for (int i = base; has(i); i++) {
+			tokens.add(token(i));
+		}
+		return tokens;
+	}
+}
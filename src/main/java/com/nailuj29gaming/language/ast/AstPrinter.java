@@ -2,6 +2,8 @@ package com.nailuj29gaming.language.ast;
 
 import java.util.List;
 
+import com.nailuj29gaming.language.Fn;
+
 /**
  * This class assists in debugging the AST, ensuring it is generated properly
  */
@@ -61,6 +63,11 @@ public class AstPrinter implements Expr.Visitor<String>, Stmt.Visitor<String> {
 		return print(stmt.getExpression());
 	}
 	
+	@Override
+	public String visitForEachStmt(Stmt.ForEach stmt) {
+		return parenthesize("for " + stmt.getVariable().getIdentifier().getLexeme() + " in " + print(stmt.getIterable()), stmt.getBody());
+	}
+	
 	@Override
 	public String visitIfStmt(Stmt.If stmt) {
 		return parenthesize("if " + print(stmt.getCondition()), stmt.getIfBranch(), stmt.getElseBranch());
@@ -142,10 +149,21 @@ public class AstPrinter implements Expr.Visitor<String>, Stmt.Visitor<String> {
 		if (expr.getValue() instanceof String) {
 			return "\"" + expr.getValue() + "\"";
 		}
+		if (expr.getValue() == null) {
+			return "nil";
+		}
+		if (expr.getValue() instanceof Fn) {
+			return parenthesize(expr.getValue().toString(), ((Fn) expr.getValue()).getBody());
+		}
 		return expr.getValue().toString();
 	}
 
 
+	@Override
+	public String visitLogicalExpr(Expr.Logical expr) {
+		return parenthesize(expr.getOperator().getLexeme(), expr.getLeft(), expr.getRight());
+	}
+
 	@Override
 	public String visitUnaryExpr(Expr.Unary expr) {
 		return parenthesize(expr.getOperator().getLexeme(), expr.getValue());
@@ -0,0 +1,228 @@
+package com.nailuj29gaming.language.ast;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.nailuj29gaming.language.Fn;
+import com.nailuj29gaming.language.Token;
+import com.nailuj29gaming.language.TokenType;
+
+/**
+ * Reads an AST written by an {@link AstWriter}, including everything the {@link com.nailuj29gaming.language.Resolver}
+ * stored in it, so the statements can be run straight away
+ */
+public class AstReader {
+
+	private static final TokenType[] TOKEN_TYPES = TokenType.values();
+	private static final Expr.Storage[] STORAGES = Expr.Storage.values();
+
+	private final DataInputStream in;
+	private final List<String> strings = new ArrayList<>();
+	private final List<Token> tokens = new ArrayList<>();
+
+	/**
+	 * @param in where to read the AST from
+	 */
+	public AstReader(InputStream in) {
+		this.in = new DataInputStream(in);
+	}
+
+	/**
+	 * Reads a list of statements
+	 * @return the statements
+	 * @throws IOException if the statements can't be read, or weren't written by an {@link AstWriter}
+	 */
+	public List<Stmt> read() throws IOException {
+		try {
+			return readStmts();
+		} catch (IndexOutOfBoundsException | ClassCastException e) {
+			throw new IOException("Malformed AST", e);
+		}
+	}
+
+	private List<Stmt> readStmts() throws IOException {
+		int size = readSize();
+		List<Stmt> statements = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			statements.add(readStmt());
+		}
+		return statements;
+	}
+
+	private List<Expr> readExprs() throws IOException {
+		int size = readSize();
+		List<Expr> exprs = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			exprs.add(readExpr());
+		}
+		return exprs;
+	}
+
+	private int readSize() throws IOException {
+		int size = in.readInt();
+		if (size < 0) {
+			throw new IOException("Malformed AST");
+		}
+		return size;
+	}
+
+	private String readString() throws IOException {
+		int index = in.readInt();
+		if (index < 0) {
+			return null;
+		} else if (index == strings.size()) {
+			strings.add(in.readUTF());
+		}
+		return strings.get(index);
+	}
+
+	private Token readToken() throws IOException {
+		int index = in.readInt();
+		if (index < 0) {
+			return null;
+		} else if (index == tokens.size()) {
+			TokenType type = TOKEN_TYPES[in.readUnsignedByte()];
+			String lexeme = readString();
+			int line = in.readInt();
+			int column = in.readInt();
+			tokens.add(new Token(type, lexeme, line, column, readValue()));
+		}
+		return tokens.get(index);
+	}
+
+	private Object readValue() throws IOException {
+		int tag = in.readUnsignedByte();
+		switch (tag) {
+		case AstWriter.NULL:
+			return null;
+		case AstWriter.TRUE:
+			return true;
+		case AstWriter.FALSE:
+			return false;
+		case AstWriter.NUMBER:
+			return in.readDouble();
+		case AstWriter.STRING:
+			return readString();
+		case AstWriter.FUNCTION:
+			Token name = readToken();
+			int arity = readSize();
+			List<String> params = new ArrayList<>(arity);
+			for (int i = 0; i < arity; i++) {
+				params.add(readString());
+			}
+			Fn fn = new Fn(params, (Stmt.Block) readStmt(), name);
+			fn.setFrameSize(in.readInt());
+			fn.setCellSlots(readInts());
+			boolean[] upvalueLocal = new boolean[readSize()];
+			for (int i = 0; i < upvalueLocal.length; i++) {
+				upvalueLocal[i] = in.readBoolean();
+			}
+			fn.setUpvalues(upvalueLocal, readInts());
+			return fn;
+		default:
+			throw new IOException("Unknown literal " + tag);
+		}
+	}
+
+	private int[] readInts() throws IOException {
+		int[] values = new int[readSize()];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = in.readInt();
+		}
+		return values;
+	}
+
+	private Expr.Storage readStorage() throws IOException {
+		byte storage = in.readByte();
+		return storage < 0 ? null : STORAGES[storage];
+	}
+
+	private Expr readExpr() throws IOException {
+		int tag = in.readUnsignedByte();
+		switch (tag) {
+		case AstWriter.NULL:
+			return null;
+		case AstWriter.ASSIGN: {
+			Expr.Assign expr = new Expr.Assign(readToken(), readExpr());
+			expr.resolve(readStorage(), in.readInt());
+			return expr;
+		}
+		case AstWriter.ASSIGN_INDEX: {
+			Token identifier = readToken();
+			Expr right = readExpr();
+			Expr.AssignIndex expr = new Expr.AssignIndex(identifier, right, readExpr());
+			expr.resolve(readStorage(), in.readInt());
+			return expr;
+		}
+		case AstWriter.BINARY:
+			return new Expr.Binary(readExpr(), readToken(), readExpr());
+		case AstWriter.CALL:
+			return new Expr.Call((Expr.GetVar) readExpr(), readExprs(), readToken());
+		case AstWriter.GET_VAR: {
+			Expr.GetVar expr = new Expr.GetVar(readToken());
+			expr.resolve(readStorage(), in.readInt());
+			return expr;
+		}
+		case AstWriter.GROUPING:
+			return new Expr.Grouping(readExpr());
+		case AstWriter.IMPORT_EXPR:
+			return new Expr.Import(readToken(), readToken());
+		case AstWriter.INDEX:
+			return new Expr.Index(readExpr(), readExpr(), readToken());
+		case AstWriter.LIST:
+			return new Expr.EList(readExprs());
+		case AstWriter.LITERAL:
+			return new Expr.Literal(readValue());
+		case AstWriter.LOGICAL:
+			return new Expr.Logical(readExpr(), readToken(), readExpr());
+		case AstWriter.UNARY:
+			return new Expr.Unary(readToken(), readExpr());
+		default:
+			throw new IOException("Unknown expression " + tag);
+		}
+	}
+
+	private Stmt readStmt() throws IOException {
+		int tag = in.readUnsignedByte();
+		switch (tag) {
+		case AstWriter.NULL:
+			return null;
+		case AstWriter.BLOCK: {
+			Stmt.Block stmt = new Stmt.Block(readStmts());
+			stmt.setSlots(in.readInt());
+			return stmt;
+		}
+		case AstWriter.BREAK:
+			return new Stmt.Break(readToken());
+		case AstWriter.CONTINUE:
+			return new Stmt.Continue(readToken());
+		case AstWriter.EXPRESSION:
+			return new Stmt.Expression(readExpr());
+		case AstWriter.IF:
+			return new Stmt.If(readExpr(), (Stmt.Block) readStmt(), (Stmt.Block) readStmt(), readToken());
+		case AstWriter.IMPORT:
+			return new Stmt.Import(readToken());
+		case AstWriter.RETURN:
+			return new Stmt.Return(readToken(), readExpr());
+		case AstWriter.VAR: {
+			Stmt.Var stmt = new Stmt.Var(readToken(), readExpr());
+			stmt.setSlot(in.readInt());
+			stmt.setCaptured(in.readBoolean());
+			return stmt;
+		}
+		case AstWriter.WHILE:
+			return new Stmt.While(readExpr(), (Stmt.Block) readStmt(), readToken());
+		case AstWriter.FOR_EACH: {
+			Stmt.ForEach stmt = new Stmt.ForEach(readToken(), (Stmt.Var) readStmt(), readExpr(), (Stmt.Block) readStmt());
+			stmt.setIteratorSlot(in.readInt());
+			stmt.setSlots(in.readInt());
+			return stmt;
+		}
+		default:
+			throw new IOException("Unknown statement " + tag);
+		}
+	}
+}
@@ -0,0 +1,412 @@
+package com.nailuj29gaming.language.ast;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.nailuj29gaming.language.Fn;
+import com.nailuj29gaming.language.Token;
+
+/**
+ * Writes a resolved AST in a compact binary form, which an {@link AstReader} turns back into the same tree.
+ * Every node is written as a tag followed by its children, and strings and tokens are only written the first time
+ * they are used, after that they are referred to by index
+ */
+public class AstWriter implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+
+	static final int NULL = 0;
+
+	static final int ASSIGN = 1;
+	static final int ASSIGN_INDEX = 2;
+	static final int BINARY = 3;
+	static final int CALL = 4;
+	static final int GET_VAR = 5;
+	static final int GROUPING = 6;
+	static final int IMPORT_EXPR = 7;
+	static final int INDEX = 8;
+	static final int LIST = 9;
+	static final int LITERAL = 10;
+	static final int UNARY = 11;
+
+	static final int BLOCK = 12;
+	static final int BREAK = 13;
+	static final int CONTINUE = 14;
+	static final int EXPRESSION = 15;
+	static final int IF = 16;
+	static final int IMPORT = 17;
+	static final int RETURN = 18;
+	static final int VAR = 19;
+	static final int WHILE = 20;
+	static final int FOR_EACH = 21;
+	static final int LOGICAL = 22;
+
+	static final int TRUE = 1;
+	static final int FALSE = 2;
+	static final int NUMBER = 3;
+	static final int STRING = 4;
+	static final int FUNCTION = 5;
+
+	private final DataOutputStream out;
+	private final Map<String, Integer> strings = new HashMap<>();
+	private final Map<Token, Integer> tokens = new IdentityHashMap<>();
+
+	/**
+	 * @param out where to write the AST
+	 */
+	public AstWriter(OutputStream out) {
+		this.out = new DataOutputStream(out);
+	}
+
+	/**
+	 * Writes a list of statements
+	 * @param statements the statements, after they have been resolved
+	 * @throws IOException if the statements can't be written
+	 */
+	public void write(List<Stmt> statements) throws IOException {
+		try {
+			writeStmts(statements);
+			out.flush();
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	private void writeStmts(List<Stmt> statements) {
+		writeInt(statements.size());
+		for (Stmt stmt : statements) {
+			write(stmt);
+		}
+	}
+
+	private void writeExprs(List<Expr> exprs) {
+		writeInt(exprs.size());
+		for (Expr expr : exprs) {
+			write(expr);
+		}
+	}
+
+	private void write(Stmt stmt) {
+		if (stmt == null) {
+			writeByte(NULL);
+		} else {
+			stmt.accept(this);
+		}
+	}
+
+	private void write(Expr expr) {
+		if (expr == null) {
+			writeByte(NULL);
+		} else {
+			expr.accept(this);
+		}
+	}
+
+	private void writeByte(int value) {
+		try {
+			out.writeByte(value);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private void writeBoolean(boolean value) {
+		try {
+			out.writeBoolean(value);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private void writeInt(int value) {
+		try {
+			out.writeInt(value);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private void writeDouble(double value) {
+		try {
+			out.writeDouble(value);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private void writeUTF(String value) {
+		try {
+			out.writeUTF(value);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private void writeString(String value) {
+		if (value == null) {
+			writeInt(-1);
+			return;
+		}
+		Integer index = strings.get(value);
+		if (index != null) {
+			writeInt(index);
+			return;
+		}
+		writeInt(strings.size());
+		strings.put(value, strings.size());
+		writeUTF(value);
+	}
+
+	private void writeToken(Token token) {
+		if (token == null) {
+			writeInt(-1);
+			return;
+		}
+		Integer index = tokens.get(token);
+		if (index != null) {
+			writeInt(index);
+			return;
+		}
+		writeInt(tokens.size());
+		tokens.put(token, tokens.size());
+		writeByte(token.getType().ordinal());
+		writeString(token.getLexeme());
+		writeInt(token.getLine());
+		writeInt(token.getColumn());
+		writeValue(token.getLiteral());
+	}
+
+	private void writeValue(Object value) {
+		if (value == null) {
+			writeByte(NULL);
+		} else if (value instanceof Boolean) {
+			writeByte((Boolean) value ? TRUE : FALSE);
+		} else if (value instanceof Double) {
+			writeByte(NUMBER);
+			writeDouble((Double) value);
+		} else if (value instanceof String) {
+			writeByte(STRING);
+			writeString((String) value);
+		} else if (value instanceof Fn) {
+			Fn fn = (Fn) value;
+			writeByte(FUNCTION);
+			writeToken(fn.getName());
+			writeInt(fn.getParams().size());
+			for (String param : fn.getParams()) {
+				writeString(param);
+			}
+			write(fn.getBody());
+			writeInt(fn.getFrameSize());
+			writeInts(fn.getCellSlots());
+			boolean[] upvalueLocal = fn.getUpvalueLocal();
+			writeInt(upvalueLocal.length);
+			for (boolean local : upvalueLocal) {
+				writeBoolean(local);
+			}
+			writeInts(fn.getUpvalueIndices());
+		} else {
+			throw new IllegalArgumentException("Cannot write literal " + value);
+		}
+	}
+
+	private void writeInts(int[] values) {
+		writeInt(values.length);
+		for (int value : values) {
+			writeInt(value);
+		}
+	}
+
+	private void writeStorage(Expr.Storage storage, int slot) {
+		writeByte(storage == null ? -1 : storage.ordinal());
+		writeInt(slot);
+	}
+
+	@Override
+	public Void visitAssignExpr(Expr.Assign expr) {
+		writeByte(ASSIGN);
+		writeToken(expr.getIdentifier());
+		write(expr.getRight());
+		writeStorage(expr.getStorage(), expr.getSlot());
+		return null;
+	}
+
+	@Override
+	public Void visitAssignIndexExpr(Expr.AssignIndex expr) {
+		writeByte(ASSIGN_INDEX);
+		writeToken(expr.getIdentifier());
+		write(expr.getRight());
+		write(expr.getIndex());
+		writeStorage(expr.getStorage(), expr.getSlot());
+		return null;
+	}
+
+	@Override
+	public Void visitBinaryExpr(Expr.Binary expr) {
+		writeByte(BINARY);
+		write(expr.getLeft());
+		writeToken(expr.getOperator());
+		write(expr.getRight());
+		return null;
+	}
+
+	@Override
+	public Void visitCallExpr(Expr.Call expr) {
+		writeByte(CALL);
+		write(expr.getCallee());
+		writeExprs(expr.getArgs());
+		writeToken(expr.getParen());
+		return null;
+	}
+
+	@Override
+	public Void visitGetVarExpr(Expr.GetVar expr) {
+		writeByte(GET_VAR);
+		writeToken(expr.getIdentifier());
+		writeStorage(expr.getStorage(), expr.getSlot());
+		return null;
+	}
+
+	@Override
+	public Void visitGroupingExpr(Expr.Grouping expr) {
+		writeByte(GROUPING);
+		write(expr.getExpression());
+		return null;
+	}
+
+	@Override
+	public Void visitImportExpr(Expr.Import expr) {
+		writeByte(IMPORT_EXPR);
+		writeToken(expr.getModule());
+		writeToken(expr.getIdentifier());
+		return null;
+	}
+
+	@Override
+	public Void visitIndexExpr(Expr.Index expr) {
+		writeByte(INDEX);
+		write(expr.getIndex());
+		write(expr.getIndexee());
+		writeToken(expr.getBracket());
+		return null;
+	}
+
+	@Override
+	public Void visitListExpr(Expr.EList expr) {
+		writeByte(LIST);
+		writeExprs(expr.getExprs());
+		return null;
+	}
+
+	@Override
+	public Void visitLiteralExpr(Expr.Literal expr) {
+		writeByte(LITERAL);
+		writeValue(expr.getValue());
+		return null;
+	}
+
+	@Override
+	public Void visitLogicalExpr(Expr.Logical expr) {
+		writeByte(LOGICAL);
+		write(expr.getLeft());
+		writeToken(expr.getOperator());
+		write(expr.getRight());
+		return null;
+	}
+
+	@Override
+	public Void visitUnaryExpr(Expr.Unary expr) {
+		writeByte(UNARY);
+		writeToken(expr.getOperator());
+		write(expr.getValue());
+		return null;
+	}
+
+	@Override
+	public Void visitBlockStmt(Stmt.Block stmt) {
+		writeByte(BLOCK);
+		writeStmts(stmt.getStmts());
+		writeInt(stmt.getSlots());
+		return null;
+	}
+
+	@Override
+	public Void visitBreakStmt(Stmt.Break stmt) {
+		writeByte(BREAK);
+		writeToken(stmt.getKeyword());
+		return null;
+	}
+
+	@Override
+	public Void visitContinueStmt(Stmt.Continue stmt) {
+		writeByte(CONTINUE);
+		writeToken(stmt.getKeyword());
+		return null;
+	}
+
+	@Override
+	public Void visitExpressionStmt(Stmt.Expression stmt) {
+		writeByte(EXPRESSION);
+		write(stmt.getExpression());
+		return null;
+	}
+
+	@Override
+	public Void visitForEachStmt(Stmt.ForEach stmt) {
+		writeByte(FOR_EACH);
+		writeToken(stmt.getKeyword());
+		write(stmt.getVariable());
+		write(stmt.getIterable());
+		write(stmt.getBody());
+		writeInt(stmt.getIteratorSlot());
+		writeInt(stmt.getSlots());
+		return null;
+	}
+
+	@Override
+	public Void visitIfStmt(Stmt.If stmt) {
+		writeByte(IF);
+		write(stmt.getCondition());
+		write(stmt.getIfBranch());
+		write(stmt.getElseBranch());
+		writeToken(stmt.getKeyword());
+		return null;
+	}
+
+	@Override
+	public Void visitImportStmt(Stmt.Import stmt) {
+		writeByte(IMPORT);
+		writeToken(stmt.getImportName());
+		return null;
+	}
+
+	@Override
+	public Void visitReturnStmt(Stmt.Return stmt) {
+		writeByte(RETURN);
+		writeToken(stmt.getKeyword());
+		write(stmt.getExpr());
+		return null;
+	}
+
+	@Override
+	public Void visitVarStmt(Stmt.Var stmt) {
+		writeByte(VAR);
+		writeToken(stmt.getIdentifier());
+		write(stmt.getRight());
+		writeInt(stmt.getSlot());
+		writeBoolean(stmt.isCaptured());
+		return null;
+	}
+
+	@Override
+	public Void visitWhileStmt(Stmt.While stmt) {
+		writeByte(WHILE);
+		write(stmt.getCondition());
+		write(stmt.getBody());
+		writeToken(stmt.getKeyword());
+		return null;
+	}
+}
@@ -2,6 +2,7 @@ package com.nailuj29gaming.language.ast;
 
 import java.util.List;
 
+import com.nailuj29gaming.language.CallSite;
 import com.nailuj29gaming.language.Token;
 
 /**
@@ -73,6 +74,12 @@ public abstract class Expr {
 		 * @return the result of the expression
 		 */
 		R visitLiteralExpr(Literal expr);
+		/**
+		 * Visit a logical expression and its children
+		 * @param expr the expression
+		 * @return the result of the expression
+		 */
+		R visitLogicalExpr(Logical expr);
 		/**
 		 * Visit a unary expression and its children
 		 * @param expr the expression
@@ -82,12 +89,32 @@ public abstract class Expr {
 		
 	}
 	
+	/**
+	 * Where a variable that has been resolved by the {@link com.nailuj29gaming.language.Resolver} is stored
+	 */
+	public enum Storage {
+		/**
+		 * In a slot of the current frame
+		 */
+		LOCAL,
+		/**
+		 * In a {@link com.nailuj29gaming.language.Cell} in a slot of the current frame, because a closure captured it
+		 */
+		CELL,
+		/**
+		 * In a {@link com.nailuj29gaming.language.Cell} captured by the function that is running
+		 */
+		UPVALUE
+	}
+	
 	/**
 	 * Set the value of a variable
 	 */
 	public static class Assign extends Expr {
 		private Token identifier;
 		private Expr right;
+		private Storage storage;
+		private int slot = -1;
 
 
 		/**
@@ -117,6 +144,30 @@ public abstract class Expr {
 			return right;
 		}
 
+		/**
+		 * Annotates this assignment with the location of its variable
+		 * @param storage how the variable is stored
+		 * @param slot the slot of the variable in the frame, or the index of the captured variable
+		 * @see com.nailuj29gaming.language.Resolver
+		 */
+		public void resolve(Storage storage, int slot) {
+			this.storage = storage;
+			this.slot = slot;
+		}
+
+		/**
+		 * @return how the variable is stored, or <code>null</code> if it is a global
+		 */
+		public Storage getStorage() {
+			return storage;
+		}
+
+		/**
+		 * @return the slot of the variable in the frame or the index of the captured variable, or -1 if it is a global
+		 */
+		public int getSlot() {
+			return slot;
+		}
 
 		@Override
 		public <R> R accept(Visitor<R> visitor) {
@@ -217,6 +268,7 @@ public abstract class Expr {
 		private Expr.GetVar callee;
 		private List<Expr> args;
 		private Token paren;
+		private final CallSite site = new CallSite();
 		
 		/**
 		 * @param callee the named function being called. IIFEs are not supported
@@ -254,6 +306,13 @@ public abstract class Expr {
 			return paren;
 		}
 
+		/**
+		 * @return the inline cache of the functions this call has called
+		 */
+		public CallSite getSite() {
+			return site;
+		}
+
 
 		@Override
 		public <R> R accept(Visitor<R> visitor) {
@@ -267,6 +326,8 @@ public abstract class Expr {
 	public static class GetVar extends Expr {
 		
 		private Token identifier;
+		private Storage storage;
+		private int slot = -1;
 		
 		/**
 		 * @param identifier the identifier to set
@@ -282,6 +343,31 @@ public abstract class Expr {
 			return identifier;
 		}
 
+		/**
+		 * Annotates this access with the location of its variable
+		 * @param storage how the variable is stored
+		 * @param slot the slot of the variable in the frame, or the index of the captured variable
+		 * @see com.nailuj29gaming.language.Resolver
+		 */
+		public void resolve(Storage storage, int slot) {
+			this.storage = storage;
+			this.slot = slot;
+		}
+
+		/**
+		 * @return how the variable is stored, or <code>null</code> if it is a global
+		 */
+		public Storage getStorage() {
+			return storage;
+		}
+
+		/**
+		 * @return the slot of the variable in the frame or the index of the captured variable, or -1 if it is a global
+		 */
+		public int getSlot() {
+			return slot;
+		}
+
 		@Override
 		public <R> R accept(Visitor<R> visitor) {
 			return visitor.visitGetVarExpr(this);
@@ -459,6 +545,53 @@ public abstract class Expr {
 		
 	}
 	
+	/**
+	 * An <code>&amp;</code> or <code>|</code> expression. The right hand value is only evaluated if the left hand value doesn't decide the result
+	 */
+	public static class Logical extends Expr {
+
+		private Expr left;
+		private Token operator;
+		private Expr right;
+
+		/**
+		 * @param left the left hand value
+		 * @param operator the operator
+		 * @param right the right hand value
+		 */
+		public Logical(Expr left, Token operator, Expr right) {
+			this.left = left;
+			this.operator = operator;
+			this.right = right;
+		}
+
+		/**
+		 * @return the left hand value
+		 */
+		public Expr getLeft() {
+			return left;
+		}
+
+		/**
+		 * @return the operator
+		 */
+		public Token getOperator() {
+			return operator;
+		}
+
+		/**
+		 * @return the right hand value
+		 */
+		public Expr getRight() {
+			return right;
+		}
+
+		@Override
+		public <R> R accept(Visitor<R> visitor) {
+			return visitor.visitLogicalExpr(this);
+		}
+	}
+	
 	/**
 	 * A unary expression
 	 */
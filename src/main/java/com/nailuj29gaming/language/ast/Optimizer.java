@@ -0,0 +1,330 @@
+package com.nailuj29gaming.language.ast;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.nailuj29gaming.language.Fn;
+import com.nailuj29gaming.language.Interpreter;
+import com.nailuj29gaming.language.Interpreter.InterpretError;
+import com.nailuj29gaming.language.TokenType;
+
+/**
+ * Simplifies a parsed program before it is resolved and run.
+ * Expressions whose operands are all literals are folded into a single literal, using the same rules as the {@link Interpreter},
+ * groupings are replaced by what they contain, and branches that can never run are removed:
+ * the unused side of an <code>if</code> with a literal condition, a <code>while</code> whose condition is always false,
+ * and statements after a <code>return</code>, <code>break</code> or <code>continue</code>.
+ * Expressions that would fail are left alone, so the error still happens when the program is run.
+ * Nodes that don't change are reused, and nodes that do are replaced rather than changed
+ */
+public class Optimizer implements Expr.Visitor<Expr>, Stmt.Visitor<Stmt> {
+
+	private static boolean dumping = false;
+
+	private int folded;
+	private int removed;
+
+	/**
+	 * @param dumping whether or not the tree of each module is printed before and after it is optimized
+	 */
+	public static void setDumping(boolean dumping) {
+		Optimizer.dumping = dumping;
+	}
+
+	/**
+	 * @return whether or not the tree of each module is printed before and after it is optimized
+	 */
+	public static boolean isDumping() {
+		return dumping;
+	}
+
+	/**
+	 * Optimizes a list of statements
+	 * @param statements the statements, which are not changed
+	 * @return the optimized statements
+	 */
+	public List<Stmt> optimize(List<Stmt> statements) {
+		List<Stmt> optimized = new ArrayList<>(statements.size());
+		for (int i = 0; i < statements.size(); i++) {
+			Stmt stmt = statements.get(i).accept(this);
+			if (stmt == null) {
+				removed++;
+				continue;
+			}
+			optimized.add(stmt);
+			if (terminates(stmt)) {
+				// Nothing after this can run
+				removed += statements.size() - i - 1;
+				break;
+			}
+		}
+		return optimized;
+	}
+
+	/**
+	 * @param stmt an optimized statement
+	 * @return whether the statement always ends with a <code>return</code>, <code>break</code> or <code>continue</code>
+	 */
+	private static boolean terminates(Stmt stmt) {
+		if (stmt instanceof Stmt.Return || stmt instanceof Stmt.Break || stmt instanceof Stmt.Continue) {
+			return true;
+		}
+		if (stmt instanceof Stmt.Block) {
+			List<Stmt> stmts = ((Stmt.Block) stmt).getStmts();
+			return !stmts.isEmpty() && terminates(stmts.get(stmts.size() - 1));
+		}
+		if (stmt instanceof Stmt.If) {
+			return terminates(((Stmt.If) stmt).getIfBranch()) && terminates(((Stmt.If) stmt).getElseBranch());
+		}
+		return false;
+	}
+
+	/**
+	 * @return how many expressions have been folded into literals
+	 */
+	public int getFolded() {
+		return folded;
+	}
+
+	/**
+	 * @return how many statements have been removed
+	 */
+	public int getRemoved() {
+		return removed;
+	}
+
+	private Expr optimize(Expr expr) {
+		return expr == null ? null : expr.accept(this);
+	}
+
+	private Stmt.Block optimize(Stmt.Block block) {
+		List<Stmt> stmts = optimize(block.getStmts());
+		return same(stmts, block.getStmts()) ? block : new Stmt.Block(stmts);
+	}
+
+	private static <T> boolean same(List<T> optimized, List<T> original) {
+		if (optimized.size() != original.size()) {
+			return false;
+		}
+		for (int i = 0; i < optimized.size(); i++) {
+			if (optimized.get(i) != original.get(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @param expr an optimized expression
+	 * @return whether the expression is a literal that can be folded. Functions are literals, but aren't constants
+	 */
+	private static boolean isConstant(Expr expr) {
+		return expr instanceof Expr.Literal && !(((Expr.Literal) expr).getValue() instanceof Fn);
+	}
+
+	private Expr fold(Object value) {
+		folded++;
+		return new Expr.Literal(value);
+	}
+
+	@Override
+	public Stmt visitBlockStmt(Stmt.Block stmt) {
+		return optimize(stmt);
+	}
+
+	@Override
+	public Stmt visitBreakStmt(Stmt.Break stmt) {
+		return stmt;
+	}
+
+	@Override
+	public Stmt visitContinueStmt(Stmt.Continue stmt) {
+		return stmt;
+	}
+
+	@Override
+	public Stmt visitExpressionStmt(Stmt.Expression stmt) {
+		Expr expression = optimize(stmt.getExpression());
+		if (isConstant(expression)) {
+			// A literal on its own does nothing
+			return null;
+		}
+		return expression == stmt.getExpression() ? stmt : new Stmt.Expression(expression);
+	}
+
+	@Override
+	public Stmt visitForEachStmt(Stmt.ForEach stmt) {
+		Expr iterable = optimize(stmt.getIterable());
+		Stmt.Block body = optimize(stmt.getBody());
+		if (iterable == stmt.getIterable() && body == stmt.getBody()) {
+			return stmt;
+		}
+		return new Stmt.ForEach(stmt.getKeyword(), stmt.getVariable(), iterable, body);
+	}
+
+	@Override
+	public Stmt visitIfStmt(Stmt.If stmt) {
+		Expr condition = optimize(stmt.getCondition());
+		if (isConstant(condition)) {
+			Stmt.Block branch = optimize(Interpreter.isTruthy(((Expr.Literal) condition).getValue())
+					? stmt.getIfBranch() : stmt.getElseBranch());
+			// The branch is still a block, so its variables keep their scope
+			return branch.getStmts().isEmpty() ? null : branch;
+		}
+		Stmt.Block ifBranch = optimize(stmt.getIfBranch());
+		Stmt.Block elseBranch = optimize(stmt.getElseBranch());
+		if (condition == stmt.getCondition() && ifBranch == stmt.getIfBranch() && elseBranch == stmt.getElseBranch()) {
+			return stmt;
+		}
+		return new Stmt.If(condition, ifBranch, elseBranch, stmt.getKeyword());
+	}
+
+	@Override
+	public Stmt visitImportStmt(Stmt.Import stmt) {
+		return stmt;
+	}
+
+	@Override
+	public Stmt visitReturnStmt(Stmt.Return stmt) {
+		Expr expr = optimize(stmt.getExpr());
+		return expr == stmt.getExpr() ? stmt : new Stmt.Return(stmt.getKeyword(), expr);
+	}
+
+	@Override
+	public Stmt visitVarStmt(Stmt.Var stmt) {
+		Expr right = optimize(stmt.getRight());
+		return right == stmt.getRight() ? stmt : new Stmt.Var(stmt.getIdentifier(), right);
+	}
+
+	@Override
+	public Stmt visitWhileStmt(Stmt.While stmt) {
+		Expr condition = optimize(stmt.getCondition());
+		if (isConstant(condition) && !Interpreter.isTruthy(((Expr.Literal) condition).getValue())) {
+			return null;
+		}
+		Stmt.Block body = optimize(stmt.getBody());
+		if (condition == stmt.getCondition() && body == stmt.getBody()) {
+			return stmt;
+		}
+		return new Stmt.While(condition, body, stmt.getKeyword());
+	}
+
+	@Override
+	public Expr visitAssignExpr(Expr.Assign expr) {
+		Expr right = optimize(expr.getRight());
+		return right == expr.getRight() ? expr : new Expr.Assign(expr.getIdentifier(), right);
+	}
+
+	@Override
+	public Expr visitAssignIndexExpr(Expr.AssignIndex expr) {
+		Expr right = optimize(expr.getRight());
+		Expr index = optimize(expr.getIndex());
+		if (right == expr.getRight() && index == expr.getIndex()) {
+			return expr;
+		}
+		return new Expr.AssignIndex(expr.getIdentifier(), right, index);
+	}
+
+	@Override
+	public Expr visitBinaryExpr(Expr.Binary expr) {
+		Expr left = optimize(expr.getLeft());
+		Expr right = optimize(expr.getRight());
+		if (isConstant(left) && isConstant(right)) {
+			try {
+				return fold(Interpreter.binary(expr.getOperator(), ((Expr.Literal) left).getValue(), ((Expr.Literal) right).getValue()));
+			} catch (InterpretError e) {
+				// Left for the interpreter to report
+			}
+		}
+		if (left == expr.getLeft() && right == expr.getRight()) {
+			return expr;
+		}
+		return new Expr.Binary(left, expr.getOperator(), right);
+	}
+
+	@Override
+	public Expr visitCallExpr(Expr.Call expr) {
+		List<Expr> args = new ArrayList<>(expr.getArgs().size());
+		for (Expr arg : expr.getArgs()) {
+			args.add(optimize(arg));
+		}
+		return same(args, expr.getArgs()) ? expr : new Expr.Call(expr.getCallee(), args, expr.getParen());
+	}
+
+	@Override
+	public Expr visitGetVarExpr(Expr.GetVar expr) {
+		return expr;
+	}
+
+	@Override
+	public Expr visitGroupingExpr(Expr.Grouping expr) {
+		return optimize(expr.getExpression());
+	}
+
+	@Override
+	public Expr visitImportExpr(Expr.Import expr) {
+		return expr;
+	}
+
+	@Override
+	public Expr visitIndexExpr(Expr.Index expr) {
+		Expr index = optimize(expr.getIndex());
+		Expr indexee = optimize(expr.getIndexee());
+		if (index == expr.getIndex() && indexee == expr.getIndexee()) {
+			return expr;
+		}
+		return new Expr.Index(index, indexee, expr.getBracket());
+	}
+
+	@Override
+	public Expr visitListExpr(Expr.EList expr) {
+		List<Expr> exprs = new ArrayList<>(expr.getExprs().size());
+		for (Expr item : expr.getExprs()) {
+			exprs.add(optimize(item));
+		}
+		return same(exprs, expr.getExprs()) ? expr : new Expr.EList(exprs);
+	}
+
+	@Override
+	public Expr visitLiteralExpr(Expr.Literal expr) {
+		if (expr.getValue() instanceof Fn) {
+			Fn fn = (Fn) expr.getValue();
+			Stmt.Block body = optimize(fn.getBody());
+			return body == fn.getBody() ? expr : new Expr.Literal(new Fn(fn.getParams(), body, fn.getName()));
+		}
+		return expr;
+	}
+
+	@Override
+	public Expr visitLogicalExpr(Expr.Logical expr) {
+		Expr left = optimize(expr.getLeft());
+		Expr right = optimize(expr.getRight());
+		if (isConstant(left) && ((Expr.Literal) left).getValue() instanceof Boolean) {
+			boolean value = (Boolean) ((Expr.Literal) left).getValue();
+			if (value == (expr.getOperator().getType() == TokenType.OR)) {
+				// The right hand value is never evaluated
+				return fold(value);
+			}
+			if (isConstant(right) && ((Expr.Literal) right).getValue() instanceof Boolean) {
+				return fold(((Expr.Literal) right).getValue());
+			}
+		}
+		if (left == expr.getLeft() && right == expr.getRight()) {
+			return expr;
+		}
+		return new Expr.Logical(left, expr.getOperator(), right);
+	}
+
+	@Override
+	public Expr visitUnaryExpr(Expr.Unary expr) {
+		Expr value = optimize(expr.getValue());
+		if (isConstant(value)) {
+			try {
+				return fold(Interpreter.unary(expr.getOperator(), ((Expr.Literal) value).getValue()));
+			} catch (InterpretError e) {
+				// Left for the interpreter to report
+			}
+		}
+		return value == expr.getValue() ? expr : new Expr.Unary(expr.getOperator(), value);
+	}
+}
@@ -38,6 +38,12 @@ public abstract class Stmt {
 		 * @return the result of the statement
 		 */
 		R visitExpressionStmt(Expression stmt);
+		/**
+		 * Visit a for-each loop and its children
+		 * @param stmt the statement
+		 * @return the result of the statement
+		 */
+		R visitForEachStmt(ForEach stmt);
 		/**
 		 * Visit an if statement and its children
 		 * @param stmt the statement
@@ -77,6 +83,7 @@ public abstract class Stmt {
 	public static class Block extends Stmt {
 		
 		private List<Stmt> stmts;
+		private int slots = -1;
 		
 		/**
 		 * @param stmts the statements contained in the block
@@ -92,6 +99,22 @@ public abstract class Stmt {
 			return stmts;
 		}
 
+		/**
+		 * @return the size of the frame this block needs, or -1 if its variables live in an enclosing frame
+		 */
+		public int getSlots() {
+			return slots;
+		}
+
+		/**
+		 * Only set on blocks at the top level of a script, since blocks in functions use the function's frame
+		 * @param slots the size of the frame this block needs
+		 * @see com.nailuj29gaming.language.Resolver
+		 */
+		public void setSlots(int slots) {
+			this.slots = slots;
+		}
+
 		@Override
 		public <R> R accept(Visitor<R> visitor) {
 			return visitor.visitBlockStmt(this);
@@ -195,6 +218,96 @@ public abstract class Stmt {
 		
 	}
 	
+	/**
+	 * A loop over the items of a list
+	 */
+	public static class ForEach extends Stmt {
+
+		private Token keyword;
+		private Stmt.Var variable;
+		private Expr iterable;
+		private Stmt.Block body;
+		private int iteratorSlot = -1;
+		private int slots = -1;
+
+		/**
+		 * @param keyword the for keyword
+		 * @param variable the variable each item is stored in, which has no value of its own
+		 * @param iterable the list to loop over
+		 * @param body the body of the loop
+		 */
+		public ForEach(Token keyword, Var variable, Expr iterable, Block body) {
+			this.keyword = keyword;
+			this.variable = variable;
+			this.iterable = iterable;
+			this.body = body;
+		}
+
+		/**
+		 * @return the keyword
+		 */
+		public Token getKeyword() {
+			return keyword;
+		}
+
+		/**
+		 * @return the variable
+		 */
+		public Stmt.Var getVariable() {
+			return variable;
+		}
+
+		/**
+		 * @return the iterable
+		 */
+		public Expr getIterable() {
+			return iterable;
+		}
+
+		/**
+		 * @return the body
+		 */
+		public Stmt.Block getBody() {
+			return body;
+		}
+
+		/**
+		 * @return the slot the loop keeps its iterator in
+		 */
+		public int getIteratorSlot() {
+			return iteratorSlot;
+		}
+
+		/**
+		 * @param iteratorSlot the slot the loop keeps its iterator in
+		 * @see com.nailuj29gaming.language.Resolver
+		 */
+		public void setIteratorSlot(int iteratorSlot) {
+			this.iteratorSlot = iteratorSlot;
+		}
+
+		/**
+		 * @return the size of the frame this loop needs, or -1 if its variables live in an enclosing frame
+		 */
+		public int getSlots() {
+			return slots;
+		}
+
+		/**
+		 * Only set on loops at the top level of a script, like {@link Block#setSlots(int)}
+		 * @param slots the size of the frame this loop needs
+		 * @see com.nailuj29gaming.language.Resolver
+		 */
+		public void setSlots(int slots) {
+			this.slots = slots;
+		}
+
+		@Override
+		public <R> R accept(Visitor<R> visitor) {
+			return visitor.visitForEachStmt(this);
+		}
+	}
+
 	/**
 	 * An if statement and its optional else branch
 	 */
@@ -332,6 +445,8 @@ public abstract class Stmt {
 	public static class Var extends Stmt {
 		private Token identifier;
 		private Expr right;
+		private int slot = -1;
+		private boolean captured;
 
 
 		/**
@@ -361,6 +476,35 @@ public abstract class Stmt {
 			return right;
 		}
 
+		/**
+		 * @return the slot the variable is stored in, or -1 if it is a global
+		 */
+		public int getSlot() {
+			return slot;
+		}
+
+		/**
+		 * @param slot the slot the variable is stored in
+		 * @see com.nailuj29gaming.language.Resolver
+		 */
+		public void setSlot(int slot) {
+			this.slot = slot;
+		}
+
+		/**
+		 * @return whether a closure captures the variable, in which case it is stored in a {@link com.nailuj29gaming.language.Cell}
+		 */
+		public boolean isCaptured() {
+			return captured;
+		}
+
+		/**
+		 * @param captured whether a closure captures the variable
+		 * @see com.nailuj29gaming.language.Resolver
+		 */
+		public void setCaptured(boolean captured) {
+			this.captured = captured;
+		}
 
 
 		@Override
@@ -371,7 +515,7 @@ public abstract class Stmt {
 	}
 	
 	/**
-	 * A while loop. All loops are syntactic sugar for this loop
+	 * A while loop. For loops other than for-each loops are syntactic sugar for this loop
 	 */
 	public static class While extends Stmt {
 
@@ -0,0 +1,216 @@
+package com.nailuj29gaming.language.jit;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes a class file, just big enough for the classes the {@link JitCompiler} generates.
+ * Classes are written as version 49, which the JVM verifies by type inference, so no stack map frames are needed
+ */
+class ClassWriter {
+
+	private static final int VERSION = 49;
+
+	private static final int CONSTANT_UTF8 = 1;
+	private static final int CONSTANT_INTEGER = 3;
+	private static final int CONSTANT_CLASS = 7;
+	private static final int CONSTANT_STRING = 8;
+	private static final int CONSTANT_FIELDREF = 9;
+	private static final int CONSTANT_METHODREF = 10;
+	private static final int CONSTANT_INTERFACE_METHODREF = 11;
+	private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+	static final int ACC_PUBLIC = 0x0001;
+	static final int ACC_FINAL = 0x0010;
+	static final int ACC_SUPER = 0x0020;
+
+	private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+	private final DataOutputStream pool = new DataOutputStream(poolBytes);
+	private final Map<String, Integer> poolIndices = new HashMap<>();
+	private int poolCount = 1;
+
+	private final int name;
+	private final int superName;
+	private final List<Code> methods = new ArrayList<>();
+
+	/**
+	 * @param name the internal name of the class, such as <code>a/b/C</code>
+	 * @param superName the internal name of its superclass
+	 */
+	ClassWriter(String name, String superName) {
+		this.name = classRef(name);
+		this.superName = classRef(superName);
+	}
+
+	/**
+	 * Adds a method to the class
+	 * @param access the access flags
+	 * @param name the name of the method
+	 * @param descriptor the descriptor of the method
+	 * @return the code of the method, to be filled in
+	 */
+	Code method(int access, String name, String descriptor) {
+		Code code = new Code(this, access, utf8(name), utf8(descriptor));
+		methods.add(code);
+		return code;
+	}
+
+	int utf8(String value) {
+		String key = "U" + value;
+		Integer index = poolIndices.get(key);
+		if (index != null) {
+			return index;
+		}
+		writeByte(CONSTANT_UTF8);
+		try {
+			pool.writeUTF(value);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return add(key);
+	}
+
+	int integer(int value) {
+		String key = "I" + value;
+		Integer index = poolIndices.get(key);
+		if (index != null) {
+			return index;
+		}
+		writeByte(CONSTANT_INTEGER);
+		writeInt(value);
+		return add(key);
+	}
+
+	int classRef(String internalName) {
+		String key = "C" + internalName;
+		Integer index = poolIndices.get(key);
+		if (index != null) {
+			return index;
+		}
+		int utf8 = utf8(internalName);
+		writeByte(CONSTANT_CLASS);
+		writeShort(utf8);
+		return add(key);
+	}
+
+	int string(String value) {
+		String key = "S" + value;
+		Integer index = poolIndices.get(key);
+		if (index != null) {
+			return index;
+		}
+		int utf8 = utf8(value);
+		writeByte(CONSTANT_STRING);
+		writeShort(utf8);
+		return add(key);
+	}
+
+	int fieldRef(String owner, String name, String descriptor) {
+		return memberRef(CONSTANT_FIELDREF, owner, name, descriptor);
+	}
+
+	int methodRef(String owner, String name, String descriptor) {
+		return memberRef(CONSTANT_METHODREF, owner, name, descriptor);
+	}
+
+	int interfaceMethodRef(String owner, String name, String descriptor) {
+		return memberRef(CONSTANT_INTERFACE_METHODREF, owner, name, descriptor);
+	}
+
+	private int memberRef(int tag, String owner, String name, String descriptor) {
+		String key = tag + owner + "." + name + descriptor;
+		Integer index = poolIndices.get(key);
+		if (index != null) {
+			return index;
+		}
+		int ownerIndex = classRef(owner);
+		int nameAndType = nameAndType(name, descriptor);
+		writeByte(tag);
+		writeShort(ownerIndex);
+		writeShort(nameAndType);
+		return add(key);
+	}
+
+	private int nameAndType(String name, String descriptor) {
+		String key = "N" + name + descriptor;
+		Integer index = poolIndices.get(key);
+		if (index != null) {
+			return index;
+		}
+		int nameIndex = utf8(name);
+		int descriptorIndex = utf8(descriptor);
+		writeByte(CONSTANT_NAME_AND_TYPE);
+		writeShort(nameIndex);
+		writeShort(descriptorIndex);
+		return add(key);
+	}
+
+	private void writeByte(int value) {
+		try {
+			pool.writeByte(value);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private void writeInt(int value) {
+		try {
+			pool.writeInt(value);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private void writeShort(int value) {
+		try {
+			pool.writeShort(value);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private int add(String key) {
+		int index = poolCount++;
+		if (poolCount > 0xFFFF) {
+			throw new JitCompiler.Unsupported("Too many constants");
+		}
+		poolIndices.put(key, index);
+		return index;
+	}
+
+	/**
+	 * @return the class file
+	 */
+	byte[] toByteArray() {
+		// The attribute name has to be in the pool before the pool is written
+		int codeAttribute = utf8("Code");
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			out.writeInt(0xCAFEBABE);
+			out.writeShort(0);
+			out.writeShort(VERSION);
+			out.writeShort(poolCount);
+			pool.flush();
+			poolBytes.writeTo(out);
+			out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+			out.writeShort(name);
+			out.writeShort(superName);
+			out.writeShort(0); // interfaces
+			out.writeShort(0); // fields
+			out.writeShort(methods.size());
+			for (Code method : methods) {
+				method.write(out, codeAttribute);
+			}
+			out.writeShort(0); // attributes
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return bytes.toByteArray();
+	}
+}
@@ -0,0 +1,279 @@
+package com.nailuj29gaming.language.jit;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The bytecode of a method being written by a {@link ClassWriter}.
+ * Keeps track of how deep the operand stack gets, which the class file has to declare
+ */
+class Code {
+
+	static final int ACONST_NULL = 0x01;
+	static final int ICONST_0 = 0x03;
+	static final int BIPUSH = 0x10;
+	static final int SIPUSH = 0x11;
+	static final int LDC_W = 0x13;
+	static final int ALOAD = 0x19;
+	static final int AALOAD = 0x32;
+	static final int ASTORE = 0x3a;
+	static final int AASTORE = 0x53;
+	static final int POP = 0x57;
+	static final int DUP = 0x59;
+	static final int SWAP = 0x5f;
+	static final int IFEQ = 0x99;
+	static final int IFNE = 0x9a;
+	static final int IF_ACMPNE = 0xa6;
+	static final int GOTO = 0xa7;
+	static final int ARETURN = 0xb0;
+	static final int RETURN = 0xb1;
+	static final int GETSTATIC = 0xb2;
+	static final int GETFIELD = 0xb4;
+	static final int INVOKEVIRTUAL = 0xb6;
+	static final int INVOKESPECIAL = 0xb7;
+	static final int INVOKESTATIC = 0xb8;
+	static final int INVOKEINTERFACE = 0xb9;
+	static final int NEW = 0xbb;
+	static final int ANEWARRAY = 0xbd;
+	static final int CHECKCAST = 0xc0;
+
+	/**
+	 * A position in the code, which jumps can target before it is known
+	 */
+	static class Label {
+		int position = -1;
+		final List<Integer> jumps = new ArrayList<>();
+	}
+
+	private final ClassWriter owner;
+	private final int access;
+	private final int name;
+	private final int descriptor;
+	private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	private final List<Label> labels = new ArrayList<>();
+	private int stack;
+	private int maxStack;
+	private int maxLocals;
+
+	Code(ClassWriter owner, int access, int name, int descriptor) {
+		this.owner = owner;
+		this.access = access;
+		this.name = name;
+		this.descriptor = descriptor;
+	}
+
+	/**
+	 * @param maxLocals the number of local variable slots the method uses, including its parameters
+	 */
+	void setMaxLocals(int maxLocals) {
+		this.maxLocals = maxLocals;
+	}
+
+	/**
+	 * Writes an instruction without operands
+	 * @param op the instruction
+	 * @param effect how much it grows the operand stack
+	 */
+	void op(int op, int effect) {
+		bytes.write(op);
+		grow(effect);
+	}
+
+	/**
+	 * Writes an instruction with a one-byte operand
+	 */
+	void op1(int op, int operand, int effect) {
+		bytes.write(op);
+		bytes.write(operand);
+		grow(effect);
+	}
+
+	/**
+	 * Writes an instruction with a two-byte operand
+	 */
+	void op2(int op, int operand, int effect) {
+		bytes.write(op);
+		bytes.write(operand >> 8);
+		bytes.write(operand);
+		grow(effect);
+	}
+
+	void aload(int local) {
+		local(ALOAD, local);
+		grow(1);
+	}
+
+	void astore(int local) {
+		local(ASTORE, local);
+		grow(-1);
+	}
+
+	private void local(int op, int local) {
+		if (local > 0xFF) {
+			bytes.write(0xc4); // wide
+			bytes.write(op);
+			bytes.write(local >> 8);
+			bytes.write(local);
+		} else {
+			bytes.write(op);
+			bytes.write(local);
+		}
+	}
+
+	void pushInt(int value) {
+		if (value >= 0 && value <= 5) {
+			op(ICONST_0 + value, 1);
+		} else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+			op1(BIPUSH, value, 1);
+		} else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+			op2(SIPUSH, value, 1);
+		} else {
+			op2(LDC_W, owner.integer(value), 1);
+		}
+	}
+
+	void pushString(String value) {
+		op2(LDC_W, owner.string(value), 1);
+	}
+
+	void getStatic(String owner, String name, String descriptor) {
+		op2(GETSTATIC, this.owner.fieldRef(owner, name, descriptor), 1);
+	}
+
+	void getField(String owner, String name, String descriptor) {
+		op2(GETFIELD, this.owner.fieldRef(owner, name, descriptor), 0);
+	}
+
+	void checkcast(String type) {
+		op2(CHECKCAST, owner.classRef(type), 0);
+	}
+
+	void newObject(String type) {
+		op2(NEW, owner.classRef(type), 1);
+	}
+
+	void anewarray(String type) {
+		op2(ANEWARRAY, owner.classRef(type), 0);
+	}
+
+	void invokeStatic(String owner, String name, String descriptor) {
+		op2(INVOKESTATIC, this.owner.methodRef(owner, name, descriptor), effect(descriptor, false));
+	}
+
+	void invokeVirtual(String owner, String name, String descriptor) {
+		op2(INVOKEVIRTUAL, this.owner.methodRef(owner, name, descriptor), effect(descriptor, true));
+	}
+
+	void invokeSpecial(String owner, String name, String descriptor) {
+		op2(INVOKESPECIAL, this.owner.methodRef(owner, name, descriptor), effect(descriptor, true));
+	}
+
+	void invokeInterface(String owner, String name, String descriptor) {
+		int arguments = arguments(descriptor);
+		op2(INVOKEINTERFACE, this.owner.interfaceMethodRef(owner, name, descriptor), effect(descriptor, true));
+		bytes.write(arguments + 1);
+		bytes.write(0);
+	}
+
+	/**
+	 * Works out how a call changes the operand stack. Only reference, int and boolean types are used
+	 * @param descriptor the descriptor of the method
+	 * @param instance whether the call pops a receiver
+	 * @return the change in stack depth
+	 */
+	private static int effect(String descriptor, boolean instance) {
+		int effect = -arguments(descriptor) - (instance ? 1 : 0);
+		if (descriptor.charAt(descriptor.length() - 1) != 'V') {
+			effect++;
+		}
+		return effect;
+	}
+
+	private static int arguments(String descriptor) {
+		int count = 0;
+		int i = 1;
+		while (descriptor.charAt(i) != ')') {
+			char c = descriptor.charAt(i);
+			while (c == '[') {
+				c = descriptor.charAt(++i);
+			}
+			if (c == 'L') {
+				i = descriptor.indexOf(';', i);
+			}
+			i++;
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Writes a jump to a label
+	 * @param op the jump instruction
+	 * @param label where to jump to
+	 */
+	void jump(int op, Label label) {
+		label.jumps.add(bytes.size());
+		op2(op, 0, op == GOTO ? 0 : op == IF_ACMPNE ? -2 : -1);
+		if (!labels.contains(label)) {
+			labels.add(label);
+		}
+	}
+
+	/**
+	 * Places a label at the next instruction
+	 * @param label the label
+	 */
+	void mark(Label label) {
+		label.position = bytes.size();
+		if (!labels.contains(label)) {
+			labels.add(label);
+		}
+	}
+
+	private void grow(int effect) {
+		stack += effect;
+		maxStack = Math.max(maxStack, stack);
+	}
+
+	/**
+	 * @return the current depth of the operand stack
+	 */
+	int stackDepth() {
+		return stack;
+	}
+
+	/**
+	 * Writes the method, with its jumps filled in
+	 */
+	void write(DataOutputStream out, int codeAttribute) throws IOException {
+		byte[] code = bytes.toByteArray();
+		if (code.length > 0xFFFF) {
+			throw new JitCompiler.Unsupported("Method too large");
+		}
+		for (Label label : labels) {
+			for (int jump : label.jumps) {
+				int offset = label.position - jump;
+				if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE) {
+					throw new JitCompiler.Unsupported("Jump too far");
+				}
+				code[jump + 1] = (byte) (offset >> 8);
+				code[jump + 2] = (byte) offset;
+			}
+		}
+		out.writeShort(access);
+		out.writeShort(name);
+		out.writeShort(descriptor);
+		out.writeShort(1);
+		out.writeShort(codeAttribute);
+		out.writeInt(12 + code.length);
+		out.writeShort(maxStack);
+		out.writeShort(maxLocals);
+		out.writeInt(code.length);
+		out.write(code);
+		out.writeShort(0); // exception table
+		out.writeShort(0); // attributes
+	}
+}
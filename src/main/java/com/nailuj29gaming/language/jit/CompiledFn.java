@@ -0,0 +1,49 @@
+package com.nailuj29gaming.language.jit;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.nailuj29gaming.language.Fn;
+import com.nailuj29gaming.language.Interpreter;
+
+/**
+ * The body of a {@link Fn}, compiled to JVM bytecode by the {@link JitCompiler}.
+ * The generated classes extend this one
+ */
+public abstract class CompiledFn {
+
+	/**
+	 * The tokens and literal values the generated code refers to
+	 */
+	protected final Object[] constants;
+
+	/**
+	 * @param constants the tokens and literal values the generated code refers to
+	 */
+	protected CompiledFn(Object[] constants) {
+		this.constants = constants;
+	}
+
+	/**
+	 * Runs the function
+	 * @param interpreter the interpreter the function was called from
+	 * @param fn the closure being called, which holds its captured variables
+	 * @param args the arguments, exactly as many as the function has parameters
+	 * @return the value returned by the function
+	 */
+	public abstract Object invoke(Interpreter interpreter, Fn fn, List<Object> args);
+
+	/**
+	 * Runs a function that takes at most three arguments, without putting them in a list.
+	 * The generated classes of such functions override this, and the arguments the function doesn't take are <code>null</code>
+	 * @param interpreter the interpreter the function was called from
+	 * @param fn the closure being called, which holds its captured variables
+	 * @param a the first argument
+	 * @param b the second argument
+	 * @param c the third argument
+	 * @return the value returned by the function
+	 */
+	public Object invoke(Interpreter interpreter, Fn fn, Object a, Object b, Object c) {
+		return invoke(interpreter, fn, Arrays.asList(a, b, c).subList(0, fn.getArity()));
+	}
+}
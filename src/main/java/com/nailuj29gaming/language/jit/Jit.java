@@ -0,0 +1,68 @@
+package com.nailuj29gaming.language.jit;
+
+import com.nailuj29gaming.language.Fn;
+import com.nailuj29gaming.language.Main;
+
+/**
+ * Decides when functions are compiled, and compiles them.
+ * A {@link Fn} counts its calls, and once it has been called {@link #getThreshold()} times its body is compiled
+ * to JVM bytecode by the {@link JitCompiler}, which the JVM can then optimize like any other code
+ */
+public final class Jit {
+
+	/**
+	 * The threshold used by <code>--jit</code>
+	 */
+	public static final int DEFAULT_THRESHOLD = 1000;
+
+	private static volatile int threshold = 0;
+
+	private Jit() {
+	}
+
+	/**
+	 * @return how many calls a function needs before it is compiled, or 0 if functions are never compiled
+	 */
+	public static int getThreshold() {
+		return threshold;
+	}
+
+	/**
+	 * @param threshold how many calls a function needs before it is compiled, or 0 to never compile functions
+	 */
+	public static void setThreshold(int threshold) {
+		Jit.threshold = threshold;
+	}
+
+	/**
+	 * @return whether or not functions are compiled
+	 */
+	public static boolean isEnabled() {
+		return threshold > 0;
+	}
+
+	/**
+	 * Compiles a function
+	 * @param fn the function, as it was parsed
+	 * @return the compiled function, or <code>null</code> if it can't be compiled and has to stay interpreted
+	 */
+	public static CompiledFn compile(Fn fn) {
+		JitCompiler compiler = new JitCompiler();
+		try {
+			byte[] bytes = compiler.compile(fn);
+			Class<?> compiled = new JitClassLoader().define(compiler.getClassName(), bytes);
+			return (CompiledFn) compiled.getConstructor(Object[].class).newInstance((Object) compiler.getConstants());
+		} catch (JitCompiler.Unsupported e) {
+			if (Main.DEBUG) {
+				System.out.printf("Not compiling %s: %s%n", fn, e.getMessage());
+			}
+			return null;
+		} catch (LinkageError | ReflectiveOperationException e) {
+			// A bug in the compiler shouldn't stop the script, since the function can still be interpreted
+			if (Main.DEBUG) {
+				System.out.printf("Failed to compile %s: %s%n", fn, e);
+			}
+			return null;
+		}
+	}
+}
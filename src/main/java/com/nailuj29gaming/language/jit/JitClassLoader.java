@@ -0,0 +1,21 @@
+package com.nailuj29gaming.language.jit;
+
+/**
+ * Loads the classes generated by the {@link JitCompiler}.
+ * Each compiled function gets its own loader, so the class can be unloaded once the function is gone
+ */
+class JitClassLoader extends ClassLoader {
+
+	JitClassLoader() {
+		super(JitClassLoader.class.getClassLoader());
+	}
+
+	/**
+	 * @param name the binary name of the class
+	 * @param bytes the class file
+	 * @return the loaded class
+	 */
+	Class<?> define(String name, byte[] bytes) {
+		return defineClass(name, bytes, 0, bytes.length);
+	}
+}
@@ -0,0 +1,660 @@
+package com.nailuj29gaming.language.jit;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.nailuj29gaming.language.Fn;
+import com.nailuj29gaming.language.Token;
+import com.nailuj29gaming.language.TokenType;
+import com.nailuj29gaming.language.ast.Expr;
+import com.nailuj29gaming.language.ast.Stmt;
+
+/**
+ * Compiles the body of a {@link Fn} to a class extending {@link CompiledFn}.
+ * The slots the {@link com.nailuj29gaming.language.Resolver} gave the function's variables become JVM locals,
+ * and everything else calls the same helpers the {@link com.nailuj29gaming.language.Interpreter} uses, through {@link JitRuntime}.
+ * Function declarations and imports aren't compiled, so functions containing them stay interpreted
+ */
+public class JitCompiler implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+
+	/**
+	 * Thrown when a function uses something the compiler can't handle
+	 */
+	static class Unsupported extends RuntimeException {
+
+		private static final long serialVersionUID = 5064394637361960251L;
+
+		Unsupported(String message) {
+			super(message, null, false, false);
+		}
+	}
+
+	private static final String PACKAGE = "com/nailuj29gaming/language/";
+	private static final String OBJECT = "java/lang/Object";
+	private static final String BOOLEAN = "java/lang/Boolean";
+	private static final String LIST = "java/util/List";
+	private static final String ITERATOR = "java/util/Iterator";
+	private static final String TOKEN = PACKAGE + "Token";
+	private static final String CELL = PACKAGE + "Cell";
+	private static final String PACKED_LIST = PACKAGE + "PackedList";
+	private static final String FN = PACKAGE + "Fn";
+	private static final String ENVIRONMENT = PACKAGE + "Environment";
+	private static final String SYMBOL = PACKAGE + "Symbol";
+	private static final String CALL_SITE = PACKAGE + "CallSite";
+	private static final String INTERPRETER = PACKAGE + "Interpreter";
+	private static final String COMPILED_FN = PACKAGE + "jit/CompiledFn";
+	private static final String RUNTIME = PACKAGE + "jit/JitRuntime";
+
+	private static final String BINARY = "(Ljava/lang/Object;Ljava/lang/Object;L" + TOKEN + ";)Ljava/lang/Object;";
+
+	private static final int THIS = 0;
+	private static final int INTERPRETER_LOCAL = 1;
+	private static final int FN_LOCAL = 2;
+	/**
+	 * The argument list, or the first of the arguments passed one by one
+	 */
+	private static final int ARGS = 3;
+	private static final int UPVALUES = 6;
+	private static final int SCOPE = 7;
+	private static final int FRAME = 8;
+
+	/**
+	 * Functions with up to this many parameters take their arguments one by one, without a list
+	 */
+	private static final int FIXED_ARITY = 3;
+
+	private static final String INVOKE_LIST = "(L" + INTERPRETER + ";L" + FN + ";Ljava/util/List;)Ljava/lang/Object;";
+	private static final String INVOKE_FIXED = "(L" + INTERPRETER + ";L" + FN
+			+ ";Ljava/lang/Object;Ljava/lang/Object;Ljava/lang/Object;)Ljava/lang/Object;";
+
+	private static final AtomicInteger count = new AtomicInteger();
+
+	private final List<Object> constants = new ArrayList<>();
+	private final Map<Object, Integer> constantIndices = new IdentityHashMap<>();
+	private final Deque<Code.Label[]> loops = new ArrayDeque<>();
+	private Code code;
+	private String className;
+
+	/**
+	 * The function being compiled
+	 */
+	private Fn fn;
+
+	/**
+	 * Where a tail call to the function itself starts it again, once the new arguments are in the frame
+	 */
+	private Code.Label restart;
+
+	/**
+	 * Compiles a function
+	 * @param fn the function
+	 * @return the class file
+	 * @throws Unsupported if the function can't be compiled
+	 */
+	byte[] compile(Fn fn) {
+		className = String.format("%sjit/JitFn$%d$%s", PACKAGE, count.incrementAndGet(), fn.getName().getLexeme());
+		ClassWriter writer = new ClassWriter(className, COMPILED_FN);
+
+		Code init = writer.method(ClassWriter.ACC_PUBLIC, "<init>", "([Ljava/lang/Object;)V");
+		init.setMaxLocals(2);
+		init.aload(0);
+		init.aload(1);
+		init.invokeSpecial(COMPILED_FN, "<init>", "([Ljava/lang/Object;)V");
+		init.op(Code.RETURN, 0);
+
+		boolean fixed = fn.getArity() <= FIXED_ARITY;
+		if (fixed) {
+			// The list form unpacks the list and calls the fixed form, which holds the body
+			Code bridge = writer.method(ClassWriter.ACC_PUBLIC, "invoke", INVOKE_LIST);
+			bridge.setMaxLocals(ARGS + 1);
+			bridge.aload(THIS);
+			bridge.aload(INTERPRETER_LOCAL);
+			bridge.aload(FN_LOCAL);
+			for (int i = 0; i < FIXED_ARITY; i++) {
+				if (i < fn.getArity()) {
+					bridge.aload(ARGS);
+					bridge.pushInt(i);
+					bridge.invokeInterface(LIST, "get", "(I)Ljava/lang/Object;");
+				} else {
+					bridge.op(Code.ACONST_NULL, 1);
+				}
+			}
+			bridge.invokeVirtual(className, "invoke", INVOKE_FIXED);
+			bridge.op(Code.ARETURN, -1);
+		}
+
+		this.fn = fn;
+		code = writer.method(ClassWriter.ACC_PUBLIC, "invoke", fixed ? INVOKE_FIXED : INVOKE_LIST);
+		// A tail call keeps the callee and its arguments in locals after the frame
+		code.setMaxLocals(FRAME + fn.getFrameSize() + 1 + fn.getArity());
+		prologue(fn, fixed);
+		fn.getBody().accept(this);
+		code.op(Code.ACONST_NULL, 1);
+		code.op(Code.ARETURN, -1);
+		return writer.toByteArray();
+	}
+
+	/**
+	 * @return the binary name of the last class compiled
+	 */
+	String getClassName() {
+		return className.replace('/', '.');
+	}
+
+	/**
+	 * @return the tokens and literal values the last class compiled refers to
+	 */
+	Object[] getConstants() {
+		return constants.toArray();
+	}
+
+	/**
+	 * Sets up the frame the same way {@link Fn#call} does
+	 * @param fixed whether the arguments are passed one by one rather than in a list
+	 */
+	private void prologue(Fn fn, boolean fixed) {
+		code.aload(FN_LOCAL);
+		code.invokeVirtual(FN, "getUpvalues", "()[L" + CELL + ";");
+		code.astore(UPVALUES);
+		code.aload(FN_LOCAL);
+		code.invokeVirtual(FN, "getEnclosing", "()L" + ENVIRONMENT + ";");
+		code.astore(SCOPE);
+		// Every slot needs a value before the verifier lets it be read
+		for (int slot = 0; slot < fn.getFrameSize(); slot++) {
+			code.op(Code.ACONST_NULL, 1);
+			code.astore(FRAME + slot);
+		}
+		for (int i = 0; i < fn.getArity(); i++) {
+			if (fixed) {
+				code.aload(ARGS + i);
+			} else {
+				code.aload(ARGS);
+				code.pushInt(i);
+				code.invokeInterface(LIST, "get", "(I)Ljava/lang/Object;");
+			}
+			code.astore(FRAME + i);
+		}
+		restart = new Code.Label();
+		code.mark(restart);
+		code.aload(FN_LOCAL);
+		code.astore(FRAME + fn.getArity());
+		for (int slot : fn.getCellSlots()) {
+			code.newObject(CELL);
+			code.op(Code.DUP, 1);
+			code.aload(FRAME + slot);
+			code.invokeSpecial(CELL, "<init>", "(Ljava/lang/Object;)V");
+			code.astore(FRAME + slot);
+		}
+	}
+
+	/**
+	 * Pushes a value from {@link CompiledFn#constants}
+	 * @param value the value
+	 * @param type the internal name of its class
+	 */
+	private void constant(Object value, String type) {
+		Integer index = constantIndices.get(value);
+		if (index == null) {
+			index = constants.size();
+			constants.add(value);
+			constantIndices.put(value, index);
+		}
+		code.aload(THIS);
+		code.getField(COMPILED_FN, "constants", "[Ljava/lang/Object;");
+		code.pushInt(index);
+		code.op(Code.AALOAD, -1);
+		code.checkcast(type);
+	}
+
+	/**
+	 * Pushes the value of a variable
+	 * @param identifier the name of the variable
+	 * @param storage how the resolver found it is stored, or <code>null</code>
+	 * @param slot the slot found by the resolver, or -1
+	 */
+	private void loadVariable(Token identifier, Expr.Storage storage, int slot) {
+		if (storage == Expr.Storage.LOCAL) {
+			code.aload(FRAME + slot);
+		} else if (storage == Expr.Storage.CELL) {
+			code.aload(FRAME + slot);
+			code.checkcast(CELL);
+			code.invokeVirtual(CELL, "get", "()Ljava/lang/Object;");
+		} else if (storage == Expr.Storage.UPVALUE) {
+			code.aload(UPVALUES);
+			code.pushInt(slot);
+			code.op(Code.AALOAD, -1);
+			code.invokeVirtual(CELL, "get", "()Ljava/lang/Object;");
+		} else {
+			code.aload(SCOPE);
+			constant(identifier.getSymbol(), SYMBOL);
+			constant(identifier, TOKEN);
+			code.invokeVirtual(ENVIRONMENT, "get", "(L" + SYMBOL + ";L" + TOKEN + ";)Ljava/lang/Object;");
+		}
+	}
+
+	/**
+	 * Stores the value on top of the stack in a variable, popping it
+	 * @param expr the assignment
+	 */
+	private void storeVariable(Expr.Assign expr) {
+		Expr.Storage storage = expr.getStorage();
+		if (storage == Expr.Storage.LOCAL) {
+			code.astore(FRAME + expr.getSlot());
+		} else if (storage == Expr.Storage.CELL) {
+			code.aload(FRAME + expr.getSlot());
+			code.checkcast(CELL);
+			code.op(Code.SWAP, 0);
+			code.invokeVirtual(CELL, "set", "(Ljava/lang/Object;)V");
+		} else if (storage == Expr.Storage.UPVALUE) {
+			code.aload(UPVALUES);
+			code.pushInt(expr.getSlot());
+			code.op(Code.AALOAD, -1);
+			code.op(Code.SWAP, 0);
+			code.invokeVirtual(CELL, "set", "(Ljava/lang/Object;)V");
+		} else {
+			code.aload(SCOPE);
+			code.op(Code.SWAP, 0);
+			constant(expr.getIdentifier().getSymbol(), SYMBOL);
+			code.op(Code.SWAP, 0);
+			constant(expr.getIdentifier(), TOKEN);
+			code.invokeVirtual(ENVIRONMENT, "set", "(L" + SYMBOL + ";Ljava/lang/Object;L" + TOKEN + ";)V");
+		}
+	}
+
+	@Override
+	public Void visitAssignExpr(Expr.Assign expr) {
+		expr.getRight().accept(this);
+		storeVariable(expr);
+		code.op(Code.ACONST_NULL, 1);
+		return null;
+	}
+
+	@Override
+	public Void visitAssignIndexExpr(Expr.AssignIndex expr) {
+		loadVariable(expr.getIdentifier(), expr.getStorage(), expr.getSlot());
+		constant(expr.getIdentifier(), TOKEN);
+		code.invokeStatic(RUNTIME, "indexable", "(Ljava/lang/Object;L" + TOKEN + ";)Ljava/lang/Object;");
+		// One copy is the result, the other is stored back, as the interpreter does
+		code.op(Code.DUP, 1);
+		code.op(Code.DUP, 1);
+		expr.getIndex().accept(this);
+		expr.getRight().accept(this);
+		constant(expr.getIdentifier(), TOKEN);
+		code.invokeStatic(INTERPRETER, "setIndex",
+				"(Ljava/lang/Object;Ljava/lang/Object;Ljava/lang/Object;L" + TOKEN + ";)V");
+		storeVariable(expr);
+		return null;
+	}
+
+	@Override
+	public Void visitBinaryExpr(Expr.Binary expr) {
+		expr.getLeft().accept(this);
+		expr.getRight().accept(this);
+		constant(expr.getOperator(), TOKEN);
+		String helper;
+		switch (expr.getOperator().getType()) {
+		case PLUS:
+			helper = "add";
+			break;
+		case MINUS:
+			helper = "subtract";
+			break;
+		case STAR:
+			helper = "multiply";
+			break;
+		case SLASH:
+			helper = "divide";
+			break;
+		case LESS:
+			helper = "less";
+			break;
+		case LESS_EQUAL:
+			helper = "lessEqual";
+			break;
+		case GREATER:
+			helper = "greater";
+			break;
+		case GREATER_EQUAL:
+			helper = "greaterEqual";
+			break;
+		default:
+			helper = "binary";
+			break;
+		}
+		code.invokeStatic(RUNTIME, helper, BINARY);
+		return null;
+	}
+
+	@Override
+	public Void visitCallExpr(Expr.Call expr) {
+		expr.getCallee().accept(this);
+		call(expr);
+		return null;
+	}
+
+	/**
+	 * Calls a function that is already on the stack
+	 */
+	private void call(Expr.Call expr) {
+		List<Expr> args = expr.getArgs();
+		String tail = "L" + INTERPRETER + ";L" + CALL_SITE + ";L" + TOKEN + ";)Ljava/lang/Object;";
+		if (args.size() <= FIXED_ARITY) {
+			// Small calls pass their arguments one by one, so they don't need an array
+			StringBuilder descriptor = new StringBuilder("(Ljava/lang/Object;");
+			for (Expr arg : args) {
+				arg.accept(this);
+				descriptor.append("Ljava/lang/Object;");
+			}
+			code.aload(INTERPRETER_LOCAL);
+			constant(expr.getSite(), CALL_SITE);
+			constant(expr.getParen(), TOKEN);
+			code.invokeStatic(RUNTIME, "call" + args.size(), descriptor.append(tail).toString());
+			return;
+		}
+		code.pushInt(args.size());
+		code.anewarray(OBJECT);
+		for (int i = 0; i < args.size(); i++) {
+			code.op(Code.DUP, 1);
+			code.pushInt(i);
+			args.get(i).accept(this);
+			code.op(Code.AASTORE, -3);
+		}
+		code.aload(INTERPRETER_LOCAL);
+		constant(expr.getSite(), CALL_SITE);
+		constant(expr.getParen(), TOKEN);
+		code.invokeStatic(RUNTIME, "call", "(Ljava/lang/Object;[Ljava/lang/Object;" + tail);
+	}
+
+	@Override
+	public Void visitGetVarExpr(Expr.GetVar expr) {
+		loadVariable(expr.getIdentifier(), expr.getStorage(), expr.getSlot());
+		return null;
+	}
+
+	@Override
+	public Void visitGroupingExpr(Expr.Grouping expr) {
+		expr.getExpression().accept(this);
+		return null;
+	}
+
+	@Override
+	public Void visitImportExpr(Expr.Import expr) {
+		code.aload(INTERPRETER_LOCAL);
+		constant(expr.getModule(), TOKEN);
+		constant(expr.getIdentifier(), TOKEN);
+		code.invokeStatic(RUNTIME, "module", "(L" + INTERPRETER + ";L" + TOKEN + ";L" + TOKEN + ";)Ljava/lang/Object;");
+		return null;
+	}
+
+	@Override
+	public Void visitIndexExpr(Expr.Index expr) {
+		expr.getIndex().accept(this);
+		expr.getIndexee().accept(this);
+		constant(expr.getBracket(), TOKEN);
+		code.invokeStatic(RUNTIME, "index", BINARY);
+		return null;
+	}
+
+	@Override
+	public Void visitListExpr(Expr.EList expr) {
+		code.newObject(PACKED_LIST);
+		code.op(Code.DUP, 1);
+		code.pushInt(expr.getExprs().size());
+		code.invokeSpecial(PACKED_LIST, "<init>", "(I)V");
+		for (Expr item : expr.getExprs()) {
+			code.op(Code.DUP, 1);
+			item.accept(this);
+			code.invokeVirtual(PACKED_LIST, "add", "(Ljava/lang/Object;)Z");
+			code.op(Code.POP, -1);
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitLiteralExpr(Expr.Literal expr) {
+		Object value = expr.getValue();
+		if (value == null) {
+			code.op(Code.ACONST_NULL, 1);
+		} else if (value instanceof Boolean) {
+			code.getStatic(BOOLEAN, (Boolean) value ? "TRUE" : "FALSE", "L" + BOOLEAN + ";");
+		} else if (value instanceof String) {
+			code.pushString((String) value);
+		} else if (value instanceof Fn) {
+			throw new Unsupported("Nested function");
+		} else {
+			constant(value, OBJECT);
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitLogicalExpr(Expr.Logical expr) {
+		Code.Label end = new Code.Label();
+		logical(expr.getLeft(), expr.getOperator());
+		// The left hand value is the result if it decides it
+		code.op(Code.DUP, 1);
+		code.jump(expr.getOperator().getType() == TokenType.AND ? Code.IFEQ : Code.IFNE, end);
+		code.op(Code.POP, -1);
+		logical(expr.getRight(), expr.getOperator());
+		code.mark(end);
+		code.invokeStatic(BOOLEAN, "valueOf", "(Z)L" + BOOLEAN + ";");
+		return null;
+	}
+
+	/**
+	 * Evaluates an operand of a logical expression, leaving it on the stack as a primitive boolean
+	 */
+	private void logical(Expr operand, Token operator) {
+		operand.accept(this);
+		constant(operator, TOKEN);
+		code.invokeStatic(INTERPRETER, "logical", "(Ljava/lang/Object;L" + TOKEN + ";)Z");
+	}
+
+	@Override
+	public Void visitUnaryExpr(Expr.Unary expr) {
+		expr.getValue().accept(this);
+		constant(expr.getOperator(), TOKEN);
+		code.invokeStatic(RUNTIME, "unary", "(Ljava/lang/Object;L" + TOKEN + ";)Ljava/lang/Object;");
+		return null;
+	}
+
+	@Override
+	public Void visitBlockStmt(Stmt.Block stmt) {
+		for (Stmt statement : stmt.getStmts()) {
+			statement.accept(this);
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitBreakStmt(Stmt.Break stmt) {
+		if (loops.isEmpty()) {
+			throw new Unsupported("Break outside a loop");
+		}
+		code.jump(Code.GOTO, loops.peek()[1]);
+		return null;
+	}
+
+	@Override
+	public Void visitContinueStmt(Stmt.Continue stmt) {
+		if (loops.isEmpty()) {
+			throw new Unsupported("Continue outside a loop");
+		}
+		code.jump(Code.GOTO, loops.peek()[0]);
+		return null;
+	}
+
+	@Override
+	public Void visitExpressionStmt(Stmt.Expression stmt) {
+		stmt.getExpression().accept(this);
+		code.op(Code.POP, -1);
+		return null;
+	}
+
+	@Override
+	public Void visitForEachStmt(Stmt.ForEach stmt) {
+		int iterator = FRAME + stmt.getIteratorSlot();
+		int slot = stmt.getVariable().getSlot();
+		if (slot < 0) {
+			throw new Unsupported("Unresolved variable");
+		}
+		stmt.getIterable().accept(this);
+		constant(stmt.getKeyword(), TOKEN);
+		code.invokeStatic(INTERPRETER, "iterate", "(Ljava/lang/Object;L" + TOKEN + ";)L" + ITERATOR + ";");
+		code.astore(iterator);
+		Code.Label start = new Code.Label();
+		Code.Label end = new Code.Label();
+		code.mark(start);
+		code.aload(iterator);
+		code.checkcast(ITERATOR);
+		code.invokeInterface(ITERATOR, "hasNext", "()Z");
+		code.jump(Code.IFEQ, end);
+		if (stmt.getVariable().isCaptured()) {
+			code.newObject(CELL);
+			code.op(Code.DUP, 1);
+		}
+		code.aload(iterator);
+		code.checkcast(ITERATOR);
+		code.invokeInterface(ITERATOR, "next", "()Ljava/lang/Object;");
+		if (stmt.getVariable().isCaptured()) {
+			code.invokeSpecial(CELL, "<init>", "(Ljava/lang/Object;)V");
+		}
+		code.astore(FRAME + slot);
+		loops.push(new Code.Label[] { start, end });
+		stmt.getBody().accept(this);
+		loops.pop();
+		code.jump(Code.GOTO, start);
+		code.mark(end);
+		return null;
+	}
+
+	@Override
+	public Void visitIfStmt(Stmt.If stmt) {
+		Code.Label elseBranch = new Code.Label();
+		Code.Label end = new Code.Label();
+		condition(stmt.getCondition(), elseBranch);
+		stmt.getIfBranch().accept(this);
+		code.jump(Code.GOTO, end);
+		code.mark(elseBranch);
+		stmt.getElseBranch().accept(this);
+		code.mark(end);
+		return null;
+	}
+
+	/**
+	 * Evaluates a condition, jumping if it is false
+	 */
+	private void condition(Expr condition, Code.Label ifFalse) {
+		if (condition instanceof Expr.Logical) {
+			// Jumps straight out of the condition rather than making a Boolean to test
+			Expr.Logical logical = (Expr.Logical) condition;
+			Code.Label ifTrue = new Code.Label();
+			logical(logical.getLeft(), logical.getOperator());
+			code.jump(logical.getOperator().getType() == TokenType.AND ? Code.IFEQ : Code.IFNE,
+					logical.getOperator().getType() == TokenType.AND ? ifFalse : ifTrue);
+			logical(logical.getRight(), logical.getOperator());
+			code.jump(Code.IFEQ, ifFalse);
+			code.mark(ifTrue);
+			return;
+		}
+		condition.accept(this);
+		code.invokeStatic(INTERPRETER, "isTruthy", "(Ljava/lang/Object;)Z");
+		code.jump(Code.IFEQ, ifFalse);
+	}
+
+	@Override
+	public Void visitImportStmt(Stmt.Import stmt) {
+		throw new Unsupported("Import in a function");
+	}
+
+	@Override
+	public Void visitReturnStmt(Stmt.Return stmt) {
+		if (stmt.getExpr() instanceof Expr.Call && ((Expr.Call) stmt.getExpr()).getArgs().size() == fn.getArity()) {
+			tailCall((Expr.Call) stmt.getExpr());
+			return null;
+		}
+		if (stmt.getExpr() == null) {
+			code.op(Code.ACONST_NULL, 1);
+		} else {
+			stmt.getExpr().accept(this);
+		}
+		code.op(Code.ARETURN, -1);
+		return null;
+	}
+
+	/**
+	 * Returns the value of a call. If the call is to the running function, it jumps back to the start of the function
+	 * with the new arguments, the same way {@link com.nailuj29gaming.language.Completion#TAIL_CALL} does, rather than calling itself
+	 */
+	private void tailCall(Expr.Call call) {
+		int callee = FRAME + fn.getFrameSize();
+		Code.Label notSelf = new Code.Label();
+		call.getCallee().accept(this);
+		code.astore(callee);
+		code.aload(callee);
+		code.aload(FN_LOCAL);
+		code.jump(Code.IF_ACMPNE, notSelf);
+		List<Expr> args = call.getArgs();
+		// Every argument is evaluated before the frame is reused, since they may read the parameters
+		for (int i = 0; i < args.size(); i++) {
+			args.get(i).accept(this);
+			code.astore(callee + 1 + i);
+		}
+		for (int slot = 0; slot < fn.getFrameSize(); slot++) {
+			code.op(Code.ACONST_NULL, 1);
+			code.astore(FRAME + slot);
+		}
+		for (int i = 0; i < args.size(); i++) {
+			code.aload(callee + 1 + i);
+			code.astore(FRAME + i);
+		}
+		code.jump(Code.GOTO, restart);
+		code.mark(notSelf);
+		code.aload(callee);
+		call(call);
+		code.op(Code.ARETURN, -1);
+	}
+
+	@Override
+	public Void visitVarStmt(Stmt.Var stmt) {
+		int slot = stmt.getSlot();
+		if (slot < 0) {
+			throw new Unsupported("Unresolved variable");
+		}
+		if (stmt.isCaptured()) {
+			code.newObject(CELL);
+			code.op(Code.DUP, 1);
+			code.invokeSpecial(CELL, "<init>", "()V");
+			code.op(Code.DUP, 1);
+			code.astore(FRAME + slot);
+			stmt.getRight().accept(this);
+			code.invokeVirtual(CELL, "set", "(Ljava/lang/Object;)V");
+		} else {
+			// The slot might hold a value from a block that has ended
+			code.op(Code.ACONST_NULL, 1);
+			code.astore(FRAME + slot);
+			stmt.getRight().accept(this);
+			code.astore(FRAME + slot);
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitWhileStmt(Stmt.While stmt) {
+		Code.Label start = new Code.Label();
+		Code.Label end = new Code.Label();
+		code.mark(start);
+		condition(stmt.getCondition(), end);
+		loops.push(new Code.Label[] { start, end });
+		stmt.getBody().accept(this);
+		loops.pop();
+		code.jump(Code.GOTO, start);
+		code.mark(end);
+		return null;
+	}
+}
@@ -0,0 +1,216 @@
+package com.nailuj29gaming.language.jit;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.nailuj29gaming.language.CallSite;
+import com.nailuj29gaming.language.CurriedFn;
+import com.nailuj29gaming.language.IFn;
+import com.nailuj29gaming.language.Interpreter;
+import com.nailuj29gaming.language.Interpreter.InterpretError;
+import com.nailuj29gaming.language.Token;
+
+/**
+ * Helpers called by the code the {@link JitCompiler} generates.
+ * The common cases are handled inline, everything else falls back to the {@link Interpreter}'s helpers,
+ * so compiled functions behave exactly like interpreted ones
+ */
+public final class JitRuntime {
+
+	private JitRuntime() {
+	}
+
+	public static Object add(Object left, Object right, Token operator) {
+		if (left instanceof Double && right instanceof Double) {
+			return (Double) left + (Double) right;
+		}
+		return Interpreter.binary(operator, left, right);
+	}
+
+	public static Object subtract(Object left, Object right, Token operator) {
+		if (left instanceof Double && right instanceof Double) {
+			return (Double) left - (Double) right;
+		}
+		return Interpreter.binary(operator, left, right);
+	}
+
+	public static Object multiply(Object left, Object right, Token operator) {
+		if (left instanceof Double && right instanceof Double) {
+			return (Double) left * (Double) right;
+		}
+		return Interpreter.binary(operator, left, right);
+	}
+
+	public static Object divide(Object left, Object right, Token operator) {
+		if (left instanceof Double && right instanceof Double) {
+			return (Double) left / (Double) right;
+		}
+		return Interpreter.binary(operator, left, right);
+	}
+
+	public static Object less(Object left, Object right, Token operator) {
+		if (left instanceof Double && right instanceof Double) {
+			return (Double) left < (Double) right;
+		}
+		return Interpreter.binary(operator, left, right);
+	}
+
+	public static Object lessEqual(Object left, Object right, Token operator) {
+		if (left instanceof Double && right instanceof Double) {
+			return (Double) left <= (Double) right;
+		}
+		return Interpreter.binary(operator, left, right);
+	}
+
+	public static Object greater(Object left, Object right, Token operator) {
+		if (left instanceof Double && right instanceof Double) {
+			return (Double) left > (Double) right;
+		}
+		return Interpreter.binary(operator, left, right);
+	}
+
+	public static Object greaterEqual(Object left, Object right, Token operator) {
+		if (left instanceof Double && right instanceof Double) {
+			return (Double) left >= (Double) right;
+		}
+		return Interpreter.binary(operator, left, right);
+	}
+
+	/**
+	 * Applies any other binary operator
+	 */
+	public static Object binary(Object left, Object right, Token operator) {
+		return Interpreter.binary(operator, left, right);
+	}
+
+	/**
+	 * Applies a unary operator
+	 */
+	public static Object unary(Object target, Token operator) {
+		return Interpreter.unary(operator, target);
+	}
+
+	/**
+	 * Indexes a list. The index is evaluated before the list, so it comes first
+	 */
+	public static Object index(Object index, Object indexee, Token bracket) {
+		return Interpreter.index(indexee, index, bracket);
+	}
+
+	/**
+	 * Checks that a variable being assigned at an index holds a list
+	 * @param value the value of the variable
+	 * @param identifier the name of the variable, used for error reporting
+	 * @return the value
+	 */
+	public static Object indexable(Object value, Token identifier) {
+		if (!(value instanceof List)) {
+			throw new InterpretError("Cannot index non-iterable", identifier);
+		}
+		return value;
+	}
+
+	/**
+	 * Calls a function, the same way {@link Interpreter#visitCallExpr} does
+	 * @param callee the value being called
+	 * @param args the arguments
+	 * @param interpreter the interpreter the compiled function was called from
+	 * @param site the call's inline cache
+	 * @param paren the opening parenthesis, used for error reporting
+	 * @return the value returned by the function
+	 */
+	public static Object call(Object callee, Object[] args, Interpreter interpreter, CallSite site, Token paren) {
+		int arity = site.arity(callee, paren);
+		return call((IFn) callee, arity, args, interpreter, paren);
+	}
+
+	private static Object call(IFn fn, int arity, Object[] args, Interpreter interpreter, Token paren) {
+		if (args.length > arity) {
+			throw new InterpretError("Incorrect argument count", paren);
+		}
+		if (args.length == arity) {
+			return fn.call(interpreter, Arrays.asList(args), paren);
+		}
+		return new CurriedFn(fn, Arrays.asList(args));
+	}
+
+	/**
+	 * Calls a function without any arguments, the same way {@link #call} does
+	 * @param callee the value being called
+	 * @param interpreter the interpreter the compiled function was called from
+	 * @param site the call's inline cache
+	 * @param paren the opening parenthesis, used for error reporting
+	 * @return the value returned by the function
+	 */
+	public static Object call0(Object callee, Interpreter interpreter, CallSite site, Token paren) {
+		int arity = site.arity(callee, paren);
+		if (arity == 0) {
+			return ((IFn) callee).call0(interpreter, paren);
+		}
+		return call((IFn) callee, arity, new Object[0], interpreter, paren);
+	}
+
+	/**
+	 * Calls a function with one argument, the same way {@link #call} does
+	 * @param callee the value being called
+	 * @param a the argument
+	 * @param interpreter the interpreter the compiled function was called from
+	 * @param site the call's inline cache
+	 * @param paren the opening parenthesis, used for error reporting
+	 * @return the value returned by the function
+	 */
+	public static Object call1(Object callee, Object a, Interpreter interpreter, CallSite site, Token paren) {
+		int arity = site.arity(callee, paren);
+		if (arity == 1) {
+			return ((IFn) callee).call1(interpreter, a, paren);
+		}
+		return call((IFn) callee, arity, new Object[] { a }, interpreter, paren);
+	}
+
+	/**
+	 * Calls a function with two arguments, the same way {@link #call} does
+	 * @param callee the value being called
+	 * @param a the first argument
+	 * @param b the second argument
+	 * @param interpreter the interpreter the compiled function was called from
+	 * @param site the call's inline cache
+	 * @param paren the opening parenthesis, used for error reporting
+	 * @return the value returned by the function
+	 */
+	public static Object call2(Object callee, Object a, Object b, Interpreter interpreter, CallSite site, Token paren) {
+		int arity = site.arity(callee, paren);
+		if (arity == 2) {
+			return ((IFn) callee).call2(interpreter, a, b, paren);
+		}
+		return call((IFn) callee, arity, new Object[] { a, b }, interpreter, paren);
+	}
+
+	/**
+	 * Calls a function with three arguments, the same way {@link #call} does
+	 * @param callee the value being called
+	 * @param a the first argument
+	 * @param b the second argument
+	 * @param c the third argument
+	 * @param interpreter the interpreter the compiled function was called from
+	 * @param site the call's inline cache
+	 * @param paren the opening parenthesis, used for error reporting
+	 * @return the value returned by the function
+	 */
+	public static Object call3(Object callee, Object a, Object b, Object c, Interpreter interpreter, CallSite site, Token paren) {
+		int arity = site.arity(callee, paren);
+		if (arity == 3) {
+			return ((IFn) callee).call3(interpreter, a, b, c, paren);
+		}
+		return call((IFn) callee, arity, new Object[] { a, b, c }, interpreter, paren);
+	}
+
+	/**
+	 * Gets a value from an imported module, the same way {@link Interpreter#visitImportExpr} does
+	 */
+	public static Object module(Interpreter interpreter, Token module, Token identifier) {
+		if (interpreter.imports.containsKey(module.getLexeme())) {
+			return interpreter.imports.get(module.getLexeme()).get(identifier.getSymbol(), identifier);
+		}
+		throw new InterpretError("Undefined or un-imported module", module);
+	}
+}
@@ -0,0 +1,91 @@
+package com.nailuj29gaming.language.script;
+
+import java.util.List;
+import java.util.Map;
+
+import javax.script.Bindings;
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptException;
+
+import com.nailuj29gaming.language.Environment;
+import com.nailuj29gaming.language.Interpreter;
+import com.nailuj29gaming.language.Interpreter.InterpretError;
+import com.nailuj29gaming.language.Lexer;
+import com.nailuj29gaming.language.Parser;
+import com.nailuj29gaming.language.ast.Stmt;
+
+/**
+ * A script that has been parsed, optimized and resolved, so running it again only costs running it.
+ * Each evaluation runs in a new {@link Interpreter}, so a script can be evaluated on several threads at once.
+ * The context's global bindings are added to the interpreter's globals, and its engine bindings become variables at the top level of the script.
+ * When the script ends, the variables at its top level are put back into the engine bindings
+ */
+public class ScrCompiledScript extends CompiledScript {
+
+	private final ScriptEngine engine;
+	private final List<Stmt> statements;
+
+	/**
+	 * @param engine the engine that compiled the script
+	 * @param statements the script's statements, after they have been resolved
+	 */
+	ScrCompiledScript(ScriptEngine engine, List<Stmt> statements) {
+		this.engine = engine;
+		this.statements = statements;
+	}
+
+	/**
+	 * @return the script's statements, after they have been resolved
+	 */
+	public List<Stmt> getStatements() {
+		return statements;
+	}
+
+	@Override
+	public Object eval(ScriptContext context) throws ScriptException {
+		Interpreter interpreter = new Interpreter(context.getReader(), context.getWriter());
+		Bindings globalScope = context.getBindings(ScriptContext.GLOBAL_SCOPE);
+		if (globalScope != null) {
+			define(interpreter.getGlobals(), globalScope);
+		}
+		Bindings engineScope = context.getBindings(ScriptContext.ENGINE_SCOPE);
+		Environment environment = interpreter.getEnvironment();
+		if (engineScope != null) {
+			define(environment, engineScope);
+		}
+		try {
+			return interpreter.run(statements);
+		} catch (InterpretError e) {
+			throw new ScriptException(e.getMessage(), ScrScriptEngine.getName(context), e.getToken().getLine(), e.getToken().getColumn());
+		} catch (Parser.ParseError e) {
+			// A module the script imports couldn't be parsed
+			throw new ScriptException(e.getMessage(), ScrScriptEngine.getName(context), e.getToken().getLine(), e.getToken().getColumn());
+		} catch (Lexer.LexError e) {
+			throw new ScriptException(e.getMessage(), ScrScriptEngine.getName(context), e.getLine(), e.getColumn());
+		} finally {
+			if (engineScope != null) {
+				engineScope.putAll(environment.getValues());
+			}
+		}
+	}
+
+	@Override
+	public ScriptEngine getEngine() {
+		return engine;
+	}
+
+	/**
+	 * Defines a variable for each binding. Numbers are turned into {@link Double}s, since that is the only kind of number scripts use
+	 */
+	private static void define(Environment environment, Bindings bindings) {
+		for (Map.Entry<String, Object> binding : bindings.entrySet()) {
+			Object value = binding.getValue();
+			if (value instanceof Number && !(value instanceof Double)) {
+				value = ((Number) value).doubleValue();
+			}
+			environment.define(binding.getKey(), value);
+		}
+	}
+}
@@ -0,0 +1,89 @@
+package com.nailuj29gaming.language.script;
+
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+
+import javax.script.AbstractScriptEngine;
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+import javax.script.ScriptException;
+import javax.script.SimpleBindings;
+
+import com.nailuj29gaming.language.Interpreter;
+import com.nailuj29gaming.language.Lexer;
+import com.nailuj29gaming.language.Parser;
+
+/**
+ * Runs scripts for <code>javax.script</code>.
+ * A script is parsed once by {@link #compile(Reader)}, and the {@link CompiledScript} can then be run any number of times,
+ * each time in a new {@link Interpreter} whose variables come from the context's bindings
+ */
+public class ScrScriptEngine extends AbstractScriptEngine implements Compilable {
+
+	/**
+	 * What a script is called in errors when the context doesn't give it a {@link ScriptEngine#FILENAME}
+	 */
+	private static final String DEFAULT_NAME = "<script>";
+
+	private final ScriptEngineFactory factory;
+
+	/**
+	 * @param factory the factory that made the engine
+	 */
+	ScrScriptEngine(ScriptEngineFactory factory) {
+		this.factory = factory;
+	}
+
+	@Override
+	public Object eval(String script, ScriptContext context) throws ScriptException {
+		return compile(script).eval(context);
+	}
+
+	@Override
+	public Object eval(Reader reader, ScriptContext context) throws ScriptException {
+		return compile(reader).eval(context);
+	}
+
+	@Override
+	public CompiledScript compile(String script) throws ScriptException {
+		return compile(new StringReader(script));
+	}
+
+	@Override
+	public CompiledScript compile(Reader script) throws ScriptException {
+		String name = getName(context);
+		try {
+			return new ScrCompiledScript(this, Interpreter.parse(new Lexer().lex(script), name));
+		} catch (Parser.ParseError e) {
+			throw new ScriptException(e.getMessage(), name, e.getToken().getLine(), e.getToken().getColumn());
+		} catch (Lexer.LexError e) {
+			throw new ScriptException(e.getMessage(), name, e.getLine(), e.getColumn());
+		} catch (UncheckedIOException e) {
+			throw new ScriptException(e.getCause());
+		}
+	}
+
+	@Override
+	public Bindings createBindings() {
+		return new SimpleBindings();
+	}
+
+	@Override
+	public ScriptEngineFactory getFactory() {
+		return factory;
+	}
+
+	/**
+	 * @param context a context
+	 * @return what a script run in the context is called in errors
+	 */
+	static String getName(ScriptContext context) {
+		Object name = context.getAttribute(ScriptEngine.FILENAME);
+		return name == null ? DEFAULT_NAME : name.toString();
+	}
+}
@@ -0,0 +1,106 @@
+package com.nailuj29gaming.language.script;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+
+import com.nailuj29gaming.language.Interpreter;
+
+/**
+ * Describes the language to <code>javax.script</code>, so a {@link javax.script.ScriptEngineManager} can find it by the name or extension <code>scr</code>.
+ * It is registered in <code>META-INF/services/javax.script.ScriptEngineFactory</code>
+ */
+public class ScrScriptEngineFactory implements ScriptEngineFactory {
+
+	private static final String NAME = "scr";
+
+	private static final List<String> NAMES = Collections.unmodifiableList(Arrays.asList(NAME));
+
+	@Override
+	public String getEngineName() {
+		return NAME;
+	}
+
+	@Override
+	public String getEngineVersion() {
+		return Interpreter.VERSION;
+	}
+
+	@Override
+	public List<String> getExtensions() {
+		return NAMES;
+	}
+
+	@Override
+	public List<String> getMimeTypes() {
+		return Collections.emptyList();
+	}
+
+	@Override
+	public List<String> getNames() {
+		return NAMES;
+	}
+
+	@Override
+	public String getLanguageName() {
+		return NAME;
+	}
+
+	@Override
+	public String getLanguageVersion() {
+		return Interpreter.VERSION;
+	}
+
+	@Override
+	public Object getParameter(String key) {
+		switch (key) {
+		case ScriptEngine.ENGINE:
+		case ScriptEngine.NAME:
+		case ScriptEngine.LANGUAGE:
+			return NAME;
+		case ScriptEngine.ENGINE_VERSION:
+		case ScriptEngine.LANGUAGE_VERSION:
+			return Interpreter.VERSION;
+		case "THREADING":
+			// Each evaluation runs in its own interpreter, but they may share bindings
+			return "MULTITHREADED";
+		default:
+			return null;
+		}
+	}
+
+	@Override
+	public String getMethodCallSyntax(String obj, String m, String... args) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(obj).append('.').append(m).append('(');
+		for (int i = 0; i < args.length; i++) {
+			if (i > 0) {
+				sb.append(", ");
+			}
+			sb.append(args[i]);
+		}
+		return sb.append(')').toString();
+	}
+
+	@Override
+	public String getOutputStatement(String toDisplay) {
+		return "print(" + toDisplay + ");";
+	}
+
+	@Override
+	public String getProgram(String... statements) {
+		StringBuilder sb = new StringBuilder();
+		for (String statement : statements) {
+			sb.append(statement).append(";\n");
+		}
+		return sb.toString();
+	}
+
+	@Override
+	public ScriptEngine getScriptEngine() {
+		return new ScrScriptEngine(this);
+	}
+}
@@ -0,0 +1,126 @@
+package com.nailuj29gaming.language.vm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.nailuj29gaming.language.Symbol;
+import com.nailuj29gaming.language.Token;
+
+/**
+ * A compiled sequence of instructions, along with the constants they use
+ */
+public class Chunk {
+
+	/**
+	 * The instructions and their operands
+	 */
+	int[] code = new int[32];
+
+	/**
+	 * The token each instruction came from, used for error reporting
+	 */
+	Token[] tokens = new Token[32];
+
+	/**
+	 * The constant pool, filled by {@link #finish()}
+	 */
+	Object[] constants;
+
+	private int size;
+	private List<Object> constantList = new ArrayList<>();
+	private Map<Object, Integer> constantIndices = new HashMap<>();
+
+	/**
+	 * Appends an instruction or operand
+	 * @param value the instruction or operand
+	 * @param token the token it came from
+	 * @return the position it was written at
+	 */
+	public int write(int value, Token token) {
+		if (size == code.length) {
+			code = Arrays.copyOf(code, size * 2);
+			tokens = Arrays.copyOf(tokens, size * 2);
+		}
+		code[size] = value;
+		tokens[size] = token;
+		return size++;
+	}
+
+	/**
+	 * Overwrites an operand, used to fill in jump targets
+	 * @param position the position of the operand
+	 * @param value the new value
+	 */
+	public void patch(int position, int value) {
+		code[position] = value;
+	}
+
+	/**
+	 * Adds a value to the constant pool. Strings, symbols and numbers are only stored once
+	 * @param value the value
+	 * @return the index of the constant
+	 */
+	public int addConstant(Object value) {
+		boolean shared = value instanceof String || value instanceof Symbol || value instanceof Double;
+		if (shared && constantIndices.containsKey(value)) {
+			return constantIndices.get(value);
+		}
+		constantList.add(value);
+		if (shared) {
+			constantIndices.put(value, constantList.size() - 1);
+		}
+		return constantList.size() - 1;
+	}
+
+	/**
+	 * @return the position the next instruction will be written at
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Trims the chunk and builds its constant pool. Called once compilation is done
+	 */
+	public void finish() {
+		code = Arrays.copyOf(code, size);
+		tokens = Arrays.copyOf(tokens, size);
+		constants = constantList.toArray();
+		constantList = null;
+		constantIndices = null;
+	}
+
+	/**
+	 * Turns the chunk into a human readable listing
+	 * @param name the name of the chunk
+	 * @return the listing
+	 */
+	public String disassemble(String name) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("== ").append(name).append(" ==\n");
+		int ip = 0;
+		while (ip < size) {
+			int op = code[ip];
+			sb.append(String.format("%04d %-14s", ip, OpCode.name(op)));
+			for (int i = 1; i <= OpCode.operands(op); i++) {
+				sb.append(' ').append(code[ip + i]);
+			}
+			if (op == OpCode.CONSTANT || op == OpCode.GET_GLOBAL || op == OpCode.SET_GLOBAL || op == OpCode.DECLARE_GLOBAL
+					|| op == OpCode.IMPORT) {
+				sb.append("  ; ").append(constants[code[ip + 1]]);
+			}
+			sb.append('\n');
+			ip += 1 + OpCode.operands(op);
+		}
+		for (Object constant : constants) {
+			if (constant instanceof Prototype) {
+				Prototype prototype = (Prototype) constant;
+				sb.append(prototype.getChunk().disassemble(prototype.toString()));
+			}
+		}
+		return sb.toString();
+	}
+}
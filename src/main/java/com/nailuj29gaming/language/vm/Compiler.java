@@ -0,0 +1,529 @@
+package com.nailuj29gaming.language.vm;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.nailuj29gaming.language.Fn;
+import com.nailuj29gaming.language.Interpreter;
+import com.nailuj29gaming.language.Token;
+import com.nailuj29gaming.language.TokenType;
+import com.nailuj29gaming.language.ast.Expr;
+import com.nailuj29gaming.language.ast.Stmt;
+
+/**
+ * Compiles an AST into bytecode for the {@link VM}.
+ * Variables declared inside blocks and functions use the slots the {@link com.nailuj29gaming.language.Resolver}
+ * gave them in their function's frame, everything else is a global and looked up by name.
+ *
+ * @see OpCode
+ */
+public class Compiler implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+
+	/**
+	 * A loop being compiled, used to compile <code>break</code> and <code>continue</code>
+	 */
+	private static class Loop {
+		final int start;
+		final List<Integer> breaks = new ArrayList<>();
+
+		Loop(int start) {
+			this.start = start;
+		}
+	}
+
+	/**
+	 * The state of the function being compiled
+	 */
+	private static class FunctionState {
+		final Chunk chunk = new Chunk();
+		final List<Loop> loops = new ArrayList<>();
+		int maxLocals;
+		int stackDepth;
+		int maxStack;
+		/**
+		 * The slot of the variable whose initializer is being compiled, which still holds nil
+		 */
+		int pendingSlot = -1;
+	}
+
+	private FunctionState current;
+
+	/**
+	 * Compiles a script
+	 * @param stmts the statements in the script
+	 * @return the compiled script
+	 */
+	public Prototype compile(List<Stmt> stmts) {
+		current = new FunctionState();
+		for (Stmt stmt : stmts) {
+			compile(stmt);
+		}
+		emit(OpCode.NIL, null);
+		emit(OpCode.RETURN, null);
+		return finish(null, Collections.<String>emptyList(), new boolean[0], new int[0]);
+	}
+
+	/**
+	 * Compiles a function into its own prototype
+	 * @param fn the function
+	 * @return the compiled function
+	 */
+	private Prototype compileFunction(Fn fn) {
+		FunctionState enclosing = current;
+		current = new FunctionState();
+		// Matches Fn.call: the parameters come first, followed by the function itself
+		current.maxLocals = fn.getFrameSize();
+		for (int slot : fn.getCellSlots()) {
+			emit(OpCode.GET_LOCAL, slot, null);
+			emit(OpCode.CELL, null);
+			emit(OpCode.SET_LOCAL, slot, null);
+		}
+		compile(fn.getBody());
+		emit(OpCode.NIL, null);
+		emit(OpCode.RETURN, null);
+		Prototype prototype = finish(fn.getName(), fn.getParams(), fn.getUpvalueLocal(), fn.getUpvalueIndices());
+		current = enclosing;
+		return prototype;
+	}
+
+	private Prototype finish(Token name, List<String> params, boolean[] upvalueLocal, int[] upvalueIndices) {
+		current.chunk.finish();
+		return new Prototype(name, params, current.chunk, current.maxLocals, current.maxStack, upvalueLocal,
+				upvalueIndices);
+	}
+
+	private void compile(Stmt stmt) {
+		stmt.accept(this);
+	}
+
+	private void compile(Expr expr) {
+		expr.accept(this);
+	}
+
+	/**
+	 * Writes an instruction, keeping track of how deep the operand stack gets
+	 * @param op the instruction
+	 * @param token the token it came from
+	 * @return the position of the instruction
+	 */
+	private int emit(int op, Token token) {
+		int position = current.chunk.write(op, token);
+		switch (op) {
+		case OpCode.CONSTANT:
+		case OpCode.NIL:
+		case OpCode.TRUE:
+		case OpCode.FALSE:
+		case OpCode.GET_LOCAL:
+		case OpCode.GET_CELL:
+		case OpCode.GET_UPVALUE:
+		case OpCode.GET_GLOBAL:
+		case OpCode.GET_MODULE:
+		case OpCode.FUNCTION:
+		case OpCode.FOR_NEXT:
+			grow(1);
+			break;
+		case OpCode.POP:
+		case OpCode.SET_LOCAL:
+		case OpCode.SET_CELL:
+		case OpCode.SET_UPVALUE:
+		case OpCode.SET_GLOBAL:
+		case OpCode.JUMP_IF_FALSE:
+		case OpCode.RETURN:
+		case OpCode.ADD:
+		case OpCode.SUBTRACT:
+		case OpCode.MULTIPLY:
+		case OpCode.DIVIDE:
+		case OpCode.MODULO:
+		case OpCode.EQUAL:
+		case OpCode.NOT_EQUAL:
+		case OpCode.GREATER:
+		case OpCode.GREATER_EQUAL:
+		case OpCode.LESS:
+		case OpCode.LESS_EQUAL:
+		case OpCode.AND:
+		case OpCode.OR:
+		case OpCode.INDEX:
+			grow(-1);
+			break;
+		case OpCode.SET_INDEX:
+			grow(-2);
+			break;
+		default:
+			break;
+		}
+		return position;
+	}
+
+	private int emit(int op, int operand, Token token) {
+		int position = emit(op, token);
+		current.chunk.write(operand, token);
+		return position;
+	}
+
+	private void grow(int amount) {
+		current.stackDepth += amount;
+		current.maxStack = Math.max(current.maxStack, current.stackDepth);
+	}
+
+	/**
+	 * Writes a jump whose target is filled in later
+	 * @param op the jump instruction
+	 * @return the position of the operand to patch
+	 */
+	private int emitJump(int op) {
+		return emit(op, -1, null) + 1;
+	}
+
+	/**
+	 * Points a jump at the next instruction
+	 * @param operand the position of the operand to patch
+	 */
+	private void patchJump(int operand) {
+		current.chunk.patch(operand, current.chunk.size());
+	}
+
+	private int constant(Object value) {
+		return current.chunk.addConstant(value);
+	}
+
+	private void getVariable(Token identifier, Expr.Storage storage, int slot) {
+		if (storage == null) {
+			emit(OpCode.GET_GLOBAL, constant(identifier.getSymbol()), identifier);
+		} else if (storage == Expr.Storage.UPVALUE) {
+			emit(OpCode.GET_UPVALUE, slot, identifier);
+		} else if (storage == Expr.Storage.CELL) {
+			emit(OpCode.GET_CELL, slot, identifier);
+		} else if (slot == current.pendingSlot) {
+			// Read inside its own initializer, where it is still nil
+			emit(OpCode.NIL, identifier);
+		} else {
+			emit(OpCode.GET_LOCAL, slot, identifier);
+		}
+	}
+
+	private void setVariable(Token identifier, Expr.Storage storage, int slot) {
+		if (storage == null) {
+			emit(OpCode.SET_GLOBAL, constant(identifier.getSymbol()), identifier);
+		} else if (storage == Expr.Storage.UPVALUE) {
+			emit(OpCode.SET_UPVALUE, slot, identifier);
+		} else if (storage == Expr.Storage.CELL) {
+			emit(OpCode.SET_CELL, slot, identifier);
+		} else {
+			emit(OpCode.SET_LOCAL, slot, identifier);
+		}
+	}
+
+	@Override
+	public Void visitBlockStmt(Stmt.Block stmt) {
+		if (stmt.getSlots() >= 0) {
+			// A block at the top level of the script, whose variables live in the script's frame
+			current.maxLocals = Math.max(current.maxLocals, stmt.getSlots());
+		}
+		for (Stmt statement : stmt.getStmts()) {
+			compile(statement);
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitBreakStmt(Stmt.Break stmt) {
+		if (current.loops.isEmpty()) {
+			throw new Interpreter.InterpretError("Cant break outside a loop", stmt.getKeyword());
+		}
+		current.loops.get(current.loops.size() - 1).breaks.add(emitJump(OpCode.JUMP));
+		return null;
+	}
+
+	@Override
+	public Void visitContinueStmt(Stmt.Continue stmt) {
+		if (current.loops.isEmpty()) {
+			throw new Interpreter.InterpretError("Cant break outside a loop", stmt.getKeyword());
+		}
+		emit(OpCode.JUMP, current.loops.get(current.loops.size() - 1).start, stmt.getKeyword());
+		return null;
+	}
+
+	@Override
+	public Void visitExpressionStmt(Stmt.Expression stmt) {
+		compile(stmt.getExpression());
+		emit(OpCode.POP, null);
+		return null;
+	}
+
+	@Override
+	public Void visitForEachStmt(Stmt.ForEach stmt) {
+		if (stmt.getSlots() >= 0) {
+			// A loop at the top level of the script, like a block
+			current.maxLocals = Math.max(current.maxLocals, stmt.getSlots());
+		}
+		Token keyword = stmt.getKeyword();
+		Token identifier = stmt.getVariable().getIdentifier();
+		compile(stmt.getIterable());
+		emit(OpCode.ITERATE, keyword);
+		emit(OpCode.SET_LOCAL, stmt.getIteratorSlot(), keyword);
+		Loop loop = new Loop(emit(OpCode.FOR_NEXT, stmt.getIteratorSlot(), keyword));
+		int exitJump = current.chunk.write(-1, keyword);
+		if (stmt.getVariable().isCaptured()) {
+			emit(OpCode.CELL, identifier);
+		}
+		emit(OpCode.SET_LOCAL, stmt.getVariable().getSlot(), identifier);
+		current.loops.add(loop);
+		compile(stmt.getBody());
+		current.loops.remove(current.loops.size() - 1);
+		emit(OpCode.JUMP, loop.start, keyword);
+		patchJump(exitJump);
+		for (int breakJump : loop.breaks) {
+			patchJump(breakJump);
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitIfStmt(Stmt.If stmt) {
+		compile(stmt.getCondition());
+		int elseJump = emitJump(OpCode.JUMP_IF_FALSE);
+		compile(stmt.getIfBranch());
+		int endJump = emitJump(OpCode.JUMP);
+		patchJump(elseJump);
+		compile(stmt.getElseBranch());
+		patchJump(endJump);
+		return null;
+	}
+
+	@Override
+	public Void visitImportStmt(Stmt.Import stmt) {
+		emit(OpCode.IMPORT, constant(stmt.getImportName().getLexeme()), stmt.getImportName());
+		return null;
+	}
+
+	@Override
+	public Void visitReturnStmt(Stmt.Return stmt) {
+		if (stmt.getExpr() instanceof Expr.Call) {
+			// Followed by a return, for when the call can't reuse the frame
+			call((Expr.Call) stmt.getExpr(), OpCode.TAIL_CALL);
+		} else if (stmt.getExpr() == null) {
+			emit(OpCode.NIL, stmt.getKeyword());
+		} else {
+			compile(stmt.getExpr());
+		}
+		emit(OpCode.RETURN, stmt.getKeyword());
+		return null;
+	}
+
+	@Override
+	public Void visitVarStmt(Stmt.Var stmt) {
+		Token identifier = stmt.getIdentifier();
+		int slot = stmt.getSlot();
+		if (slot < 0) {
+			int name = constant(identifier.getSymbol());
+			emit(OpCode.DECLARE_GLOBAL, name, identifier);
+			compileInitializer(stmt.getRight());
+			emit(OpCode.SET_GLOBAL, name, identifier);
+			return null;
+		}
+		if (stmt.isCaptured()) {
+			// Like in the interpreter, the cell exists before the initializer runs
+			emit(OpCode.NIL, identifier);
+			emit(OpCode.CELL, identifier);
+			emit(OpCode.SET_LOCAL, slot, identifier);
+			compileInitializer(stmt.getRight());
+			emit(OpCode.SET_CELL, slot, identifier);
+			return null;
+		}
+		int enclosingPending = current.pendingSlot;
+		current.pendingSlot = slot;
+		compileInitializer(stmt.getRight());
+		current.pendingSlot = enclosingPending;
+		emit(OpCode.SET_LOCAL, slot, identifier);
+		return null;
+	}
+
+	private void compileInitializer(Expr right) {
+		if (right == null) {
+			emit(OpCode.NIL, null);
+		} else {
+			compile(right);
+		}
+	}
+
+	@Override
+	public Void visitWhileStmt(Stmt.While stmt) {
+		Loop loop = new Loop(current.chunk.size());
+		compile(stmt.getCondition());
+		int exitJump = emitJump(OpCode.JUMP_IF_FALSE);
+		current.loops.add(loop);
+		compile(stmt.getBody());
+		current.loops.remove(current.loops.size() - 1);
+		emit(OpCode.JUMP, loop.start, stmt.getKeyword());
+		patchJump(exitJump);
+		for (int breakJump : loop.breaks) {
+			patchJump(breakJump);
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitAssignExpr(Expr.Assign expr) {
+		compile(expr.getRight());
+		setVariable(expr.getIdentifier(), expr.getStorage(), expr.getSlot());
+		// Assignments evaluate to nil
+		emit(OpCode.NIL, null);
+		return null;
+	}
+
+	@Override
+	public Void visitAssignIndexExpr(Expr.AssignIndex expr) {
+		getVariable(expr.getIdentifier(), expr.getStorage(), expr.getSlot());
+		compile(expr.getIndex());
+		compile(expr.getRight());
+		emit(OpCode.SET_INDEX, expr.getIdentifier());
+		return null;
+	}
+
+	@Override
+	public Void visitBinaryExpr(Expr.Binary expr) {
+		compile(expr.getLeft());
+		compile(expr.getRight());
+		Token operator = expr.getOperator();
+		switch (operator.getType()) {
+		case PLUS:
+			emit(OpCode.ADD, operator);
+			break;
+		case MINUS:
+			emit(OpCode.SUBTRACT, operator);
+			break;
+		case STAR:
+			emit(OpCode.MULTIPLY, operator);
+			break;
+		case SLASH:
+			emit(OpCode.DIVIDE, operator);
+			break;
+		case PERCENT:
+			emit(OpCode.MODULO, operator);
+			break;
+		case EQUAL_EQUAL:
+			emit(OpCode.EQUAL, operator);
+			break;
+		case NOT_EQUAL:
+			emit(OpCode.NOT_EQUAL, operator);
+			break;
+		case GREATER:
+			emit(OpCode.GREATER, operator);
+			break;
+		case GREATER_EQUAL:
+			emit(OpCode.GREATER_EQUAL, operator);
+			break;
+		case LESS:
+			emit(OpCode.LESS, operator);
+			break;
+		case LESS_EQUAL:
+			emit(OpCode.LESS_EQUAL, operator);
+			break;
+		default:
+			throw new Interpreter.InterpretError("Unknown operator", operator);
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitCallExpr(Expr.Call expr) {
+		call(expr, OpCode.CALL);
+		return null;
+	}
+
+	/**
+	 * @param expr the call
+	 * @param op {@link OpCode#CALL} or {@link OpCode#TAIL_CALL}
+	 */
+	private void call(Expr.Call expr, int op) {
+		compile(expr.getCallee());
+		for (Expr arg : expr.getArgs()) {
+			compile(arg);
+		}
+		emit(op, expr.getArgs().size(), expr.getParen());
+		grow(-expr.getArgs().size());
+	}
+
+	@Override
+	public Void visitGetVarExpr(Expr.GetVar expr) {
+		getVariable(expr.getIdentifier(), expr.getStorage(), expr.getSlot());
+		return null;
+	}
+
+	@Override
+	public Void visitGroupingExpr(Expr.Grouping expr) {
+		compile(expr.getExpression());
+		return null;
+	}
+
+	@Override
+	public Void visitImportExpr(Expr.Import expr) {
+		// The module's token is reported if the module is missing, the name's token if the name is
+		emit(OpCode.GET_MODULE, constant(expr.getModule().getLexeme()), expr.getModule());
+		current.chunk.write(constant(expr.getIdentifier().getSymbol()), expr.getIdentifier());
+		return null;
+	}
+
+	@Override
+	public Void visitIndexExpr(Expr.Index expr) {
+		compile(expr.getIndex());
+		compile(expr.getIndexee());
+		emit(OpCode.INDEX, expr.getBracket());
+		return null;
+	}
+
+	@Override
+	public Void visitListExpr(Expr.EList expr) {
+		for (Expr item : expr.getExprs()) {
+			compile(item);
+		}
+		emit(OpCode.LIST, expr.getExprs().size(), null);
+		grow(1 - expr.getExprs().size());
+		return null;
+	}
+
+	@Override
+	public Void visitLiteralExpr(Expr.Literal expr) {
+		Object value = expr.getValue();
+		if (value instanceof Fn) {
+			emit(OpCode.FUNCTION, constant(compileFunction((Fn) value)), null);
+		} else if (value == null) {
+			emit(OpCode.NIL, null);
+		} else if (Boolean.TRUE.equals(value)) {
+			emit(OpCode.TRUE, null);
+		} else if (Boolean.FALSE.equals(value)) {
+			emit(OpCode.FALSE, null);
+		} else {
+			emit(OpCode.CONSTANT, constant(value), null);
+		}
+		return null;
+	}
+
+	@Override
+	public Void visitLogicalExpr(Expr.Logical expr) {
+		Token operator = expr.getOperator();
+		compile(expr.getLeft());
+		int shortCircuit = emit(operator.getType() == TokenType.AND ? OpCode.AND : OpCode.OR, -1, operator) + 1;
+		compile(expr.getRight());
+		emit(OpCode.LOGICAL, operator);
+		patchJump(shortCircuit);
+		return null;
+	}
+
+	@Override
+	public Void visitUnaryExpr(Expr.Unary expr) {
+		compile(expr.getValue());
+		switch (expr.getOperator().getType()) {
+		case MINUS:
+			emit(OpCode.NEGATE, expr.getOperator());
+			break;
+		case NOT:
+			emit(OpCode.NOT, expr.getOperator());
+			break;
+		default:
+			throw new Interpreter.InterpretError("Unknown operator", expr.getOperator());
+		}
+		return null;
+	}
+}
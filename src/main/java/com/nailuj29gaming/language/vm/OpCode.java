@@ -0,0 +1,130 @@
+package com.nailuj29gaming.language.vm;
+
+/**
+ * The instructions understood by the {@link VM}.
+ * Operands follow their instruction directly in the code array
+ */
+public final class OpCode {
+	/** Push a constant. Operand: constant index */
+	public static final int CONSTANT = 0;
+	/** Push nil */
+	public static final int NIL = 1;
+	/** Push true */
+	public static final int TRUE = 2;
+	/** Push false */
+	public static final int FALSE = 3;
+	/** Discard the top of the stack */
+	public static final int POP = 4;
+	/** Push a local. Operand: slot */
+	public static final int GET_LOCAL = 5;
+	/** Pop into a local. Operand: slot */
+	public static final int SET_LOCAL = 6;
+	/** Declare a global, setting it to nil. Operand: constant index of the name */
+	public static final int DECLARE_GLOBAL = 7;
+	/** Push a global. Operand: constant index of the name */
+	public static final int GET_GLOBAL = 8;
+	/** Pop into a global. Operand: constant index of the name */
+	public static final int SET_GLOBAL = 9;
+	/** Push a value from an imported module. Operands: constant index of the module, constant index of the name */
+	public static final int GET_MODULE = 10;
+	/** Import a module. Operand: constant index of the module name */
+	public static final int IMPORT = 11;
+	public static final int ADD = 12;
+	public static final int SUBTRACT = 13;
+	public static final int MULTIPLY = 14;
+	public static final int DIVIDE = 15;
+	public static final int MODULO = 16;
+	public static final int EQUAL = 17;
+	public static final int NOT_EQUAL = 18;
+	public static final int GREATER = 19;
+	public static final int GREATER_EQUAL = 20;
+	public static final int LESS = 21;
+	public static final int LESS_EQUAL = 22;
+	/** Jump if the boolean on top of the stack is false, leaving it as the result, otherwise pop it. Operand: target */
+	public static final int AND = 23;
+	/** Jump if the boolean on top of the stack is true, leaving it as the result, otherwise pop it. Operand: target */
+	public static final int OR = 24;
+	public static final int NEGATE = 25;
+	public static final int NOT = 26;
+	/** Jump unconditionally. Operand: target */
+	public static final int JUMP = 27;
+	/** Pop a condition and jump if it is false. Operand: target */
+	public static final int JUMP_IF_FALSE = 28;
+	/** Call the function below the arguments. Operand: argument count */
+	public static final int CALL = 29;
+	/** Return the top of the stack from the current function */
+	public static final int RETURN = 30;
+	/** Push a new function. Operand: constant index of its {@link Prototype} */
+	public static final int FUNCTION = 31;
+	/** Collect items into a list. Operand: item count */
+	public static final int LIST = 32;
+	/** Pop an index and a list, and push the item */
+	public static final int INDEX = 33;
+	/** Pop an item, an index and a list, set the item and push the list */
+	public static final int SET_INDEX = 34;
+	/** Push the value of a local that is stored in a cell. Operand: slot */
+	public static final int GET_CELL = 35;
+	/** Pop into a local that is stored in a cell. Operand: slot */
+	public static final int SET_CELL = 36;
+	/** Push the value of a variable the running function captured. Operand: index */
+	public static final int GET_UPVALUE = 37;
+	/** Pop into a variable the running function captured. Operand: index */
+	public static final int SET_UPVALUE = 38;
+	/** Replace the top of the stack with a new cell holding it */
+	public static final int CELL = 39;
+	/**
+	 * Call the function below the arguments and return what it returns.
+	 * A call to the running function reuses its frame rather than pushing a new one. Operand: argument count
+	 */
+	public static final int TAIL_CALL = 40;
+
+	/** Replace the list on top of the stack with an iterator over its items */
+	public static final int ITERATE = 41;
+
+	/**
+	 * Push the next item of the iterator in a local, or jump if there are no more.
+	 * Operands: slot of the iterator, target
+	 */
+	public static final int FOR_NEXT = 42;
+
+	/** Check that the top of the stack is a boolean, for the right hand value of '&amp;' or '|' */
+	public static final int LOGICAL = 43;
+
+	private static final String[] NAMES = {
+		"CONSTANT", "NIL", "TRUE", "FALSE", "POP", "GET_LOCAL", "SET_LOCAL", "DECLARE_GLOBAL", "GET_GLOBAL",
+		"SET_GLOBAL", "GET_MODULE", "IMPORT", "ADD", "SUBTRACT", "MULTIPLY", "DIVIDE", "MODULO", "EQUAL",
+		"NOT_EQUAL", "GREATER", "GREATER_EQUAL", "LESS", "LESS_EQUAL", "AND", "OR", "NEGATE", "NOT", "JUMP",
+		"JUMP_IF_FALSE", "CALL", "RETURN", "FUNCTION", "LIST", "INDEX", "SET_INDEX", "GET_CELL", "SET_CELL",
+		"GET_UPVALUE", "SET_UPVALUE", "CELL", "TAIL_CALL", "ITERATE", "FOR_NEXT", "LOGICAL"
+	};
+
+	/**
+	 * The number of operands each instruction takes
+	 */
+	private static final int[] OPERANDS = {
+		1, 0, 0, 0, 0, 1, 1, 1, 1,
+		1, 2, 1, 0, 0, 0, 0, 0, 0,
+		0, 0, 0, 0, 0, 1, 1, 0, 0, 1,
+		1, 1, 0, 1, 1, 0, 0, 1, 1,
+		1, 1, 0, 1, 0, 2, 0
+	};
+
+	private OpCode() {
+	}
+
+	/**
+	 * @param op the instruction
+	 * @return the name of the instruction
+	 */
+	public static String name(int op) {
+		return NAMES[op];
+	}
+
+	/**
+	 * @param op the instruction
+	 * @return the number of operands the instruction takes
+	 */
+	public static int operands(int op) {
+		return OPERANDS[op];
+	}
+}
@@ -0,0 +1,97 @@
+package com.nailuj29gaming.language.vm;
+
+import java.util.List;
+
+import com.nailuj29gaming.language.Token;
+
+/**
+ * A compiled function or script. {@link VmFn}s are created from it at run time
+ */
+public class Prototype {
+
+	private final Token name;
+	private final List<String> params;
+	private final Chunk chunk;
+	private final int locals;
+	private final int maxStack;
+	private final boolean[] upvalueLocal;
+	private final int[] upvalueIndices;
+
+	/**
+	 * @param name the name of the function, or <code>null</code> for a script
+	 * @param params the parameters of the function
+	 * @param chunk the compiled body
+	 * @param locals the number of local slots the body needs, including the parameters
+	 * @param maxStack the deepest the operand stack can get while running the body
+	 * @param upvalueLocal for each captured variable, whether it comes from a local of the enclosing function
+	 * @param upvalueIndices for each captured variable, its slot or index in the enclosing function
+	 */
+	public Prototype(Token name, List<String> params, Chunk chunk, int locals, int maxStack, boolean[] upvalueLocal,
+			int[] upvalueIndices) {
+		this.name = name;
+		this.params = params;
+		this.chunk = chunk;
+		this.locals = locals;
+		this.maxStack = maxStack;
+		this.upvalueLocal = upvalueLocal;
+		this.upvalueIndices = upvalueIndices;
+	}
+
+	/**
+	 * @return the name of the function
+	 */
+	public Token getName() {
+		return name;
+	}
+
+	/**
+	 * @return the number of parameters
+	 */
+	public int getArity() {
+		return params.size();
+	}
+
+	/**
+	 * @return the compiled body
+	 */
+	public Chunk getChunk() {
+		return chunk;
+	}
+
+	/**
+	 * @return the number of local slots
+	 */
+	public int getLocals() {
+		return locals;
+	}
+
+	/**
+	 * @return the maximum depth of the operand stack
+	 */
+	public int getMaxStack() {
+		return maxStack;
+	}
+
+	/**
+	 * @return for each captured variable, whether it comes from a local of the enclosing function
+	 * rather than from the enclosing function's captured variables
+	 */
+	public boolean[] getUpvalueLocal() {
+		return upvalueLocal;
+	}
+
+	/**
+	 * @return for each captured variable, its slot or index in the enclosing function
+	 */
+	public int[] getUpvalueIndices() {
+		return upvalueIndices;
+	}
+
+	@Override
+	public String toString() {
+		if (name == null) {
+			return "<script>";
+		}
+		return String.format("fn %s(%s)", name.getLexeme(), String.join(", ", params));
+	}
+}
@@ -0,0 +1,601 @@
+package com.nailuj29gaming.language.vm;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.nailuj29gaming.language.Cell;
+import com.nailuj29gaming.language.Environment;
+import com.nailuj29gaming.language.IFn;
+import com.nailuj29gaming.language.Interpreter;
+import com.nailuj29gaming.language.Interpreter.InterpretError;
+import com.nailuj29gaming.language.Main;
+import com.nailuj29gaming.language.ModuleRegistry;
+import com.nailuj29gaming.language.PackedList;
+import com.nailuj29gaming.language.Symbol;
+import com.nailuj29gaming.language.Token;
+import com.nailuj29gaming.language.ast.Stmt;
+
+/**
+ * A stack based virtual machine that runs code produced by the {@link Compiler}.
+ * An alternative to the tree-walking {@link Interpreter}, with the same behavior
+ */
+public class VM {
+
+	/**
+	 * The deepest calls can be nested before the VM gives up
+	 */
+	private static final int MAX_FRAMES = 100000;
+
+	/**
+	 * A function call that is in progress
+	 */
+	private static class Frame {
+		Prototype prototype;
+		/**
+		 * The next instruction to run, saved while another frame is running
+		 */
+		int ip;
+		/**
+		 * The position of slot 0 on the stack
+		 */
+		int base;
+		/**
+		 * Where globals are looked up
+		 */
+		Environment globals;
+		/**
+		 * The variables the function captured
+		 */
+		Cell[] upvalues;
+	}
+
+	private Object[] stack = new Object[256];
+	private int sp;
+	private Frame[] frames = new Frame[64];
+	private int frameCount;
+
+	/**
+	 * The interpreter whose globals and streams this VM uses, which is passed to native functions
+	 */
+	private final Interpreter host;
+
+	/**
+	 * The globals of the script this VM runs
+	 */
+	private final Environment globals;
+
+	/**
+	 * All modules that have been imported, shared with this VM's workers
+	 */
+	private final Map<String, Environment> imports;
+
+	/**
+	 * The modules imported from files by VMs that weren't given a registry of their own,
+	 * so each module is only compiled and run once however many VMs import it.
+	 * Separate from the {@link Interpreter}'s, since modules export the functions of the engine that ran them
+	 */
+	private static final ModuleRegistry SHARED_MODULES = new ModuleRegistry();
+
+	/**
+	 * Every module imported from a file, shared with the VMs that run those modules
+	 */
+	private final ModuleRegistry modules;
+
+	/**
+	 * The thread that created the VM, which runs its script
+	 */
+	private final Thread owner = Thread.currentThread();
+
+	/**
+	 * The VMs that run this VM's functions when they are called on other threads, such as by the <code>parallel</code> module,
+	 * since a VM's stack can only be used by one thread
+	 */
+	private final ThreadLocal<VM> workers = new ThreadLocal<>();
+
+	/**
+	 * The VM this one is a worker of, or itself. A VM runs the functions of every VM with the same origin in its own loop
+	 */
+	private final VM origin;
+
+	/**
+	 * Creates a VM that reads from standard input and writes to standard output
+	 */
+	public VM() {
+		this(new Interpreter());
+	}
+
+	/**
+	 * Creates a VM that uses an interpreter's globals and streams
+	 * @param host the interpreter
+	 */
+	public VM(Interpreter host) {
+		this(host, SHARED_MODULES);
+	}
+
+	/**
+	 * Creates a VM that uses an interpreter's globals and streams, and keeps the modules it imports in a registry
+	 * @param host the interpreter
+	 * @param modules the registry of modules imported from files, which may be shared with other VMs
+	 */
+	public VM(Interpreter host, ModuleRegistry modules) {
+		this(host, modules, null);
+	}
+
+	private VM(Interpreter host, ModuleRegistry modules, VM origin) {
+		this.host = host;
+		this.modules = modules;
+		this.origin = origin == null ? this : origin;
+		this.imports = origin == null ? new ConcurrentHashMap<String, Environment>() : origin.imports;
+		this.globals = new Environment(host.getGlobals());
+	}
+
+	/**
+	 * Compiles and runs a list of statements
+	 * @param stmts the statements to run
+	 */
+	public void interpret(List<Stmt> stmts) {
+		Prototype script = new Compiler().compile(stmts);
+		if (Main.DEBUG) {
+			System.out.println(script.getChunk().disassemble(script.toString()));
+		}
+		push(null);
+		pushFrame(script, sp, globals, null, null);
+		run(frameCount - 1);
+	}
+
+	/**
+	 * Runs a list of statements, returning the environment to be used in an import
+	 * @param stmts the statements to run
+	 * @return the globals after running these statements
+	 */
+	public Environment interpretForImport(List<Stmt> stmts) {
+		interpret(stmts);
+		return globals;
+	}
+
+	/**
+	 * @return the registry of modules this VM has imported from files
+	 */
+	public ModuleRegistry getModules() {
+		return modules;
+	}
+
+	/**
+	 * @return the registry of modules shared by every VM that wasn't given one of its own
+	 */
+	public static ModuleRegistry getSharedModules() {
+		return SHARED_MODULES;
+	}
+
+	/**
+	 * @return a VM that can run this VM's functions on the current thread
+	 */
+	VM forCurrentThread() {
+		if (Thread.currentThread() == origin.owner) {
+			return origin;
+		}
+		VM worker = origin.workers.get();
+		if (worker == null) {
+			worker = new VM(host.fork(), modules, origin);
+			origin.workers.set(worker);
+		}
+		return worker;
+	}
+
+	/**
+	 * Calls a function from outside the VM, such as from a native function or a {@link com.nailuj29gaming.language.CurriedFn}
+	 * @param fn the function to call
+	 * @param args the arguments to call it with
+	 * @param paren the opening parenthesis, used for error reporting
+	 * @return the value returned by the function
+	 */
+	Object call(VmFn fn, List<Object> args, Token paren) {
+		push(fn);
+		for (Object arg : args) {
+			push(arg);
+		}
+		pushFrame(fn.getPrototype(), sp - args.size(), fn.getGlobals(), fn.getUpvalues(), paren);
+		initializeFrame(fn);
+		return run(frameCount - 1);
+	}
+
+	private void push(Object value) {
+		if (sp == stack.length) {
+			stack = Arrays.copyOf(stack, sp * 2);
+		}
+		stack[sp++] = value;
+	}
+
+	/**
+	 * Starts a call, making room on the stack for its locals and operands
+	 * @param prototype the function being called
+	 * @param base the position of the first argument on the stack
+	 * @param globals where the function looks up globals
+	 * @param upvalues the variables the function captured
+	 * @param paren the opening parenthesis of the call, used for error reporting
+	 */
+	private void pushFrame(Prototype prototype, int base, Environment globals, Cell[] upvalues, Token paren) {
+		if (frameCount == MAX_FRAMES) {
+			throw new InterpretError("Stack overflow", paren);
+		}
+		if (frameCount == frames.length) {
+			frames = Arrays.copyOf(frames, frameCount * 2);
+		}
+		int needed = base + prototype.getLocals() + prototype.getMaxStack();
+		if (needed > stack.length) {
+			stack = Arrays.copyOf(stack, Math.max(needed, stack.length * 2));
+		}
+		Frame frame = frames[frameCount];
+		if (frame == null) {
+			frame = frames[frameCount] = new Frame();
+		}
+		frame.prototype = prototype;
+		frame.ip = 0;
+		frame.base = base;
+		frame.globals = globals;
+		frame.upvalues = upvalues;
+		frameCount++;
+	}
+
+	/**
+	 * Stores the function in the slot after its parameters, and clears the rest of its locals.
+	 * The arguments must already be in the first slots
+	 * @param fn the function being called
+	 */
+	private void initializeFrame(VmFn fn) {
+		Frame frame = frames[frameCount - 1];
+		int arity = fn.getArity();
+		stack[frame.base + arity] = fn;
+		int top = frame.base + frame.prototype.getLocals();
+		Arrays.fill(stack, frame.base + arity + 1, top, null);
+		sp = top;
+	}
+
+	/**
+	 * Runs frames until the frame at <code>exitFrame</code> returns
+	 * @param exitFrame the index of the frame to run until
+	 * @return the value returned by that frame
+	 */
+	@SuppressWarnings("fallthrough")
+	private Object run(int exitFrame) {
+		Frame frame = frames[frameCount - 1];
+		int[] code = frame.prototype.getChunk().code;
+		Token[] tokens = frame.prototype.getChunk().tokens;
+		Object[] constants = frame.prototype.getChunk().constants;
+		int ip = frame.ip;
+		int base = frame.base;
+		Object[] stack = this.stack;
+		int sp = frame.base + frame.prototype.getLocals();
+
+		while (true) {
+			int op = code[ip++];
+			switch (op) {
+			case OpCode.CONSTANT:
+				stack[sp++] = constants[code[ip++]];
+				break;
+			case OpCode.NIL:
+				stack[sp++] = null;
+				break;
+			case OpCode.TRUE:
+				stack[sp++] = Boolean.TRUE;
+				break;
+			case OpCode.FALSE:
+				stack[sp++] = Boolean.FALSE;
+				break;
+			case OpCode.POP:
+				stack[--sp] = null;
+				break;
+			case OpCode.GET_LOCAL:
+				stack[sp++] = stack[base + code[ip++]];
+				break;
+			case OpCode.SET_LOCAL:
+				stack[base + code[ip++]] = stack[--sp];
+				break;
+			case OpCode.GET_CELL:
+				stack[sp++] = ((Cell) stack[base + code[ip++]]).get();
+				break;
+			case OpCode.SET_CELL:
+				((Cell) stack[base + code[ip++]]).set(stack[--sp]);
+				break;
+			case OpCode.GET_UPVALUE:
+				stack[sp++] = frame.upvalues[code[ip++]].get();
+				break;
+			case OpCode.SET_UPVALUE:
+				frame.upvalues[code[ip++]].set(stack[--sp]);
+				break;
+			case OpCode.CELL:
+				stack[sp - 1] = new Cell(stack[sp - 1]);
+				break;
+			case OpCode.DECLARE_GLOBAL:
+				frame.globals.declare((Symbol) constants[code[ip++]]);
+				break;
+			case OpCode.GET_GLOBAL:
+				stack[sp++] = frame.globals.get((Symbol) constants[code[ip]], tokens[ip]);
+				ip++;
+				break;
+			case OpCode.SET_GLOBAL:
+				frame.globals.set((Symbol) constants[code[ip]], stack[--sp], tokens[ip]);
+				ip++;
+				break;
+			case OpCode.GET_MODULE: {
+				String module = (String) constants[code[ip]];
+				if (!imports.containsKey(module)) {
+					throw new InterpretError("Undefined or un-imported module", tokens[ip]);
+				}
+				stack[sp++] = imports.get(module).get((Symbol) constants[code[ip + 1]], tokens[ip + 1]);
+				ip += 2;
+				break;
+			}
+			case OpCode.IMPORT:
+				frame.ip = ip;
+				importModule((String) constants[code[ip]], tokens[ip]);
+				ip++;
+				break;
+			case OpCode.ADD: {
+				Object right = stack[--sp];
+				Object left = stack[sp - 1];
+				if (left instanceof Double && right instanceof Double) {
+					stack[sp - 1] = (Double) left + (Double) right;
+				} else {
+					stack[sp - 1] = Interpreter.binary(tokens[ip - 1], left, right);
+				}
+				break;
+			}
+			case OpCode.SUBTRACT: {
+				Object right = stack[--sp];
+				Object left = stack[sp - 1];
+				if (left instanceof Double && right instanceof Double) {
+					stack[sp - 1] = (Double) left - (Double) right;
+				} else {
+					stack[sp - 1] = Interpreter.binary(tokens[ip - 1], left, right);
+				}
+				break;
+			}
+			case OpCode.LESS: {
+				Object right = stack[--sp];
+				Object left = stack[sp - 1];
+				if (left instanceof Double && right instanceof Double) {
+					stack[sp - 1] = (Double) left < (Double) right;
+				} else {
+					stack[sp - 1] = Interpreter.binary(tokens[ip - 1], left, right);
+				}
+				break;
+			}
+			case OpCode.MULTIPLY:
+			case OpCode.DIVIDE:
+			case OpCode.MODULO:
+			case OpCode.EQUAL:
+			case OpCode.NOT_EQUAL:
+			case OpCode.GREATER:
+			case OpCode.GREATER_EQUAL:
+			case OpCode.LESS_EQUAL: {
+				Object right = stack[--sp];
+				stack[sp - 1] = Interpreter.binary(tokens[ip - 1], stack[sp - 1], right);
+				break;
+			}
+			case OpCode.NEGATE:
+			case OpCode.NOT:
+				stack[sp - 1] = Interpreter.unary(tokens[ip - 1], stack[sp - 1]);
+				break;
+			case OpCode.JUMP:
+				ip = code[ip];
+				break;
+			case OpCode.JUMP_IF_FALSE:
+				if (Interpreter.isTruthy(stack[--sp])) {
+					ip++;
+				} else {
+					ip = code[ip];
+				}
+				break;
+			case OpCode.AND:
+				if (Interpreter.logical(stack[sp - 1], tokens[ip - 1])) {
+					sp--;
+					ip++;
+				} else {
+					ip = code[ip];
+				}
+				break;
+			case OpCode.OR:
+				if (Interpreter.logical(stack[sp - 1], tokens[ip - 1])) {
+					ip = code[ip];
+				} else {
+					sp--;
+					ip++;
+				}
+				break;
+			case OpCode.LOGICAL:
+				Interpreter.logical(stack[sp - 1], tokens[ip - 1]);
+				break;
+			case OpCode.ITERATE:
+				stack[sp - 1] = Interpreter.iterate(stack[sp - 1], tokens[ip - 1]);
+				break;
+			case OpCode.FOR_NEXT: {
+				Iterator<?> items = (Iterator<?>) stack[base + code[ip]];
+				if (items.hasNext()) {
+					stack[sp++] = items.next();
+					ip += 2;
+				} else {
+					ip = code[ip + 1];
+				}
+				break;
+			}
+			case OpCode.FUNCTION: {
+				Prototype prototype = (Prototype) constants[code[ip++]];
+				boolean[] upvalueLocal = prototype.getUpvalueLocal();
+				int[] upvalueIndices = prototype.getUpvalueIndices();
+				Cell[] upvalues = new Cell[upvalueIndices.length];
+				for (int i = 0; i < upvalues.length; i++) {
+					if (upvalueLocal[i]) {
+						upvalues[i] = (Cell) stack[base + upvalueIndices[i]];
+					} else {
+						upvalues[i] = frame.upvalues[upvalueIndices[i]];
+					}
+				}
+				stack[sp++] = new VmFn(prototype, this, frame.globals, upvalues);
+				break;
+			}
+			case OpCode.LIST: {
+				int count = code[ip++];
+				List<Object> items = new PackedList(count);
+				for (int i = sp - count; i < sp; i++) {
+					items.add(stack[i]);
+					stack[i] = null;
+				}
+				sp -= count;
+				stack[sp++] = items;
+				break;
+			}
+			case OpCode.INDEX: {
+				Object indexee = stack[--sp];
+				stack[sp - 1] = Interpreter.index(indexee, stack[sp - 1], tokens[ip - 1]);
+				break;
+			}
+			case OpCode.SET_INDEX: {
+				Object item = stack[--sp];
+				Object index = stack[--sp];
+				Interpreter.setIndex(stack[sp - 1], index, item, tokens[ip - 1]);
+				break;
+			}
+			case OpCode.TAIL_CALL: {
+				int argc = code[ip];
+				Object callee = stack[sp - argc - 1];
+				// The function being run is just below its frame
+				if (callee instanceof VmFn && frame.base > 0 && callee == stack[frame.base - 1]
+						&& argc == ((VmFn) callee).getArity()) {
+					VmFn vmFn = (VmFn) callee;
+					System.arraycopy(stack, sp - argc, stack, frame.base, argc);
+					Arrays.fill(stack, frame.base + argc, sp, null);
+					this.sp = frame.base + argc;
+					initializeFrame(vmFn);
+					ip = 0;
+					sp = this.sp;
+					break;
+				}
+				// Anything else is an ordinary call, followed by a RETURN
+			}
+			case OpCode.CALL: {
+				int argc = code[ip];
+				Token paren = tokens[ip];
+				ip++;
+				Object callee = stack[sp - argc - 1];
+				if (!(callee instanceof IFn)) {
+					throw new InterpretError("Cannot call non-function", paren);
+				}
+				IFn fn = (IFn) callee;
+				if (argc > fn.getArity()) {
+					throw new InterpretError("Incorrect argument count", paren);
+				}
+				frame.ip = ip;
+				if (callee instanceof VmFn && ((VmFn) callee).getVm().origin == origin && argc == fn.getArity()) {
+					// Calls between compiled functions reuse this loop instead of recursing
+					VmFn vmFn = (VmFn) callee;
+					this.sp = sp;
+					pushFrame(vmFn.getPrototype(), sp - argc, vmFn.getGlobals(), vmFn.getUpvalues(), paren);
+					initializeFrame(vmFn);
+					frame = frames[frameCount - 1];
+					code = frame.prototype.getChunk().code;
+					tokens = frame.prototype.getChunk().tokens;
+					constants = frame.prototype.getChunk().constants;
+					ip = 0;
+					base = frame.base;
+					stack = this.stack;
+					sp = this.sp;
+					break;
+				}
+				this.sp = sp;
+				Object result = callNative(fn, argc, sp, paren);
+				// The call may have grown the stack
+				stack = this.stack;
+				Arrays.fill(stack, sp - argc, sp, null);
+				sp -= argc;
+				stack[sp - 1] = result;
+				break;
+			}
+			case OpCode.RETURN: {
+				Object result = stack[sp - 1];
+				int top = sp;
+				sp = frame.base - 1;
+				Arrays.fill(stack, sp, top, null);
+				frameCount--;
+				if (frameCount == exitFrame) {
+					this.sp = sp;
+					return result;
+				}
+				frame = frames[frameCount - 1];
+				code = frame.prototype.getChunk().code;
+				tokens = frame.prototype.getChunk().tokens;
+				constants = frame.prototype.getChunk().constants;
+				ip = frame.ip;
+				base = frame.base;
+				stack[sp++] = result;
+				break;
+			}
+			default:
+				throw new IllegalStateException("Unknown instruction " + op);
+			}
+		}
+	}
+
+	/**
+	 * Calls a function that isn't compiled for this VM, such as a builtin, with the arguments on top of the stack
+	 * @param fn the function
+	 * @param argc the number of arguments
+	 * @param sp the top of the stack
+	 * @param paren the opening parenthesis, used for error reporting
+	 * @return the value returned by the function
+	 */
+	private Object callNative(IFn fn, int argc, int sp, Token paren) {
+		Object[] stack = this.stack;
+		if (argc == fn.getArity()) {
+			switch (argc) {
+			case 0:
+				return fn.call0(host, paren);
+			case 1:
+				return fn.call1(host, stack[sp - 1], paren);
+			case 2:
+				return fn.call2(host, stack[sp - 2], stack[sp - 1], paren);
+			case 3:
+				return fn.call3(host, stack[sp - 3], stack[sp - 2], stack[sp - 1], paren);
+			}
+		}
+		List<Object> args = new ArrayList<>(argc);
+		for (int i = sp - argc; i < sp; i++) {
+			args.add(stack[i]);
+		}
+		return fn.callCurried(host, args, paren);
+	}
+
+	/**
+	 * Imports a module, running it in its own VM the first time it is imported
+	 * @param name the name of the module
+	 * @param token the name's token, used for error reporting
+	 */
+	private void importModule(String name, Token token) {
+		String filename = String.format("%s.scr", name);
+		if (Files.exists(Paths.get(filename))) {
+			try {
+				imports.put(name, modules.load(Paths.get(filename), token, new ModuleRegistry.Loader() {
+					@Override
+					public Environment load(Path path) throws IOException {
+						return new VM(new Interpreter(host), modules, null).interpretForImport(Interpreter.parseModule(path));
+					}
+				}));
+			} catch (IOException e) {
+				// The file can't be read, or was deleted after it was found
+				throw new InterpretError("Could not read import: " + e.getMessage(), token);
+			}
+		} else if (Interpreter.getBuiltInImport(name) != null) {
+			imports.put(name, Interpreter.getBuiltInImport(name));
+		} else {
+			throw new InterpretError("Could not find import", token);
+		}
+	}
+}
@@ -0,0 +1,76 @@
+package com.nailuj29gaming.language.vm;
+
+import java.util.List;
+
+import com.nailuj29gaming.language.Cell;
+import com.nailuj29gaming.language.Environment;
+import com.nailuj29gaming.language.IFn;
+import com.nailuj29gaming.language.Interpreter;
+import com.nailuj29gaming.language.Token;
+
+/**
+ * A function compiled for the {@link VM}
+ */
+public class VmFn implements IFn {
+
+	private final Prototype prototype;
+	private final VM vm;
+	private final Environment globals;
+	private final Cell[] upvalues;
+
+	/**
+	 * @param prototype the compiled function
+	 * @param vm the VM that created the function, which it runs in
+	 * @param globals where the function looks up globals
+	 * @param upvalues the variables the function captured
+	 */
+	public VmFn(Prototype prototype, VM vm, Environment globals, Cell[] upvalues) {
+		this.prototype = prototype;
+		this.vm = vm;
+		this.globals = globals;
+		this.upvalues = upvalues;
+	}
+
+	/**
+	 * @return the compiled function
+	 */
+	public Prototype getPrototype() {
+		return prototype;
+	}
+
+	/**
+	 * @return the VM the function runs in
+	 */
+	public VM getVm() {
+		return vm;
+	}
+
+	/**
+	 * @return where the function looks up globals
+	 */
+	public Environment getGlobals() {
+		return globals;
+	}
+
+	/**
+	 * @return the variables the function captured
+	 */
+	public Cell[] getUpvalues() {
+		return upvalues;
+	}
+
+	@Override
+	public int getArity() {
+		return prototype.getArity();
+	}
+
+	@Override
+	public Object call(Interpreter interpreter, List<Object> args, Token paren) {
+		return vm.forCurrentThread().call(this, args, paren);
+	}
+
+	@Override
+	public String toString() {
+		return prototype.toString();
+	}
+}